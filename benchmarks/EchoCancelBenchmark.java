@@ -0,0 +1,92 @@
+package benchmarks;
+
+import jaec.JAEC;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * echoCancel per sample and per block. one operation is a block of blockSize
+ * samples (the buffer handed over by the audio stack), so both APIs are
+ * compared on the same amount of audio. the frame size of JAEC itself is
+ * fixed (512).
+ *
+ * @author Jie Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class EchoCancelBenchmark {
+
+    @Param({"500", "2000"})
+    public int tailLength;
+    @Param({"8000", "16000"})
+    public float sampleRate;
+    @Param({"0", "1", "2", "3", "4"})
+    public int engine; // JAEC.ENGINE_TIME_DOMAIN, ENGINE_BLOCK_FREQUENCY, ENGINE_PROPORTIONATE, ENGINE_FIXED_POINT, ENGINE_SUBBAND
+    @Param({"160", "320"})
+    public int blockSize;
+    private JAEC aec;
+    private short[] far;
+    private short[] near;
+    private short[] out;
+    private int position;
+
+    @Setup
+    public void setup() {
+        //one second of far-end and microphone with an echo, played in loop.
+        int samples = (int) this.sampleRate;
+        Random random = new Random(1);
+        this.far = new short[samples];
+        this.near = new short[samples];
+        this.out = new short[samples];
+        for (int n = 0; n < samples; n++) {
+            this.far[n] = (short) (random.nextGaussian() * 2000);
+            if (n >= 300) {
+                this.near[n] = (short) (this.far[n - 300] / 2 + random.nextGaussian() * 30);
+            }
+        }
+        this.aec = new JAEC(this.tailLength, this.sampleRate, this.engine);
+        //adapted state, mju is updated.
+        this.aec.echoCancel(this.far, this.near, this.out, 0, samples);
+        this.position = 0;
+    }
+
+    private int nextPosition() {
+        int p = this.position;
+        this.position += this.blockSize;
+        if (this.position + this.blockSize > this.far.length) {
+            this.position = 0;
+        }
+        return p;
+    }
+
+    @Benchmark
+    public short[] perSample() {
+        int p = this.nextPosition();
+        for (int i = p; i < p + this.blockSize; i++) {
+            this.out[i] = this.aec.echoCancel(this.far[i], this.near[i]);
+        }
+        return this.out;
+    }
+
+    @Benchmark
+    public short[] perBlock() {
+        int p = this.nextPosition();
+        this.aec.echoCancel(this.far, this.near, this.out, p, this.blockSize);
+        return this.out;
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import jaec.FFT_HalfComplex;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * transforms of FFT_HalfComplex.
+ *
+ * @author Jie Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class FFTBenchmark {
+
+    @Param({"256", "512", "1024"})
+    public int fftSize;
+    private FFT_HalfComplex fft;
+    private float[] signal;
+    private float[] spectrum;
+    private float[] mjus;
+
+    @Setup
+    public void setup() {
+        this.fft = new FFT_HalfComplex(this.fftSize);
+        Random random = new Random(1);
+        this.signal = new float[this.fftSize];
+        this.spectrum = new float[this.fftSize];
+        for (int i = 0; i < this.fftSize; i++) {
+            this.signal[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        this.mjus = new float[this.fftSize / 2 + 1];
+        for (int i = 0; i < this.mjus.length; i++) {
+            this.mjus[i] = random.nextFloat() * 0.5f;
+        }
+    }
+
+    @Benchmark
+    public float[] yFFT() {
+        this.fft.yFFT(this.signal, this.spectrum);
+        return this.spectrum;
+    }
+
+    @Benchmark
+    public float[] eFFT() {
+        this.fft.eFFT(this.signal, this.spectrum);
+        return this.spectrum;
+    }
+
+    @Benchmark
+    public float[] mjuIFFT() {
+        this.fft.mjuIFFT(this.mjus, this.spectrum);
+        return this.spectrum;
+    }
+
+    @Benchmark
+    public float[] forwardInverse() {
+        System.arraycopy(this.signal, 0, this.spectrum, 0, this.fftSize);
+        this.fft.forward(this.spectrum);
+        this.fft.inverse(this.spectrum);
+        return this.spectrum;
+    }
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import jaec.JAEC_BiquadFilter;
+import jaec.JAEC_Filter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JAEC_Filter.bandPass and hammingWindow, both the allocating versions and
+ * the versions writing into a given array, and the biquad pre-filter
+ * (JAEC_BiquadFilter) on the half frame of new samples that the FFT
+ * band-pass of a frame stands for (the pre-filter of AEC).
+ *
+ * @author Jie Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class FilterBenchmark {
+
+    @Param({"256", "512", "1024"})
+    public int frameSize;
+    @Param({"8000", "16000"})
+    public float sampleRate;
+    private JAEC_Filter filter;
+    private JAEC_BiquadFilter biquad;
+    private float[] x;
+    private float[] y;
+
+    @Setup
+    public void setup() {
+        this.filter = new JAEC_Filter(50, 5000, this.sampleRate, this.frameSize);
+        this.biquad = new JAEC_BiquadFilter(50, 5000, this.sampleRate);
+        Random random = new Random(1);
+        this.x = new float[this.frameSize];
+        this.y = new float[this.frameSize];
+        for (int i = 0; i < this.frameSize; i++) {
+            this.x[i] = (float) random.nextGaussian() * 0.1f;
+        }
+    }
+
+    @Benchmark
+    public float[] bandPass() {
+        return this.filter.bandPass(this.x);
+    }
+
+    @Benchmark
+    public float[] bandPassInPlace() {
+        this.filter.bandPass(this.x, this.y);
+        return this.y;
+    }
+
+    @Benchmark
+    public float[] biquadBandPass() {
+        this.biquad.bandPass(this.x, this.y, this.frameSize / 2);
+        return this.y;
+    }
+
+    @Benchmark
+    public float[] hammingWindow() {
+        return this.filter.hammingWindow(this.x);
+    }
+
+    @Benchmark
+    public float[] hammingWindowInPlace() {
+        this.filter.hammingWindow(this.x, this.y);
+        return this.y;
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import jaec.JAEC;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JAEC.updateMju (hamming window, FFT of echo and output, Eit and learning
+ * rate of every bin), once for every half frame. it is private, so it is
+ * called through a method handle on an adapted JAEC.
+ *
+ * @author Jie Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class MjuBenchmark {
+
+    private static final MethodHandle UPDATE_MJU = lookupUpdateMju();
+
+    @Param({"500", "2000"})
+    public int tailLength;
+    @Param({"8000", "16000"})
+    public float sampleRate;
+    private JAEC aec;
+
+    private static MethodHandle lookupUpdateMju() {
+        try {
+            Method method = JAEC.class.getDeclaredMethod("updateMju");
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        int samples = 4 * (int) this.sampleRate;
+        Random random = new Random(1);
+        short[] far = new short[samples];
+        short[] near = new short[samples];
+        for (int n = 0; n < samples; n++) {
+            far[n] = (short) (random.nextGaussian() * 2000);
+            if (n >= 300) {
+                near[n] = (short) (far[n - 300] / 2 + random.nextGaussian() * 30);
+            }
+        }
+        this.aec = new JAEC(this.tailLength, this.sampleRate, JAEC.ENGINE_TIME_DOMAIN);
+        this.aec.echoCancel(far, near, new short[samples], 0, samples);
+    }
+
+    @Benchmark
+    public float updateMju() throws Throwable {
+        UPDATE_MJU.invokeExact(this.aec);
+        return this.aec.mju;
+    }
+}
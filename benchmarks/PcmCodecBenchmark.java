@@ -0,0 +1,100 @@
+package benchmarks;
+
+import jaec.JAEC_PcmCodec;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import testmain.ShortAudioFrame;
+
+/**
+ * JAEC_PcmCodec on a block of interleaved PCM bytes (first channel), from
+ * byte[] and from a direct ByteBuffer, and ShortAudioFrame for every sample
+ * as the old way.
+ *
+ * @author Jie Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class PcmCodecBenchmark {
+
+    @Param({"16", "24", "32"})
+    public int bits;
+    @Param({"1", "2"})
+    public int channels;
+    @Param({"false", "true"})
+    public boolean bigEndian;
+    @Param({"4096"})
+    public int frames;
+    private JAEC_PcmCodec codec;
+    private byte[] pcm;
+    private ByteBuffer direct;
+    private short[] shorts;
+    private float[] floats;
+
+    @Setup
+    public void setup() {
+        this.codec = new JAEC_PcmCodec(this.bits, this.bigEndian, this.channels);
+        this.pcm = new byte[this.frames * this.codec.getFrameBytes()];
+        new Random(1).nextBytes(this.pcm);
+        this.direct = ByteBuffer.allocateDirect(this.pcm.length).put(this.pcm);
+        this.shorts = new short[this.frames];
+        this.floats = new float[this.frames];
+    }
+
+    @Benchmark
+    public short[] decodeShort() {
+        this.codec.decode(this.pcm, 0, 0, this.shorts, 0, this.frames);
+        return this.shorts;
+    }
+
+    @Benchmark
+    public float[] decodeFloat() {
+        this.codec.decode(this.pcm, 0, 0, this.floats, 0, this.frames);
+        return this.floats;
+    }
+
+    @Benchmark
+    public short[] decodeShortDirect() {
+        this.codec.decode(this.direct, 0, 0, this.shorts, 0, this.frames);
+        return this.shorts;
+    }
+
+    @Benchmark
+    public byte[] encodeShort() {
+        this.codec.encode(this.shorts, 0, this.pcm, 0, 0, this.frames);
+        return this.pcm;
+    }
+
+    @Benchmark
+    public byte[] encodeFloat() {
+        this.codec.encode(this.floats, 0, this.pcm, 0, 0, this.frames);
+        return this.pcm;
+    }
+
+    @Benchmark
+    public short[] shortAudioFrame() {
+        //only 16 bits, the first two bytes of a frame.
+        int frameBytes = this.codec.getFrameBytes();
+        byte[] frame = new byte[frameBytes];
+        for (int i = 0; i < this.frames; i++) {
+            System.arraycopy(this.pcm, i * frameBytes, frame, 0, frameBytes);
+            this.shorts[i] = new ShortAudioFrame(frame, this.bigEndian).getShort();
+        }
+        return this.shorts;
+    }
+}
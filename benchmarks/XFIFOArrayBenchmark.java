@@ -0,0 +1,65 @@
+package benchmarks;
+
+import jaec.XFIFOArray;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * XFIFOArray as it is used for one half frame: getTailSumSquare for every
+ * sample of the frame, then the new half frame is added.
+ *
+ * @author Jie Yang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class XFIFOArrayBenchmark {
+
+    @Param({"256", "512", "1024"})
+    public int frameSize;
+    @Param({"500", "2000", "8000"})
+    public int tailLength;
+    private XFIFOArray fifo;
+    private float[] frame;
+
+    @Setup
+    public void setup() {
+        this.fifo = new XFIFOArray(this.frameSize, this.tailLength);
+        Random random = new Random(1);
+        this.frame = new float[this.frameSize / 2];
+        for (int i = 0; i < this.frame.length; i++) {
+            this.frame[i] = (float) random.nextGaussian() * 0.1f;
+        }
+        for (int i = 0; i < this.tailLength + this.frameSize; i++) {
+            this.fifo.add(this.frame[i % this.frame.length]);
+        }
+        //the first call calculates the whole sum, the benchmark measures the incremental one.
+        this.fifo.getTailSumSquare(0);
+    }
+
+    @Benchmark
+    public float tailSumSquareOfFrame() {
+        float sum = 0f;
+        for (int i = 0; i < this.frame.length; i++) {
+            sum += this.fifo.getTailSumSquare(i);
+        }
+        for (int i = 0; i < this.frame.length; i++) {
+            this.fifo.add(this.frame[i]);
+        }
+        return sum;
+    }
+}
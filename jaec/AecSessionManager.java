@@ -0,0 +1,340 @@
+package jaec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * host of many AEC sessions (one JAEC for every call) on a bounded pool of
+ * worker threads. the JAEC of a closed session is cleared and reused by a
+ * new session (see JAEC_Pool).
+ *
+ * every session has its own queue of blocks. a session is scheduled on the
+ * pool only when it has blocks and is not scheduled yet, so its JAEC is
+ * always used by one thread at a time without any global lock. the pool is a
+ * ForkJoinPool of platform threads in async mode, idle workers steal
+ * sessions from the queues of busy workers.
+ *
+ * a block has a deadline of its own duration after it is submitted (the next
+ * block of a real-time stream is due by then). the time of processing is
+ * recorded, so the host can report how many sessions fit on one core before
+ * deadlines are missed.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class AecSessionManager {
+
+    /**
+     * receiver of processed blocks, it is called on the worker thread.
+     */
+    public interface BlockListener {
+
+        /**
+         * a block of a session is processed.
+         *
+         * @param sessionId : id of the session.
+         * @param out : near-end signal without echo, only valid during the call.
+         * @param len : number of samples in out.
+         */
+        void blockProcessed(String sessionId, short[] out, int len);
+    }
+
+    private final ForkJoinPool pool;
+    private final int workers;
+    private final float sampleRate;
+    private final int blockCapacity; // max samples of one block
+    private final int idleAecs = 64; // JAEC of closed sessions kept for new sessions
+    private final JAEC_Pool aecPool;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+    /**
+     * statistics, updated by workers without lock.
+     */
+    private final LongAdder processedBlocks = new LongAdder();
+    private final LongAdder processedSamples = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder missedDeadlines = new LongAdder();
+
+    /**
+     * the constructor of this class.
+     *
+     * @param workers : number of worker threads, normally the number of cores.
+     * @param tail_length : tail length of every JAEC.
+     * @param sample_rate : sample rate of every session.
+     * @param engine : engine of every JAEC, see JAEC.ENGINE_TIME_DOMAIN.
+     * @param blockCapacity : max number of samples of a submitted block.
+     */
+    public AecSessionManager(int workers, int tail_length, float sample_rate, int engine, int blockCapacity) {
+        this(workers, tail_length, sample_rate, engine, blockCapacity, null);
+    }
+
+    /**
+     * the constructor of this class with the state of every JAEC in an
+     * off-heap arena, a segment is given back to the arena when its JAEC is
+     * not kept for new sessions, or by shutdown().
+     *
+     * @param workers : number of worker threads, normally the number of cores.
+     * @param tail_length : tail length of every JAEC.
+     * @param sample_rate : sample rate of every session.
+     * @param engine : engine of every JAEC, only ENGINE_TIME_DOMAIN with an
+     * arena.
+     * @param blockCapacity : max number of samples of a submitted block.
+     * @param arena : arena of the off-heap state, null for heap.
+     */
+    public AecSessionManager(int workers, int tail_length, float sample_rate, int engine, int blockCapacity, JAEC_Arena arena) {
+        this.aecPool = new JAEC_Pool(tail_length, sample_rate, engine, arena, this.idleAecs);
+        this.workers = workers;
+        this.sampleRate = sample_rate;
+        this.blockCapacity = blockCapacity;
+        this.pool = new ForkJoinPool(workers, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * open a new session.
+     *
+     * @param sessionId : id of the session, must be unique.
+     * @param listener : receiver of the processed blocks of the session.
+     */
+    public void openSession(String sessionId, BlockListener listener) {
+        if (this.sessions.containsKey(sessionId)) {
+            throw new IllegalStateException("session already exists: " + sessionId);
+        }
+        Session session = new Session(sessionId, this.aecPool.acquire(), listener);
+        if (this.sessions.putIfAbsent(sessionId, session) != null) {
+            this.aecPool.release(session.aec);
+            throw new IllegalStateException("session already exists: " + sessionId);
+        }
+    }
+
+    /**
+     * close a session, blocks still in its queue are dropped. its JAEC goes
+     * back to the pool of JAEC for new sessions at once, or by the worker
+     * owning the session.
+     *
+     * @param sessionId : id of the session.
+     */
+    public void closeSession(String sessionId) {
+        Session session = this.sessions.remove(sessionId);
+        if (session != null) {
+            session.closed = true;
+            //owning the session for ever, so no worker can run it any more.
+            if (session.scheduled.compareAndSet(false, true)) {
+                this.aecPool.release(session.aec);
+            }
+        }
+    }
+
+    /**
+     * get the number of open sessions.
+     *
+     * @return : the number of open sessions.
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * get the metrics of the JAEC of a session, they can be read by any
+     * thread.
+     *
+     * @param sessionId : id of the session.
+     * @return : metrics of the session, null if the session is not open.
+     */
+    public JAEC_Metrics getMetrics(String sessionId) {
+        Session session = this.sessions.get(sessionId);
+        return (session == null) ? null : session.aec.getMetrics();
+    }
+
+    /**
+     * submit a block of a session, the signals are copied so the caller can
+     * reuse its buffers at once.
+     *
+     * @param sessionId : id of the session.
+     * @param far : the acoustic signal from far-end side.
+     * @param near : the acoustic signal from local microphone.
+     * @param off : the first index of the block in far and near.
+     * @param len : number of samples, not more than the block capacity.
+     * @return : false if the session is not open.
+     */
+    public boolean submit(String sessionId, short[] far, short[] near, int off, int len) {
+        if (len > this.blockCapacity) {
+            throw new IllegalArgumentException("block of " + len + " samples is more than the capacity " + this.blockCapacity);
+        }
+        Session session = this.sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        Block block = session.freeBlocks.poll();
+        if (block == null) {
+            block = new Block(this.blockCapacity);
+        }
+        System.arraycopy(far, off, block.far, 0, len);
+        System.arraycopy(near, off, block.near, 0, len);
+        block.len = len;
+        block.deadline = System.nanoTime() + (long) (len * 1e9 / this.sampleRate);
+        session.blocks.offer(block);
+
+        //schedule the session only if no worker owns it.
+        if (session.scheduled.compareAndSet(false, true)) {
+            this.pool.execute(session);
+        }
+        return true;
+    }
+
+    /**
+     * stop the workers after all scheduled sessions are processed, close the
+     * sessions still open, and release their JAEC and the JAEC kept for new
+     * sessions. if the workers are not stopped in time, a worker still
+     * owning a session releases its JAEC when it stops (the pool of JAEC is
+     * closed, so it is not kept).
+     *
+     * @param timeoutMillis : max time to wait.
+     * @return : true if all workers are stopped.
+     */
+    public boolean shutdown(long timeoutMillis) throws InterruptedException {
+        this.pool.shutdown();
+        boolean terminated = this.pool.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        for (String sessionId : this.sessions.keySet()) {
+            this.closeSession(sessionId);
+        }
+        this.aecPool.close();
+        return terminated;
+    }
+
+    /**
+     * get the number of blocks processed after their deadlines.
+     *
+     * @return : the number of missed deadlines.
+     */
+    public long getMissedDeadlines() {
+        return this.missedDeadlines.sum();
+    }
+
+    /**
+     * get the number of processed blocks.
+     *
+     * @return : the number of processed blocks.
+     */
+    public long getProcessedBlocks() {
+        return this.processedBlocks.sum();
+    }
+
+    /**
+     * estimate how many real-time sessions one core can process: seconds of
+     * audio processed for every second of worker time.
+     *
+     * @return : sessions per core, 0 if nothing is processed yet.
+     */
+    public double getSessionsPerCore() {
+        long busy = this.busyNanos.sum();
+        if (busy == 0) {
+            return 0;
+        }
+        double audioNanos = this.processedSamples.sum() * 1e9 / this.sampleRate;
+        return audioNanos / busy;
+    }
+
+    /**
+     * statistics for information.
+     *
+     * @return : statistics of the host.
+     */
+    public String getStatistics() {
+        double perCore = this.getSessionsPerCore();
+        return "sessions:" + this.getSessionCount()
+                + ", workers:" + this.workers
+                + ", blocks:" + this.getProcessedBlocks()
+                + ", missed deadlines:" + this.getMissedDeadlines()
+                + ", sessions per core:" + (int) perCore
+                + ", capacity:" + (int) (perCore * this.workers) + " sessions";
+    }
+
+    /**
+     * a submitted block with its own buffers, they are recycled by the
+     * session.
+     */
+    private static final class Block {
+
+        final short[] far;
+        final short[] near;
+        final short[] out;
+        int len;
+        long deadline;
+
+        Block(int capacity) {
+            this.far = new short[capacity];
+            this.near = new short[capacity];
+            this.out = new short[capacity];
+        }
+    }
+
+    /**
+     * a session owns its JAEC and its queue of blocks. it runs on a worker
+     * until its queue is empty.
+     */
+    private final class Session implements Runnable {
+
+        final String id;
+        final JAEC aec;
+        final BlockListener listener;
+        final ConcurrentLinkedQueue<Block> blocks = new ConcurrentLinkedQueue<Block>();
+        final ConcurrentLinkedQueue<Block> freeBlocks = new ConcurrentLinkedQueue<Block>();
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        volatile boolean closed = false;
+
+        Session(String id, JAEC aec, BlockListener listener) {
+            this.id = id;
+            this.aec = aec;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Block block;
+                while ((block = this.blocks.poll()) != null) {
+                    if (!this.closed) {
+                        this.process(block);
+                    }
+                    this.freeBlocks.offer(block);
+                }
+                if (this.closed) {
+                    //the session is closed while it was owned by this worker.
+                    aecPool.release(this.aec);
+                    return;
+                }
+                this.scheduled.set(false);
+                //the session could be closed after the check above: closeSession() failed to own it, so the
+                //JAEC is released by whichever of the two owns the session now.
+                if (this.closed) {
+                    if (this.scheduled.compareAndSet(false, true)) {
+                        aecPool.release(this.aec);
+                    }
+                    return;
+                }
+                //a block could be submitted after the last poll and before releasing the session.
+                if (this.blocks.isEmpty() || !this.scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        private void process(Block block) {
+            long start = System.nanoTime();
+            this.aec.echoCancel(block.far, block.near, block.out, 0, block.len);
+            long end = System.nanoTime();
+
+            busyNanos.add(end - start);
+            processedSamples.add(block.len);
+            processedBlocks.increment();
+            if (end > block.deadline) {
+                missedDeadlines.increment();
+            }
+            if (this.listener != null) {
+                this.listener.blockProcessed(this.id, block.out, block.len);
+            }
+        }
+    }
+}
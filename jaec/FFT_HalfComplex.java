@@ -46,14 +46,26 @@ public class FFT_HalfComplex {
      */
     public float[] yFFT(float[] y) {
 
-        //copy the new data.
-        System.arraycopy(y, 0, this.yFFTSegment, 0, this.fftSize);
-        //calcuate frequency domain of block 0
-        this.fft.realForward(this.yFFTSegment);
+        this.yFFT(y, this.yFFTSegment);
 
         return this.yFFTSegment;
     }
 
+    /**
+     * FFT on the latest near-end signals after AEC, the result is written
+     * into the array of caller.
+     *
+     * @param y : near-end signals after AEC.
+     * @param y_HalfComplex : the latest near-end signals after AEC in
+     * frequency domain, it can be the same array as y.
+     */
+    public void yFFT(float[] y, float[] y_HalfComplex) {
+        //copy the new data.
+        System.arraycopy(y, 0, y_HalfComplex, 0, this.fftSize);
+        //calcuate frequency domain of block 0
+        this.fft.realForward(y_HalfComplex);
+    }
+
     /**
      * FFT on the latest echo signals. 
      * only half complex frequency domain is gained in JTransfermation format below.
@@ -68,12 +80,56 @@ public class FFT_HalfComplex {
      * @return  : the latest echo estimation signals in frequency domain. 
      */
     public float[] eFFT(float[] e) {
+
+        this.eFFT(e, this.eFFTSegment);
+
+        return this.eFFTSegment;
+    }
+
+    /**
+     * FFT on the latest echo signals, the result is written into the array of
+     * caller.
+     *
+     * @param e : echo estimation signals.
+     * @param e_HalfComplex : the latest echo estimation signals in frequency
+     * domain, it can be the same array as e.
+     */
+    public void eFFT(float[] e, float[] e_HalfComplex) {
         //copy the new data.
-        System.arraycopy(e, 0, this.eFFTSegment, 0, this.fftSize);
+        System.arraycopy(e, 0, e_HalfComplex, 0, this.fftSize);
         //calcuate frequency domain of block 0
-        this.fft.realForward(this.eFFTSegment);
+        this.fft.realForward(e_HalfComplex);
+    }
 
-        return this.eFFTSegment;
+    /**
+     * in-place FFT on a real signal of fft size, the result is in the same
+     * half complex format as yFFT() and eFFT().
+     *
+     * @param a : real signal, replaced by its half complex spectrum.
+     */
+    public void forward(float[] a) {
+        this.fft.realForward(a);
+    }
+
+    /**
+     * in-place FFT on a real signal of fft size from an offset, see
+     * forward(float[]).
+     *
+     * @param a : real signal from off, replaced by its half complex spectrum.
+     * @param off : the first index of the signal.
+     */
+    public void forward(float[] a, int off) {
+        this.fft.realForward(a, off);
+    }
+
+    /**
+     * in-place inverse FFT (scaled) of a half complex spectrum back to a real
+     * signal.
+     *
+     * @param a : half complex spectrum, replaced by its real signal.
+     */
+    public void inverse(float[] a) {
+        this.fft.realInverse(a, true);
     }
 
     /**
@@ -84,15 +140,27 @@ public class FFT_HalfComplex {
      */
     public float[] mjuIFFT(float[] mju_HalfComplex_f) {
 
+        this.mjuIFFT(mju_HalfComplex_f, this.jtransform_miu_t);
+
+        return this.jtransform_miu_t;
+    }
+
+    /**
+     * Inverse FFT on learning rate in frequency domain, the result is written
+     * into the array of caller.
+     *
+     * @param mju_HalfComplex_f : learning rate in frequency domain with half complex.
+     * @param mju_t : latest learning rate in time domain, array of fft size.
+     */
+    public void mjuIFFT(float[] mju_HalfComplex_f, float[] mju_t) {
+
         //rearrange order of frequency in JTransfermation format for half complex inverse FFT. 
-        this.jtransform_miu_t[0] = mju_HalfComplex_f[0];
-        this.jtransform_miu_t[1] = mju_HalfComplex_f[this.fftSize / 2];
+        mju_t[0] = mju_HalfComplex_f[0];
+        mju_t[1] = mju_HalfComplex_f[this.fftSize / 2];
         for (int i = 2; i < this.fftSize / 2; i = i + 2) {
-            this.jtransform_miu_t[i] = mju_HalfComplex_f[i];
-            this.jtransform_miu_t[i + 1] = 0;
+            mju_t[i] = mju_HalfComplex_f[i];
+            mju_t[i + 1] = 0;
         }
-        this.fft.realInverse(this.jtransform_miu_t, true);
-
-        return this.jtransform_miu_t;
+        this.fft.realInverse(mju_t, true);
     }
 }
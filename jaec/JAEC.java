@@ -36,6 +36,18 @@
  */
 package jaec;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+
 /**
  *
  * The echo cancellation algorithm is mainly based on the paper:
@@ -61,6 +73,51 @@ package jaec;
  */
 public class JAEC {
 
+    /**
+     * Engines of echo estimation and weight updating.
+     *
+     * ENGINE_TIME_DOMAIN: NLMS in time domain, weights are updated for every
+     * sample with the single learning rate mju.
+     *
+     * ENGINE_BLOCK_FREQUENCY: multi-delay block frequency-domain filter
+     * (JAEC_MDF), echo estimation and weights are processed once for every
+     * block with learning rate of every frequency bin.
+     *
+     * ENGINE_PROPORTIONATE: NLMS in time domain with the proportionate
+     * (IPNLMS) update of JAEC_Proportionate, dormant regions of the tail are
+     * skipped.
+     *
+     * ENGINE_FIXED_POINT: NLMS in time domain with far-end history in Q15
+     * SHORT and weights in Q30 INT (JAEC_FixedPoint), learning rate and
+     * pre-filter are the FLOAT ones.
+     *
+     * ENGINE_SUBBAND: complex NLMS in the decimated bands of a DFT filterbank
+     * (JAEC_Subband), with the learning rate of the nearest frequency bin for
+     * every band. the output is delayed by the filterbank (96 samples).
+     */
+    public static final int ENGINE_TIME_DOMAIN = 0;
+    public static final int ENGINE_BLOCK_FREQUENCY = 1;
+    public static final int ENGINE_PROPORTIONATE = 2;
+    public static final int ENGINE_FIXED_POINT = 3;
+    public static final int ENGINE_SUBBAND = 4;
+    /**
+     * Pre-filters of near-end signal, see setPreFilter().
+     *
+     * PRE_FILTER_FFT: band-pass of JAEC_Filter, bins out of the band are
+     * removed from the FFT of every frame.
+     *
+     * PRE_FILTER_BIQUAD: streaming band-pass of cascaded biquads
+     * (JAEC_BiquadFilter), the state is kept across frames.
+     */
+    public static final int PRE_FILTER_FFT = 0;
+    public static final int PRE_FILTER_BIQUAD = 1;
+    /**
+     * Snapshot format of writeSnapshot(), the version is increased whenever
+     * the payload is changed.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x4A414543; // "JAEC"
+    private static final int SNAPSHOT_VERSION = 2; // 2: number of far-end signals, 1 in version 1
+
     /**
      * fftSize 1. size of FFT must be the power of 2 in order to apply fast
      * dscrect transforms. 2. "break the signal up into smaller frames and
@@ -83,12 +140,15 @@ public class JAEC {
     private float beta0;
     private float betaMax;
     private int tailLength; //number of weights
-    private float[] weights; // w0 is relevant to the latest frame in query
+    private int maxTailLength; //number of allocated weights, the tail can be shortened after bulk delay estimation.
+    private float[] weights; // in the same order as the tail in Xs_T, w[tailLength-1] is relevant to the latest far-end signal, null for the engines with their own
     // use float instead of short, because CAST will kill alot of time
     private float[] Xs_Frame_Buffer_T; // buffer for a complete far-end signal frame.
+    private int references = 1; // number of far-end signals (loudspeakers)
+    private float[][] Xs_Frame_Buffers_T; // far-end frame of every reference, null for one far-end signal
     private float[] Ds_Frame_Buffer_T; // buffer for a complete near-end signal frame.
     private float[] Ds_Frame_T; // the latest entire near-end frame.
-    private XFIFOArray Xs_T; // far-end frame query (Include: frame and tail)
+    private XFIFOArray Xs_T; // far-end frame query (Include: frame and tail), null for ENGINE_FIXED_POINT
     private float[] Ys_T; // echo query
     private float[] Ys_HalfCompex_F;// in complex[real, imag],[real, imag]...
     private float[] Ys_pre_HalfCompex_F;// in complex[real, imag],[real, imag]...
@@ -96,11 +156,64 @@ public class JAEC {
     private float[] Es_HalfCompex_F;// in complex[real, imag],[real, imag]...
     private float[] Es_pre_HalfCompex_F;// in complex[real, imag],[real, imag]...
     private float[] mjus_overlap_HalfComplex_F; // miu query in frequency domain
+    private float[] mjus_T; // miu query in time domain, kept for inverse FFT.
     private float[] py_HalfComplex_F;
     private float[] pe_HalfComplex_F;
     private float[] rey_HalfComplex_F;
     private float[] ryy_HalfComplex_F;
+    // power of every frequency bin, the previous ones are kept instead of calculating again.
+    private float[] Ys_Power_F;
+    private float[] Ys_pre_Power_F;
+    private float[] Es_Power_F;
+    private float[] Es_pre_Power_F;
     private FFT_HalfComplex fft;
+    private JAEC_Kernels kernels = JAEC_Kernels.getInstance(); // scalar or vector kernels for inner loops
+    private int engine;
+    private JAEC_MDF blockFilter; // only for ENGINE_BLOCK_FREQUENCY
+    private JAEC_Proportionate proportionate; // only for ENGINE_PROPORTIONATE
+    private JAEC_FixedPoint fixedPoint; // only for ENGINE_FIXED_POINT, weights and Xs_T are not allocated.
+    private JAEC_Subband subband; // only for ENGINE_SUBBAND, weights are not used.
+    /**
+     * Off-heap state: weights (from 0) and far-end history (Xs_T) in one
+     * segment of an arena, weights is null then.
+     *
+     * the other state stays on the heap, its size depends on the frame size
+     * only: frames and spectra are transformed in place by JTransforms and
+     * JAEC_Filter, which only take FLOAT arrays, and the estimates of every
+     * bin are read and written by the same loops of every frame.
+     */
+    private JAEC_Arena arena;
+    private ByteBuffer segment;
+    /**
+     * Bulk delay estimation: far-end signal is delayed by the pure delay
+     * before the echo starts, so the weights only cover the response.
+     */
+    private JAEC_DelayEstimator delayEstimator; // null if not enabled
+    private final int delayMargin = 64; // samples of weights kept before the estimated delay
+    private float[] farEndDelayLine;
+    private int delayLinePointer;
+    private int bulkDelay = 0;
+    private int responseLength;
+    /**
+     * Far-end history shared by the microphones of JAEC_MultiMic: only the
+     * owner (the first microphone) adds far-end frames to Xs_T (or pushes
+     * them to the MDF), and keeps the sum square of the tail of every sample
+     * for the others.
+     */
+    private JAEC farEndOwner; // null if this one adds far-end frames
+    private float[] tailSumSquares; // only for the owner of shared far-end history
+    /**
+     * Far-end activity gating: there can not be any echo in a frame if the
+     * far-end signal of the whole FIFO (half frame and tail) is silent, and
+     * then echo estimation and weight updating are skipped.
+     */
+    private boolean farEndGating = true;
+    private final float farEndActivityFloor = 1e-6f; // mean square of silent far-end signal, -60 dBFS
+    private boolean farEndActive = true; // activity of the latest frame
+    /**
+     * metrics for monitoring, nothing is printed on the audio thread.
+     */
+    private final JAEC_Metrics metrics = new JAEC_Metrics();
     /**
      * Variables for statistical records of AEC
      *
@@ -114,6 +227,8 @@ public class JAEC {
      * AEC Pre-Filter
      */
     private JAEC_Filter filter;
+    private JAEC_BiquadFilter biquadFilter;
+    private int preFilter = PRE_FILTER_FFT;
     private final int lowPassBand = 50;//Hz, for band-pass filter
     private final int highPassBand = 5000;//Hz, for band-pass filter
     /**
@@ -122,12 +237,32 @@ public class JAEC {
     public int errorCount = 0;
     private final int restartThreshold = 2; // max number of error to trigger restarting.
     private boolean justRestart = false;
+    /**
+     * Checkpoint of the latest known-good state, for rolling back instead of
+     * restarting from zero.
+     */
+    private int checkpointInterval = 0; // frames of far-end signal between two checkpoints, 0 if disabled
+    private int framesToCheckpoint;
+    private int errorsAtCheckpoint; // errorCount at the previous checkpoint
+    private boolean hasCheckpoint = false;
+    private boolean rolledBack = false; // no checkpoint is taken since the latest rollback
+    private float checkpointMju;
+    private float checkpointEit;
+    private float[] checkpointSpectra; // [mjus, py, pe, rey, ryy] of every bin
+    private float[] checkpointWeights; // only for the engines using weights of this class
     /**
      * variable for E process after AEC
      */
     private int countInE_Buffer = 0;
     private float[] e1 = new float[this.frameSize];
     private float[] e2 = new float[this.frameSize];
+    /**
+     * buffers for the bulk API of SHORT, at most half a frame is converted
+     * into FLOAT at once.
+     */
+    private float[] x_Bulk_Buffer = new float[this.frameSize / 2];
+    private float[] d_Bulk_Buffer = new float[this.frameSize / 2];
+    private float[] e_Bulk_Buffer = new float[this.frameSize / 2];
 
     /**
      * The constructor of this class.
@@ -147,10 +282,97 @@ public class JAEC {
          * potential future work.
          */
         //In orde to config the JAEC easily
-        tail_length = 2000;//8192;
+        this(2000, sample_rate, ENGINE_TIME_DOMAIN);//8192;
+    }
+
+    /**
+     * The constructor of this class with the choice of engine.
+     *
+     * @param tail_length: the length of echo reverberation time, counted by
+     * the number of samples.
+     * @param sample_rate : rate of sampling, the number of samples in one
+     * second.
+     * @param engine : ENGINE_TIME_DOMAIN, ENGINE_BLOCK_FREQUENCY,
+     * ENGINE_PROPORTIONATE, ENGINE_FIXED_POINT or ENGINE_SUBBAND.
+     */
+    public JAEC(int tail_length, float sample_rate, int engine) {
+        this(tail_length, sample_rate, engine, null);
+    }
+
+    /**
+     * The constructor of this class with weights and far-end history in an
+     * off-heap segment of an arena, for hosts of many sessions. release()
+     * must be called when AEC is not used any more.
+     *
+     * @param tail_length: the length of echo reverberation time, counted by
+     * the number of samples.
+     * @param sample_rate : rate of sampling, the number of samples in one
+     * second.
+     * @param engine : ENGINE_TIME_DOMAIN, ENGINE_BLOCK_FREQUENCY,
+     * ENGINE_PROPORTIONATE, ENGINE_FIXED_POINT or ENGINE_SUBBAND.
+     * @param arena : arena of the off-heap segment, null to keep all state
+     * on the heap. only ENGINE_TIME_DOMAIN can be off-heap.
+     */
+    public JAEC(int tail_length, float sample_rate, int engine, JAEC_Arena arena) {
+        this(tail_length, sample_rate, engine, arena, 1, null);
+    }
+
+    /**
+     * The constructor of this class for several far-end signals (e.g. stereo
+     * playback), with one filter for every loudspeaker. the far-end signals
+     * are given to echoCancel(float[][], float[], float[], int, int), frames
+     * are gated by their joint power. only ENGINE_BLOCK_FREQUENCY, without
+     * delay estimation.
+     *
+     * @param tail_length: the length of echo reverberation time, counted by
+     * the number of samples.
+     * @param sample_rate : rate of sampling, the number of samples in one
+     * second.
+     * @param engine : ENGINE_BLOCK_FREQUENCY (or any engine for one far-end
+     * signal).
+     * @param references : the number of far-end signals.
+     */
+    public JAEC(int tail_length, float sample_rate, int engine, int references) {
+        this(tail_length, sample_rate, engine, null, references, null);
+    }
+
+    /**
+     * The constructor of AEC of another microphone with the same far-end
+     * signal, for JAEC_MultiMic. far-end history is shared with the owner,
+     * which must process every frame before this one. only the time domain
+     * and block frequency engines, without delay estimation.
+     *
+     * @param owner : AEC adding far-end frames to the shared history.
+     */
+    JAEC(JAEC owner) {
+        this(owner.maxTailLength, owner.sample_rate, owner.engine, null, owner.references, owner);
+    }
 
+    private JAEC(int tail_length, float sample_rate, int engine, JAEC_Arena arena, int references, JAEC owner) {
 
+        if (engine < ENGINE_TIME_DOMAIN || engine > ENGINE_SUBBAND) {
+            throw new IllegalArgumentException("unknown AEC engine: " + engine);
+        }
+        if (arena != null && engine != ENGINE_TIME_DOMAIN) {
+            throw new IllegalArgumentException("only the time domain engine can be off-heap: " + engine);
+        }
+        if (references <= 0) {
+            throw new IllegalArgumentException("number of far-end signals must be positive: " + references);
+        }
+        if (references > 1 && engine != ENGINE_BLOCK_FREQUENCY) {
+            throw new IllegalArgumentException("only the block frequency engine can have several far-end signals: " + engine);
+        }
+        if (owner != null) {
+            if (engine != ENGINE_TIME_DOMAIN && engine != ENGINE_BLOCK_FREQUENCY) {
+                throw new IllegalArgumentException("far-end history can only be shared by the time domain and block frequency engines: " + engine);
+            }
+            if (owner.farEndOwner != null || owner.segment != null || owner.delayEstimator != null) {
+                throw new IllegalArgumentException("far-end history can only be shared from AEC on the heap without delay estimation");
+            }
+        }
+        this.engine = engine;
         this.tailLength = tail_length;
+        this.maxTailLength = tail_length;
         this.sample_rate = sample_rate;
         //initial FFT convert
         this.fft = new FFT_HalfComplex(this.frameSize);
@@ -181,16 +403,44 @@ public class JAEC {
          */
         this.betaMax = 0.5f * this.frameSize / this.sample_rate;
 
-        //initial weight value with Zero.
-        this.weights = new float[this.tailLength];
-        for (int i = 0; i < this.tailLength; i++) {
-            this.weights[i] = 0;
+        //weights of this class are only used in time domain, the other engines have their own.
+        boolean ownWeights = engine == ENGINE_TIME_DOMAIN || engine == ENGINE_PROPORTIONATE;
+        if (owner != null) {
+            if (ownWeights) {
+                this.weights = new float[this.maxTailLength];
+            }
+            this.Xs_T = owner.Xs_T;
+            this.farEndOwner = owner;
+            if (owner.tailSumSquares == null) {
+                owner.tailSumSquares = new float[this.frameSize / 2];
+            }
+        } else if (arena != null) {
+            //one segment: [weights, far-end history], the history starts at a cache line.
+            int historyBase = (this.maxTailLength + 15) / 16 * 16;
+            this.arena = arena;
+            this.segment = arena.allocate(historyBase + XFIFOBuffer.size(this.frameSize, this.maxTailLength));
+            this.Xs_T = new XFIFOBuffer(this.frameSize, this.maxTailLength, this.segment, historyBase);
+        } else {
+            if (ownWeights) {
+                //initial weight value with Zero.
+                this.weights = new float[this.maxTailLength];
+                for (int i = 0; i < this.maxTailLength; i++) {
+                    this.weights[i] = 0;
+                }
+            }
+            //far-end history of the fixed point engine is in Q15 (JAEC_FixedPoint).
+            if (engine != ENGINE_FIXED_POINT) {
+                this.Xs_T = new XFIFOArray(this.frameSize, this.maxTailLength);
+            }
         }
 
         this.Xs_Frame_Buffer_T = new float[this.frameSize];
+        this.references = references;
+        if (references > 1) {
+            this.Xs_Frame_Buffers_T = new float[references][this.frameSize];
+        }
         this.Ds_Frame_Buffer_T = new float[this.frameSize];
         this.Ds_Frame_T = new float[this.frameSize];
-        this.Xs_T = new XFIFOArray(this.frameSize, this.tailLength);
         this.Ys_T = new float[this.frameSize];
         //this.fftNu*2(complex)/2(half complex) in JTransforms Format
         /**
@@ -210,6 +460,7 @@ public class JAEC {
         for (int i = 0; i < this.frameSize / 2 + 1; i++) {
             this.mjus_overlap_HalfComplex_F[i] = 0.25f;
         }
+        this.mjus_T = new float[this.frameSize];
         //initialise Mju from initial frequency domain.
         this.mju = this.getMju();
 
@@ -219,68 +470,287 @@ public class JAEC {
         this.rey_HalfComplex_F = new float[this.frameSize / 2 + 1];
         this.ryy_HalfComplex_F = new float[this.frameSize / 2 + 1];
 
+        this.Ys_Power_F = new float[this.frameSize / 2 + 1];
+        this.Ys_pre_Power_F = new float[this.frameSize / 2 + 1];
+        this.Es_Power_F = new float[this.frameSize / 2 + 1];
+        this.Es_pre_Power_F = new float[this.frameSize / 2 + 1];
+
         this.filter = new JAEC_Filter(this.lowPassBand, this.highPassBand, this.sample_rate, this.frameSize);
+        this.biquadFilter = new JAEC_BiquadFilter(this.lowPassBand, this.highPassBand, this.sample_rate);
+
+        if (this.engine == ENGINE_BLOCK_FREQUENCY) {
+            this.blockFilter = owner != null ? new JAEC_MDF(owner.blockFilter) : new JAEC_MDF(this.frameSize, this.maxTailLength, references);
+        } else if (this.engine == ENGINE_PROPORTIONATE) {
+            this.proportionate = new JAEC_Proportionate(this.maxTailLength);
+        } else if (this.engine == ENGINE_FIXED_POINT) {
+            this.fixedPoint = new JAEC_FixedPoint(this.frameSize, this.maxTailLength);
+        } else if (this.engine == ENGINE_SUBBAND) {
+            this.subband = new JAEC_Subband(this.frameSize / 2, this.maxTailLength);
+        }
+    }
 
-        System.out.println("INFO: AEC Initialisation \n"
-                + "         frame(fft):" + this.frameSize + ",\n"
-                + "         tail(weights):" + this.tailLength + ",\n"
-                + "         sample rate:" + (int) this.sample_rate + ".");
+    /**
+     * the configuration of AEC, e.g. for a log line of the host. JAEC does
+     * not print it, as sessions are created on demand by the thousand.
+     *
+     * @return : frame size, tail length, sample rate, engine and kernels.
+     */
+    @Override
+    public String toString() {
+        return "AEC frame(fft):" + this.frameSize
+                + ", tail(weights):" + this.tailLength
+                + ", sample rate:" + (int) this.sample_rate
+                + ", engine:" + (this.engine == ENGINE_BLOCK_FREQUENCY ? "block frequency"
+                        : this.engine == ENGINE_PROPORTIONATE ? "proportionate"
+                        : this.engine == ENGINE_FIXED_POINT ? "fixed point"
+                        : this.engine == ENGINE_SUBBAND ? "sub-band" : "time domain")
+                + ", kernels:" + this.kernels.getName();
     }
 
     /**
      * function to restart AEC. (change Public to private after testing.)
+     * all buffers are cleared in place, nothing is allocated.
      */
     public void reset() {
+        this.clearState();
+        this.metrics.reset();
+        this.justRestart = true;
+    }
+
+    /**
+     * clear weights, signal buffers, power and correlation estimates and
+     * learning rates of AEC and its engine, in place.
+     */
+    private void clearState() {
         //initial weight value with Zero.
-        this.weights = new float[this.tailLength];
-        for (int i = 0; i < this.tailLength; i++) {
-            this.weights[i] = 0;
-        }
+        this.clearWeights();
 
-        this.Xs_Frame_Buffer_T = new float[this.frameSize];
-        this.Ds_Frame_Buffer_T = new float[this.frameSize];
-        this.Ds_Frame_T = new float[this.frameSize];
-        this.Xs_T.reset();
-        this.Ys_T = new float[this.frameSize];
-        //this.fftNu*2(complex)/2(half complex) in JTransforms Format
-        /**
-         * Re[0]=a[0]; Im[0]=0;
-         *
-         * Re[k] = a[2*k], 0<k<n/2 Im[k] = a[2*k+1] 0<k<n/2
-         *
-         * Re[n/2]=a[1]; Im[n/2]=0;
-         */
-        this.Ys_HalfCompex_F = new float[this.frameSize];
-        this.Ys_pre_HalfCompex_F = new float[this.frameSize];
-        this.Es_T = new float[this.frameSize];
-        this.Es_HalfCompex_F = new float[this.frameSize];
-        this.Es_pre_HalfCompex_F = new float[this.frameSize];
-        //only calcuate and store the latest mju in frequency domain for inverse FFT. 
-        this.mjus_overlap_HalfComplex_F = new float[this.frameSize / 2 + 1];
-        for (int i = 0; i < this.frameSize / 2 + 1; i++) {
-            this.mjus_overlap_HalfComplex_F[i] = 0.25f;
+        //shared far-end history and the current frame are kept, so the frames stay aligned with the other microphones.
+        if (!this.sharesFarEnd()) {
+            Arrays.fill(this.Xs_Frame_Buffer_T, 0f);
+            for (int r = 0; this.Xs_Frame_Buffers_T != null && r < this.references; r++) {
+                Arrays.fill(this.Xs_Frame_Buffers_T[r], 0f);
+            }
+            Arrays.fill(this.Ds_Frame_Buffer_T, 0f);
+            if (this.Xs_T != null) {
+                this.Xs_T.reset();
+            }
+            this.countInBuffer = 0;
         }
+        Arrays.fill(this.Ds_Frame_T, 0f);
+        Arrays.fill(this.Ys_T, 0f);
+        Arrays.fill(this.Ys_HalfCompex_F, 0f);
+        Arrays.fill(this.Ys_pre_HalfCompex_F, 0f);
+        Arrays.fill(this.Es_T, 0f);
+        Arrays.fill(this.Es_HalfCompex_F, 0f);
+        Arrays.fill(this.Es_pre_HalfCompex_F, 0f);
+        //only calcuate and store the latest mju in frequency domain for inverse FFT. 
+        Arrays.fill(this.mjus_overlap_HalfComplex_F, 0.25f);
+        Arrays.fill(this.mjus_T, 0f);
         //initialise Mju from initial frequency domain.
         this.mju = this.getMju();
         this.eit = 0;
 
-        this.pe_HalfComplex_F = new float[this.frameSize / 2 + 1];
-        this.py_HalfComplex_F = new float[this.frameSize / 2 + 1];
+        Arrays.fill(this.pe_HalfComplex_F, 0f);
+        Arrays.fill(this.py_HalfComplex_F, 0f);
 
-        this.rey_HalfComplex_F = new float[this.frameSize / 2 + 1];
-        this.ryy_HalfComplex_F = new float[this.frameSize / 2 + 1];
+        Arrays.fill(this.rey_HalfComplex_F, 0f);
+        Arrays.fill(this.ryy_HalfComplex_F, 0f);
+
+        Arrays.fill(this.Ys_Power_F, 0f);
+        Arrays.fill(this.Ys_pre_Power_F, 0f);
+        Arrays.fill(this.Es_Power_F, 0f);
+        Arrays.fill(this.Es_pre_Power_F, 0f);
 
         this.errorCount = 0;
         this.totalCount = 0;
-        this.countInBuffer = 0;
 
         //variables for E pro-AEC-process
         this.countInE_Buffer = 0;
-        this.e1 = new float[this.frameSize];
-        this.e2 = new float[this.frameSize];
+        Arrays.fill(this.e1, 0f);
+        Arrays.fill(this.e2, 0f);
+        this.biquadFilter.reset();
+
+        if (this.blockFilter != null) {
+            if (this.sharesFarEnd()) {
+                this.blockFilter.clearWeights();
+            } else {
+                this.blockFilter.reset();
+            }
+        }
+        if (this.proportionate != null) {
+            this.proportionate.reset();
+        }
+        if (this.fixedPoint != null) {
+            this.fixedPoint.reset();
+        }
+        if (this.subband != null) {
+            this.subband.reset();
+        }
+    }
+
+    /**
+     * take adapted weights every that many frames of far-end signal as a
+     * checkpoint, if no error happened and the output was not louder than
+     * near-end signal (ERLE of at least 0 dB) since the previous one. a
+     * divergence then rolls AEC back to the checkpoint instead of
+     * restarting from zero, unless it diverges again before the next
+     * checkpoint.
+     *
+     * @param frames : number of frames between two checkpoints, 0 to
+     * disable.
+     */
+    public void setCheckpointInterval(int frames) {
+        if (frames < 0) {
+            throw new IllegalArgumentException("checkpoint interval must not be negative: " + frames);
+        }
+        this.checkpointInterval = frames;
+        this.framesToCheckpoint = frames;
+        this.errorsAtCheckpoint = this.errorCount;
+    }
 
-        System.out.println("INFO: AEC has been reset.");
+    /**
+     * keep a copy of the adapted state in memory: weights, power and
+     * correlation estimates of every frequency bin and learning rates.
+     * nothing is allocated after the first call.
+     */
+    public void checkpoint() {
+        int bins = this.frameSize / 2 + 1;
+        if (this.checkpointSpectra == null) {
+            this.checkpointSpectra = new float[5 * bins];
+            if (this.fixedPoint == null && this.blockFilter == null && this.subband == null) {
+                this.checkpointWeights = new float[this.maxTailLength];
+            }
+        }
+        this.checkpointMju = this.mju;
+        this.checkpointEit = this.eit;
+        System.arraycopy(this.mjus_overlap_HalfComplex_F, 0, this.checkpointSpectra, 0, bins);
+        System.arraycopy(this.py_HalfComplex_F, 0, this.checkpointSpectra, bins, bins);
+        System.arraycopy(this.pe_HalfComplex_F, 0, this.checkpointSpectra, 2 * bins, bins);
+        System.arraycopy(this.rey_HalfComplex_F, 0, this.checkpointSpectra, 3 * bins, bins);
+        System.arraycopy(this.ryy_HalfComplex_F, 0, this.checkpointSpectra, 4 * bins, bins);
+        if (this.blockFilter != null) {
+            this.blockFilter.checkpoint();
+        } else if (this.fixedPoint != null) {
+            this.fixedPoint.checkpoint();
+        } else if (this.subband != null) {
+            this.subband.checkpoint();
+        } else if (this.segment != null) {
+            for (int k = 0; k < this.maxTailLength; k++) {
+                this.checkpointWeights[k] = this.segment.getFloat(k << 2);
+            }
+        } else {
+            System.arraycopy(this.weights, 0, this.checkpointWeights, 0, this.maxTailLength);
+        }
+        this.hasCheckpoint = true;
+        this.rolledBack = false;
+    }
+
+    /**
+     * restart AEC from the latest checkpoint: the adapted state of the
+     * checkpoint is restored and the estimated echo and output are cleared,
+     * far-end history is kept, so AEC goes on converged at once. nothing is
+     * allocated.
+     *
+     * @return : false if there is no checkpoint (none is taken yet, or the
+     * far-end signal has been aligned again after it), nothing is changed.
+     */
+    public boolean rollback() {
+        if (!this.hasCheckpoint) {
+            return false;
+        }
+        int bins = this.frameSize / 2 + 1;
+        this.mju = this.checkpointMju;
+        this.eit = this.checkpointEit;
+        System.arraycopy(this.checkpointSpectra, 0, this.mjus_overlap_HalfComplex_F, 0, bins);
+        System.arraycopy(this.checkpointSpectra, bins, this.py_HalfComplex_F, 0, bins);
+        System.arraycopy(this.checkpointSpectra, 2 * bins, this.pe_HalfComplex_F, 0, bins);
+        System.arraycopy(this.checkpointSpectra, 3 * bins, this.rey_HalfComplex_F, 0, bins);
+        System.arraycopy(this.checkpointSpectra, 4 * bins, this.ryy_HalfComplex_F, 0, bins);
+        if (this.blockFilter != null) {
+            this.blockFilter.rollback();
+        } else if (this.fixedPoint != null) {
+            this.fixedPoint.rollback();
+        } else if (this.subband != null) {
+            this.subband.rollback();
+        } else if (this.segment != null) {
+            for (int k = 0; k < this.maxTailLength; k++) {
+                this.segment.putFloat(k << 2, this.checkpointWeights[k]);
+            }
+        } else {
+            System.arraycopy(this.checkpointWeights, 0, this.weights, 0, this.maxTailLength);
+        }
+        //echo and output of the diverged weights.
+        Arrays.fill(this.Ys_T, 0f);
+        Arrays.fill(this.Es_T, 0f);
+        Arrays.fill(this.Ys_HalfCompex_F, 0f);
+        Arrays.fill(this.Ys_pre_HalfCompex_F, 0f);
+        Arrays.fill(this.Es_HalfCompex_F, 0f);
+        Arrays.fill(this.Es_pre_HalfCompex_F, 0f);
+        Arrays.fill(this.Ys_Power_F, 0f);
+        Arrays.fill(this.Ys_pre_Power_F, 0f);
+        Arrays.fill(this.Es_Power_F, 0f);
+        Arrays.fill(this.Es_pre_Power_F, 0f);
+        this.errorCount = 0;
+        //learning rate is adapted at once, as after readSnapshot().
+        this.initialCount = 2 * (this.frameSize + this.tailLength) + 1;
+        this.errorsAtCheckpoint = 0;
+        this.framesToCheckpoint = this.checkpointInterval;
+        this.rolledBack = true;
+        this.metrics.rollback();
         this.justRestart = true;
+        return true;
+    }
+
+    /**
+     * restart after too many errors: roll back to the checkpoint, or reset
+     * if there is none or AEC diverged again since the latest rollback.
+     */
+    private void restart() {
+        if (!this.hasCheckpoint || this.rolledBack || !this.rollback()) {
+            this.reset();
+        }
+    }
+
+    /**
+     * take a checkpoint at the end of a frame when it is due.
+     *
+     * @param mjuUpdating : true after the initial convergence.
+     */
+    private void checkpointIfGood(boolean mjuUpdating) {
+        if (--this.framesToCheckpoint > 0) {
+            return;
+        }
+        this.framesToCheckpoint = this.checkpointInterval;
+        if (mjuUpdating && this.errorCount == this.errorsAtCheckpoint && this.metrics.getErle() >= 0f) {
+            this.checkpoint();
+        }
+        this.errorsAtCheckpoint = this.errorCount;
+    }
+
+    /**
+     * make AEC the same as a new one of the same engine, tail length and
+     * sample rate, for JAEC_Pool: state is cleared in place, and delay
+     * estimation, far-end gating, parallelism, checkpoints and metrics are
+     * back to their defaults.
+     */
+    void recycle() {
+        if (this.delayEstimator != null) {
+            this.delayEstimator = null;
+            this.farEndDelayLine = null;
+            this.setAlignment(0, this.maxTailLength);
+        }
+        this.clearState();
+        this.initialCount = 0;
+        this.farEndGating = true;
+        this.preFilter = PRE_FILTER_FFT;
+        this.farEndActive = true;
+        this.setParallelism(null);
+        this.checkpointInterval = 0;
+        this.hasCheckpoint = false;
+        this.rolledBack = false;
+        this.metrics.clear();
+        this.justRestart = false;
     }
 
     /**
@@ -294,24 +764,16 @@ public class JAEC {
      */
     public short echoCancel(short farEndValue, short nearEndValue) {
 
+        this.checkOneFarEnd();
         this.justRestart = false;
 
         /**
-         * I. Output echo estimation of a frame size before.
+         * I. Output echo estimation of a frame size before. echo and output
+         * (e) of the whole frame have been calculated by processFrame(), as
+         * far-end and near-end signals of the frame are all known.
          */
-        //1. calculate echo for signal frame length before.
-        float y_nom = this.calculateEcho(this.countInBuffer);
-
-        this.Ys_T[this.countInBuffer] = y_nom; // save for mju updating.
-        //2. calcuate output (e)
-        //    d(n)-y(n)
         float d_nom = this.Ds_Frame_T[this.countInBuffer];
-        float e_nom = d_nom - y_nom;
-
-        this.Es_T[this.countInBuffer] = e_nom; // save for mju updating.
-
-        //3. update weight
-        this.updateWeights(e_nom, this.countInBuffer);
+        float e_nom = this.Es_T[this.countInBuffer];
 
 
         /**
@@ -328,25 +790,7 @@ public class JAEC {
         this.countInBuffer++;
         //process a complete frame when we get enough.
         if (this.countInBuffer == this.frameSize / 2) {//over-lap save
-            //update mju, after all relevant y and e have been calculated for x of an entire frame
-            //keep initial value of learning rate for twice the filter length.
-            if ((this.initialCount > 2 * (this.frameSize + this.tailLength))) {
-                this.updateMju();
-            }
-            //apply AEC pre-process for an entire frame
-            //far-end signal has been band-pass filted by far-end PC, so no need to process it again.
-            //float[] x_frame_preprocessed = this.preFilter.bandPass(Xs_Frame_Buffer_T);
-            float[] d_frame_preprocessed = this.filter.bandPass(Ds_Frame_Buffer_T);
-            //copy pre-processed frame into the main array for echo calculation.
-            for (int i = 0; i < this.frameSize / 2; i++) {//over-lap save
-                this.Xs_T.add(Xs_Frame_Buffer_T[i]);
-                this.Ds_Frame_T[i] = d_frame_preprocessed[i];
-            }
-
-            //over-lap save
-            System.arraycopy(this.Ys_T, 0, this.Ys_T, this.frameSize / 2, this.frameSize / 2);
-            System.arraycopy(this.Es_T, 0, this.Es_T, this.frameSize / 2, this.frameSize / 2);
-
+            this.processFrame();
             this.countInBuffer = 0;
         }
 
@@ -365,8 +809,7 @@ public class JAEC {
         //verify e_nom, value bigger than 1 or smaller than -1 could be lead by failed estimation or unprocessible signals (like background noise with an extremely high intensity)
         if (e_nom > 1 || e_nom < -1) {
             this.errorCount++;
-            System.out.println("INFO:AEC Warning: Mic(e) Estimation Overflow![Count:"
-                    + this.errorCount + "/" + this.restartThreshold + "/" + this.totalCount + ",value:" + e_nom + "]");
+            this.metrics.overflow(this.errorCount, e_nom);
             e_nom = d_nom; // no echo cancellation
 
         }
@@ -374,7 +817,7 @@ public class JAEC {
 
         if (this.errorCount >= this.restartThreshold) {
             // too many errors, and the AEC need to restart.
-            this.reset();
+            this.restart();
             // return the original far-end signal without any process.
             e = farEndValue;
         }
@@ -384,6 +827,738 @@ public class JAEC {
         //return proprocessE(e);
     }
 
+    /**
+     * AEC on a block of signals, it gives the same output as calling
+     * echoCancel(short, short) for every sample, without the cost of calling
+     * for every sample. Nothing is allocated, output is written into the
+     * buffer of caller.
+     *
+     * @param far: the acoustic signal from far-end side.
+     * @param near: the acoustic signal from local microphone, including local
+     * speech and echo.
+     * @param out: adjusted near-end signal without echo.
+     * @param off: the first index of the block in far, near and out.
+     * @param len: the number of samples of the block.
+     */
+    public void echoCancel(short[] far, short[] near, short[] out, int off, int len) {
+        this.checkOneFarEnd();
+        this.justRestart = false;
+
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            //never go across the end of a frame, and so never more than the bulk buffers.
+            int n = Math.min(end - i, this.frameSize / 2 - this.countInBuffer);
+            for (int j = 0; j < n; j++) {
+                this.x_Bulk_Buffer[j] = far[i + j] / SHORT_RANGE;
+                this.d_Bulk_Buffer[j] = near[i + j] / SHORT_RANGE;
+            }
+            n = this.processSegment(this.x_Bulk_Buffer, this.d_Bulk_Buffer, this.e_Bulk_Buffer, 0, n);
+            for (int j = 0; j < n; j++) {
+                out[i + j] = clipFloat2Short(this.e_Bulk_Buffer[j] * SHORT_RANGE);
+            }
+            i += n;
+        }
+    }
+
+    /**
+     * AEC on a block of normalised signals (-1f to 1f), the conversion of
+     * SHORT is skipped completely. Nothing is allocated, output is written
+     * into the buffer of caller.
+     *
+     * @param far: the acoustic signal from far-end side.
+     * @param near: the acoustic signal from local microphone, including local
+     * speech and echo.
+     * @param out: adjusted near-end signal without echo, out of the range -1f
+     * to 1f is not clipped.
+     * @param off: the first index of the block in far, near and out.
+     * @param len: the number of samples of the block.
+     */
+    public void echoCancel(float[] far, float[] near, float[] out, int off, int len) {
+        this.checkOneFarEnd();
+        this.justRestart = false;
+
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = Math.min(end - i, this.frameSize / 2 - this.countInBuffer);
+            i += this.processSegment(far, near, out, i, n);
+        }
+    }
+
+    /**
+     * AEC on a block of several far-end signals, as many as the references
+     * of the constructor. Nothing is allocated.
+     *
+     * @param far: the acoustic signal of every loudspeaker, in the order of
+     * references.
+     * @param near: the acoustic signal from local microphone, including local
+     * speech and echo.
+     * @param out: adjusted near-end signal without echo.
+     * @param off: the first index of the block in far, near and out.
+     * @param len: the number of samples of the block.
+     */
+    public void echoCancel(short[][] far, short[] near, short[] out, int off, int len) {
+        this.justRestart = false;
+
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = Math.min(end - i, this.frameSize / 2 - this.countInBuffer);
+            for (int j = 0; j < n; j++) {
+                this.d_Bulk_Buffer[j] = near[i + j] / SHORT_RANGE;
+            }
+            this.bufferFarEnds(far, null, i, n);
+            n = this.processSegment(this.x_Bulk_Buffer, this.d_Bulk_Buffer, this.e_Bulk_Buffer, 0, n);
+            for (int j = 0; j < n; j++) {
+                out[i + j] = clipFloat2Short(this.e_Bulk_Buffer[j] * SHORT_RANGE);
+            }
+            i += n;
+        }
+    }
+
+    /**
+     * AEC on a block of several normalised far-end signals (-1f to 1f), as
+     * many as the references of the constructor. Nothing is allocated.
+     *
+     * @param far: the acoustic signal of every loudspeaker, in the order of
+     * references.
+     * @param near: the acoustic signal from local microphone, including local
+     * speech and echo.
+     * @param out: adjusted near-end signal without echo, out of the range -1f
+     * to 1f is not clipped.
+     * @param off: the first index of the block in far, near and out.
+     * @param len: the number of samples of the block.
+     */
+    public void echoCancel(float[][] far, float[] near, float[] out, int off, int len) {
+        this.justRestart = false;
+
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = Math.min(end - i, this.frameSize / 2 - this.countInBuffer);
+            System.arraycopy(near, i, this.d_Bulk_Buffer, 0, n);
+            this.bufferFarEnds(null, far, i, n);
+            n = this.processSegment(this.x_Bulk_Buffer, this.d_Bulk_Buffer, this.e_Bulk_Buffer, 0, n);
+            System.arraycopy(this.e_Bulk_Buffer, 0, out, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * buffer every far-end signal for the current frame, and their joint
+     * magnitude sqrt(sum(x*x)) into x_Bulk_Buffer, which goes through the
+     * steps of one far-end signal (history for far-end gating, statistics).
+     * the magnitude is never output, on a restart it is the sample of the
+     * first far-end signal. one far-end signal goes into x_Bulk_Buffer as it
+     * is.
+     *
+     * @param shortFar : far-end signals of SHORT, or null.
+     * @param floatFar : normalised far-end signals, or null.
+     * @param off : the first index in far-end signals.
+     * @param len : the number of samples, not across the end of the frame.
+     */
+    private void bufferFarEnds(short[][] shortFar, float[][] floatFar, int off, int len) {
+        if ((shortFar != null ? shortFar.length : floatFar.length) != this.references) {
+            throw new IllegalArgumentException("far-end signal of every reference is needed: " + this.references);
+        }
+        if (this.Xs_Frame_Buffers_T == null) {
+            for (int j = 0; j < len; j++) {
+                this.x_Bulk_Buffer[j] = shortFar != null ? shortFar[0][off + j] / SHORT_RANGE : floatFar[0][off + j];
+            }
+            return;
+        }
+        Arrays.fill(this.x_Bulk_Buffer, 0, len, 0f);
+        for (int r = 0; r < this.references; r++) {
+            float[] x_r = this.Xs_Frame_Buffers_T[r];
+            for (int j = 0; j < len; j++) {
+                float x = shortFar != null ? shortFar[r][off + j] / SHORT_RANGE : floatFar[r][off + j];
+                x_r[this.countInBuffer + j] = x;
+                this.x_Bulk_Buffer[j] += x * x;
+            }
+        }
+        for (int j = 0; j < len; j++) {
+            this.x_Bulk_Buffer[j] = (float) Math.sqrt(this.x_Bulk_Buffer[j]);
+        }
+    }
+
+    /**
+     * the API of one far-end signal can not be used for several.
+     */
+    private void checkOneFarEnd() {
+        if (this.Xs_Frame_Buffers_T != null) {
+            throw new IllegalStateException("far-end signal of every reference is needed: " + this.references);
+        }
+    }
+
+    /**
+     * AEC on normalised signals within one frame, the steps are the same as
+     * echoCancel(short, short).
+     *
+     * @param far: the acoustic signal from far-end side.
+     * @param near: the acoustic signal from local microphone.
+     * @param out: adjusted near-end signal without echo.
+     * @param off: the first index in far, near and out.
+     * @param len: the number of samples, must not go across the end of the
+     * current frame.
+     * @return : the number of samples processed, smaller than len if AEC is
+     * restarted.
+     */
+    private int processSegment(float[] far, float[] near, float[] out, int off, int len) {
+        int initialMax = 2 * (this.frameSize + this.tailLength);
+        int frameEnd = this.frameSize / 2 - 1;
+        for (int j = 0; j < len; j++) {
+            int k = this.countInBuffer + j;
+            float x_nom = far[off + j];
+            //I. Output echo estimation of a frame size before.
+            float d_nom = this.Ds_Frame_T[k];
+            float e_nom = this.Es_T[k];
+            //II. buffer latest input, and process the frame when we get enough.
+            this.Xs_Frame_Buffer_T[k] = x_nom;
+            this.Ds_Frame_Buffer_T[k] = near[off + j];
+            if (k == frameEnd) {
+                this.processFrame();
+            }
+            //III. necessary statistics.
+            this.totalCount++;
+            if (x_nom != 0 && this.initialCount <= initialMax) {
+                this.initialCount++;
+            }
+            //IV. AEC Output.
+            if (e_nom > 1 || e_nom < -1) {
+                this.errorCount++;
+                this.metrics.overflow(this.errorCount, e_nom);
+                e_nom = d_nom; // no echo cancellation
+            }
+            if (this.errorCount >= this.restartThreshold) {
+                //with several far-end signals x_nom is their joint magnitude, the first one is taken before it is cleared.
+                float x_out = this.Xs_Frame_Buffers_T != null ? this.Xs_Frame_Buffers_T[0][k] : x_nom;
+                // too many errors, and the AEC need to restart.
+                this.restart();
+                if (this.sharesFarEnd()) {
+                    //the current frame is kept (see clearState()).
+                    this.countInBuffer = k == frameEnd ? 0 : k + 1;
+                }
+                // return the original far-end signal without any process.
+                out[off + j] = x_out;
+                return j + 1;
+            }
+            out[off + j] = e_nom;
+        }
+        this.countInBuffer += len;
+        if (this.countInBuffer == this.frameSize / 2) {
+            this.countInBuffer = 0;
+        }
+        return len;
+    }
+
+    /**
+     * enable bulk delay estimation. once the delay between far-end and
+     * near-end signals is found, the far-end signal is delayed by it (less a
+     * small margin) and the tail is shortened to the length of the echo
+     * response, which cuts the cost of echo estimation and weight updating.
+     * weights are cleared whenever the far-end signal is aligned again.
+     *
+     * @param responseLength : the length of the echo response after the bulk
+     * delay, counted by the number of samples.
+     */
+    public void enableDelayEstimation(int responseLength) {
+        if (this.sharesFarEnd()) {
+            throw new IllegalStateException("delay estimation can not be enabled with shared far-end history");
+        }
+        if (this.references > 1) {
+            throw new IllegalStateException("delay estimation can not be enabled with several far-end signals");
+        }
+        if (responseLength <= 0 || responseLength > this.maxTailLength) {
+            throw new IllegalArgumentException("response length must be from 1 to " + this.maxTailLength + ": " + responseLength);
+        }
+        this.responseLength = responseLength;
+        this.delayEstimator = new JAEC_DelayEstimator(this.frameSize / 2, this.maxTailLength);
+        this.farEndDelayLine = new float[this.maxTailLength + 1];
+        this.delayLinePointer = 0;
+    }
+
+    /**
+     * get the bulk delay applied to far-end signal.
+     *
+     * @return : delay in samples, 0 before the delay is found.
+     */
+    public int getBulkDelay() {
+        return this.bulkDelay;
+    }
+
+    /**
+     * get the number of far-end signals.
+     *
+     * @return : the number of references.
+     */
+    public int getReferences() {
+        return this.references;
+    }
+
+    /**
+     * get the number of weights in use.
+     *
+     * @return : the tail length.
+     */
+    public int getTailLength() {
+        return this.tailLength;
+    }
+
+    /**
+     * get the latency of AEC, the output of a near-end sample is given that
+     * many samples later (half a frame, for overlap-save, and the filterbank
+     * of ENGINE_SUBBAND).
+     *
+     * @return : the latency in samples.
+     */
+    public int getLatency() {
+        return this.frameSize / 2 + (this.subband != null ? this.subband.getDelay() : 0);
+    }
+
+    /**
+     * get the number of samples to the end of the current (half) frame, for
+     * JAEC_MultiMic.
+     *
+     * @return : the number of samples before the next frame is processed.
+     */
+    int getSamplesToFrameEnd() {
+        return this.frameSize / 2 - this.countInBuffer;
+    }
+
+    /**
+     * @return : true if far-end history is shared with AEC of other
+     * microphones.
+     */
+    private boolean sharesFarEnd() {
+        return this.farEndOwner != null || this.tailSumSquares != null;
+    }
+
+    /**
+     * align far-end signal to the estimated delay and shorten the tail.
+     *
+     * @param delay : estimated delay in samples.
+     */
+    private void alignFarEnd(int delay) {
+        this.setAlignment(Math.max(0, delay - this.delayMargin), Math.min(this.responseLength, this.maxTailLength));
+        this.metrics.farEndAligned(delay, this.bulkDelay, this.tailLength);
+    }
+
+    private void clearWeights() {
+        if (this.segment != null) {
+            for (int k = 0; k < this.maxTailLength; k++) {
+                this.segment.putFloat(k << 2, 0f);
+            }
+        } else if (this.weights != null) {
+            Arrays.fill(this.weights, 0f);
+        }
+    }
+
+    /**
+     * give the off-heap segment back to its arena, AEC must not be used any
+     * more. nothing is done for AEC on the heap.
+     */
+    public void release() {
+        if (this.segment != null) {
+            this.arena.free(this.segment);
+            this.segment = null;
+        }
+    }
+
+    /**
+     * set the bulk delay of far-end signal and the tail length, far-end
+     * history and weights are cleared.
+     *
+     * @param bulkDelay : delay applied to far-end signal.
+     * @param tailLength : number of weights in use.
+     */
+    private void setAlignment(int bulkDelay, int tailLength) {
+        this.bulkDelay = bulkDelay;
+        this.tailLength = tailLength;
+        //history, weights and checkpoint of the old alignment are useless.
+        this.hasCheckpoint = false;
+        //shared far-end history is kept, it is always for the whole tail.
+        if (!this.sharesFarEnd() && this.Xs_T != null) {
+            this.Xs_T.setTailLength(this.tailLength);
+            this.Xs_T.reset();
+        }
+        this.clearWeights();
+        if (this.blockFilter != null) {
+            this.blockFilter.setTailLength(this.tailLength);
+            if (this.sharesFarEnd()) {
+                this.blockFilter.clearWeights();
+            } else {
+                this.blockFilter.reset();
+            }
+        }
+        if (this.proportionate != null) {
+            this.proportionate.setTailLength(this.tailLength);
+        }
+        if (this.fixedPoint != null) {
+            this.fixedPoint.setTailLength(this.tailLength);
+            this.fixedPoint.reset();
+        }
+        if (this.subband != null) {
+            this.subband.setTailLength(this.tailLength);
+            this.subband.reset();
+        }
+    }
+
+    /**
+     * delay far-end signal of a frame by the bulk delay.
+     *
+     * @param x : far-end signal, the first half frame is replaced by the
+     * delayed signal.
+     */
+    private void delayFarEnd(float[] x) {
+        int size = this.farEndDelayLine.length;
+        for (int i = 0; i < this.frameSize / 2; i++) {
+            this.farEndDelayLine[this.delayLinePointer] = x[i];
+            int po = this.delayLinePointer - this.bulkDelay;
+            if (po < 0) {
+                po = po + size;
+            }
+            x[i] = this.farEndDelayLine[po];
+            this.delayLinePointer++;
+            if (this.delayLinePointer == size) {
+                this.delayLinePointer = 0;
+            }
+        }
+    }
+
+    /**
+     * process a complete (half) frame of buffered far-end and near-end
+     * signals: echo estimation, output (e) and weights of the whole frame are
+     * calculated by the selected engine.
+     */
+    private void processFrame() {
+        long start = System.nanoTime();
+        //keep initial value of learning rate for twice the filter length.
+        boolean mjuUpdating = this.initialCount > 2 * (this.frameSize + this.tailLength);
+        //update mju, after all relevant y and e have been calculated for x of an entire frame
+        //echo and output of the previous frame are not estimated if far-end signal was silent.
+        if (mjuUpdating && this.farEndActive && this.engine != ENGINE_BLOCK_FREQUENCY) {
+            this.updateMju();
+        }
+        //apply AEC pre-process for an entire frame
+        //far-end signal has been band-pass filted by far-end PC, so no need to process it again.
+        //float[] x_frame_preprocessed = this.preFilter.bandPass(Xs_Frame_Buffer_T);
+        //pre-processed frame is written into the main array for echo calculation, only the first half is used.
+        if (this.preFilter == PRE_FILTER_BIQUAD) {
+            this.biquadFilter.bandPass(this.Ds_Frame_Buffer_T, this.Ds_Frame_T, this.frameSize / 2);
+        } else {
+            this.filter.bandPass(this.Ds_Frame_Buffer_T, this.Ds_Frame_T);
+        }
+        if (this.delayEstimator != null) {
+            if (this.delayEstimator.push(this.Xs_Frame_Buffer_T, this.Ds_Frame_T)) {
+                //the strongest path can move a little within the response, align again only if it leaves the margin.
+                int delay = this.delayEstimator.getDelay();
+                if (this.tailLength == this.maxTailLength
+                        || delay < this.bulkDelay + this.delayMargin / 2
+                        || delay > this.bulkDelay + 2 * this.delayMargin) {
+                    this.alignFarEnd(delay);
+                }
+            }
+            this.delayFarEnd(this.Xs_Frame_Buffer_T);
+        }
+        float windowSumSquare;
+        int windowLength;
+        if (this.fixedPoint != null) {
+            this.fixedPoint.add(this.Xs_Frame_Buffer_T, this.frameSize / 2);
+            windowSumSquare = this.fixedPoint.getWindowSumSquare();
+            windowLength = this.fixedPoint.getLength();
+        } else {
+            if (this.farEndOwner == null) {
+                for (int i = 0; i < this.frameSize / 2; i++) {//over-lap save
+                    this.Xs_T.add(Xs_Frame_Buffer_T[i]);
+                }
+            }
+            windowSumSquare = this.Xs_T.getWindowSumSquare();
+            windowLength = this.Xs_T.getLength();
+        }
+        boolean farEndWasActive = this.farEndActive;
+        this.farEndActive = !this.farEndGating || windowSumSquare > this.farEndActivityFloor * windowLength;
+
+        //over-lap save
+        System.arraycopy(this.Ys_T, 0, this.Ys_T, this.frameSize / 2, this.frameSize / 2);
+        System.arraycopy(this.Es_T, 0, this.Es_T, this.frameSize / 2, this.frameSize / 2);
+
+        if (!this.farEndActive) {
+            //no echo, the output is the near-end signal and weights are kept.
+            Arrays.fill(this.Ys_T, 0, this.frameSize / 2, 0f);
+            if (this.subband != null) {
+                //the near-end signal still goes through the filterbank, for the same delay.
+                this.subband.passNearEnd(this.Ds_Frame_T, this.Es_T);
+            } else {
+                System.arraycopy(this.Ds_Frame_T, 0, this.Es_T, 0, this.frameSize / 2);
+            }
+            //sum square of the tail is not followed in the silent frame.
+            if (this.fixedPoint != null) {
+                this.fixedPoint.invalidateTailSumSquare();
+            } else {
+                this.Xs_T.invalidateTailSumSquare();
+            }
+        } else if (this.engine == ENGINE_BLOCK_FREQUENCY) {
+            if (this.farEndOwner == null) {
+                //silent far-end blocks were not pushed, their history is cleared instead.
+                if (!farEndWasActive) {
+                    this.blockFilter.clearFarEnd();
+                }
+                if (this.Xs_Frame_Buffers_T != null) {
+                    this.blockFilter.pushFarEnd(this.Xs_Frame_Buffers_T);
+                } else {
+                    this.blockFilter.pushFarEnd(this.Xs_Frame_Buffer_T);
+                }
+            }
+            //echo estimation of the entire frame at once.
+            this.blockFilter.estimateEcho(this.Ys_T);
+            for (int i = 0; i < this.frameSize / 2; i++) {
+                this.Es_T[i] = this.Ds_Frame_T[i] - this.Ys_T[i];
+            }
+            //learning rate of every frequency bin is adjusted by the latest frame before updating weights.
+            if (mjuUpdating) {
+                this.updateMju();
+            }
+            this.blockFilter.updateWeights(this.Es_T, this.mjus_overlap_HalfComplex_F);
+        } else if (this.engine == ENGINE_SUBBAND) {
+            //silent far-end blocks were not analysed, their history is cleared instead.
+            if (!farEndWasActive) {
+                this.subband.clearFarEnd();
+            }
+            this.subband.process(this.Xs_Frame_Buffer_T, this.Ds_Frame_T, this.mjus_overlap_HalfComplex_F, this.frameSize,
+                    this.Ys_T, this.Es_T);
+        } else if (this.engine == ENGINE_FIXED_POINT) {
+            int stepQ15 = JAEC_FixedPoint.toQ15(0.5f * this.mju);
+            for (int i = 0; i < this.frameSize / 2; i++) {
+                float y_nom = this.fixedPoint.estimateEcho(i) / (float) JAEC_FixedPoint.Q15_ONE;
+                this.Ys_T[i] = y_nom;
+                float e_nom = this.Ds_Frame_T[i] - y_nom;
+                this.Es_T[i] = e_nom;
+                this.fixedPoint.updateWeights(JAEC_FixedPoint.toQ15(e_nom), stepQ15, i);
+            }
+        } else {
+            if (this.proportionate != null) {
+                //gains and active regions of the latest weights.
+                this.proportionate.update(this.weights);
+            }
+            for (int i = 0; i < this.frameSize / 2; i++) {
+                //1. calculate echo for signal frame length before.
+                float y_nom = this.calculateEcho(i);
+                this.Ys_T[i] = y_nom; // save for mju updating.
+                //2. calcuate output (e)
+                //    d(n)-y(n)
+                float e_nom = this.Ds_Frame_T[i] - y_nom;
+                this.Es_T[i] = e_nom; // save for mju updating.
+                //3. update weight
+                this.updateWeights(e_nom, i);
+            }
+        }
+
+        this.metrics.frame(System.nanoTime() - start, this.farEndActive, this.mju, this.eit,
+                this.kernels.sumSquares(this.Ds_Frame_T, 0, this.frameSize / 2),
+                this.kernels.sumSquares(this.Es_T, 0, this.frameSize / 2));
+        if (this.checkpointInterval > 0 && this.farEndActive) {
+            this.checkpointIfGood(mjuUpdating);
+        }
+    }
+
+    /**
+     * enable or disable far-end activity gating (enabled by default). echo
+     * estimation and weight updating are skipped for frames without any
+     * far-end signal above -60 dBFS in the whole tail.
+     *
+     * @param enabled : true to skip silent frames.
+     */
+    public void setFarEndGating(boolean enabled) {
+        this.farEndGating = enabled;
+    }
+
+    /**
+     * select the band-pass pre-filter (50-5000 Hz) of near-end signal,
+     * PRE_FILTER_FFT by default. PRE_FILTER_BIQUAD costs a few operations
+     * for every sample instead of the FFT of every frame, and has no
+     * artefacts at the edges of frames, but shifts the phase of near-end
+     * signal a little (as any IIR filter), which the weights follow. the
+     * state of the new filter starts from silence.
+     *
+     * @param preFilter : PRE_FILTER_FFT or PRE_FILTER_BIQUAD.
+     */
+    public void setPreFilter(int preFilter) {
+        if (preFilter != PRE_FILTER_FFT && preFilter != PRE_FILTER_BIQUAD) {
+            throw new IllegalArgumentException("unknown pre-filter: " + preFilter);
+        }
+        if (preFilter != this.preFilter) {
+            this.biquadFilter.reset();
+        }
+        this.preFilter = preFilter;
+    }
+
+    /**
+     * process every block on a small pool, for very long tails (8k-16k taps)
+     * which one core can not process in real time: the partitions of the
+     * tail of ENGINE_BLOCK_FREQUENCY, or the bands of ENGINE_SUBBAND. the
+     * output is the same as without it. the time domain engines update
+     * weights for every sample, so they can not be split and ignore it.
+     *
+     * @param pool : the pool, or null for the calling thread only.
+     */
+    public void setParallelism(ForkJoinPool pool) {
+        if (this.blockFilter != null) {
+            this.blockFilter.setParallelism(pool);
+        }
+        if (this.subband != null) {
+            this.subband.setParallelism(pool);
+        }
+    }
+
+    /**
+     * get the metrics of AEC, they can be read by any thread.
+     *
+     * @return : metrics of AEC.
+     */
+    public JAEC_Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * write a snapshot of the adapted state: weights, power and correlation
+     * estimates of every frequency bin, learning rates, leakage, bulk delay
+     * and tail length. far-end history is not included.
+     *
+     * format (big-endian): magic "JAEC", version, payload length, payload,
+     * CRC32 of the payload.
+     *
+     * @param out : the output, it is not closed.
+     */
+    public void writeSnapshot(OutputStream out) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        payload.writeInt(this.engine);
+        payload.writeInt(this.frameSize);
+        payload.writeInt(this.maxTailLength);
+        payload.writeFloat(this.sample_rate);
+        payload.writeInt(this.references);
+        payload.writeInt(this.tailLength);
+        payload.writeInt(this.bulkDelay);
+        payload.writeFloat(this.mju);
+        payload.writeFloat(this.eit);
+        writeFloats(payload, this.mjus_overlap_HalfComplex_F);
+        writeFloats(payload, this.py_HalfComplex_F);
+        writeFloats(payload, this.pe_HalfComplex_F);
+        writeFloats(payload, this.rey_HalfComplex_F);
+        writeFloats(payload, this.ryy_HalfComplex_F);
+        if (this.blockFilter != null) {
+            this.blockFilter.writeWeights(payload);
+        } else if (this.fixedPoint != null) {
+            this.fixedPoint.writeWeights(payload);
+        } else if (this.subband != null) {
+            this.subband.writeWeights(payload);
+        } else {
+            for (int k = 0; k < this.tailLength; k++) {
+                payload.writeFloat(this.segment != null ? this.segment.getFloat(k << 2) : this.weights[k]);
+            }
+        }
+        payload.flush();
+
+        byte[] data = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        DataOutputStream o = new DataOutputStream(out);
+        o.writeInt(SNAPSHOT_MAGIC);
+        o.writeShort(SNAPSHOT_VERSION);
+        o.writeInt(data.length);
+        o.write(data);
+        o.writeInt((int) crc.getValue());
+        o.flush();
+    }
+
+    /**
+     * restore a snapshot written by writeSnapshot(), so AEC starts already
+     * converged. the snapshot must be of the same engine, tail length, sample
+     * rate and number of far-end signals (snapshots of version 1 have one),
+     * and delay estimation must be enabled if the snapshot has a bulk delay.
+     * nothing is changed if the snapshot is not valid.
+     *
+     * @param in : the input, it is not closed.
+     */
+    public void readSnapshot(InputStream in) throws IOException {
+        DataInputStream i = new DataInputStream(in);
+        if (i.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("not a JAEC snapshot");
+        }
+        int version = i.readUnsignedShort();
+        if (version != 1 && version != SNAPSHOT_VERSION) {
+            throw new IOException("unsupported snapshot version: " + version);
+        }
+        byte[] data = new byte[i.readInt()];
+        i.readFully(data);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (i.readInt() != (int) crc.getValue()) {
+            throw new IOException("snapshot is corrupted");
+        }
+
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(data));
+        int snapshotEngine = payload.readInt();
+        int snapshotFrameSize = payload.readInt();
+        int snapshotMaxTailLength = payload.readInt();
+        float snapshotSampleRate = payload.readFloat();
+        int snapshotReferences = version == 1 ? 1 : payload.readInt();
+        if (snapshotEngine != this.engine || snapshotFrameSize != this.frameSize
+                || snapshotMaxTailLength != this.maxTailLength || snapshotSampleRate != this.sample_rate
+                || snapshotReferences != this.references) {
+            throw new IOException("snapshot of another AEC [engine:" + snapshotEngine + ", frame:" + snapshotFrameSize
+                    + ", tail:" + snapshotMaxTailLength + ", sample rate:" + snapshotSampleRate
+                    + ", far-end signals:" + snapshotReferences + "]");
+        }
+        int snapshotTailLength = payload.readInt();
+        int snapshotBulkDelay = payload.readInt();
+        if (snapshotTailLength <= 0 || snapshotTailLength > this.maxTailLength || snapshotBulkDelay < 0
+                || ((snapshotBulkDelay != 0 || snapshotTailLength != this.maxTailLength) && this.delayEstimator == null)) {
+            throw new IOException("snapshot with bulk delay " + snapshotBulkDelay + " and tail " + snapshotTailLength
+                    + " needs delay estimation to be enabled");
+        }
+
+        this.setAlignment(snapshotBulkDelay, snapshotTailLength);
+        this.mju = payload.readFloat();
+        this.eit = payload.readFloat();
+        readFloats(payload, this.mjus_overlap_HalfComplex_F);
+        readFloats(payload, this.py_HalfComplex_F);
+        readFloats(payload, this.pe_HalfComplex_F);
+        readFloats(payload, this.rey_HalfComplex_F);
+        readFloats(payload, this.ryy_HalfComplex_F);
+        if (this.blockFilter != null) {
+            this.blockFilter.readWeights(payload);
+        } else if (this.fixedPoint != null) {
+            this.fixedPoint.readWeights(payload);
+        } else if (this.subband != null) {
+            this.subband.readWeights(payload);
+        } else {
+            for (int k = 0; k < this.tailLength; k++) {
+                if (this.segment != null) {
+                    this.segment.putFloat(k << 2, payload.readFloat());
+                } else {
+                    this.weights[k] = payload.readFloat();
+                }
+            }
+        }
+        //learning rate is adapted at once, it has been initialised by the snapshot.
+        this.initialCount = 2 * (this.frameSize + this.tailLength) + 1;
+        this.errorCount = 0;
+    }
+
+    private static void writeFloats(DataOutputStream out, float[] a) throws IOException {
+        for (int i = 0; i < a.length; i++) {
+            out.writeFloat(a[i]);
+        }
+    }
+
+    private static void readFloats(DataInputStream in, float[] a) throws IOException {
+        for (int i = 0; i < a.length; i++) {
+            a[i] = in.readFloat();
+        }
+    }
+
     /**
      * get the number of errors after the last reseting.
      *
@@ -432,13 +1607,21 @@ public class JAEC {
      * @return: echo estimation
      */
     private float calculateEcho(int indexInFrame) {
-        float echo = 0f;
-        for (int k = 0; k < this.tailLength; k++) {
-            //Wk(n)*x(n-k)
-            echo += this.weights[k] * this.Xs_T.getElement(this.tailLength + indexInFrame - k);
+        //Wk(n)*x(n-k), the tail of x is one contiguous slice of the mirrored FIFO.
+        int base = this.Xs_T.getOffset() + indexInFrame + 1;
+        if (this.proportionate != null) {
+            //only the active regions of the tail.
+            float y = 0f;
+            for (int r = 0; r < this.proportionate.getRuns(); r++) {
+                int start = this.proportionate.getRunStart(r);
+                y += this.kernels.dot(this.weights, start, this.Xs_T.getBuffer(), base + start, this.proportionate.getRunLength(r));
+            }
+            return y;
         }
-
-        return echo;
+        if (this.segment != null) {
+            return this.kernels.dot(this.segment, 0, this.segment, base, this.tailLength);
+        }
+        return this.kernels.dot(this.weights, 0, this.Xs_T.getBuffer(), base, this.tailLength);
     }
 
     /**
@@ -448,7 +1631,16 @@ public class JAEC {
      */
     private void updateWeights(float e, int indexInFrame) {
         //calcuate sum square of x
-        float sum = this.Xs_T.getTailSumSquare(indexInFrame);
+        float sum;
+        if (this.farEndOwner != null) {
+            //the same sample of the same frame has been processed by the owner of far-end history.
+            sum = this.farEndOwner.tailSumSquares[indexInFrame];
+        } else {
+            sum = this.Xs_T.getTailSumSquare(indexInFrame);
+            if (this.tailSumSquares != null) {
+                this.tailSumSquares[indexInFrame] = sum;
+            }
+        }
 
         // check sum: fix the problem when X queue is filled with all zeros..
         if (sum != 0) {
@@ -461,8 +1653,19 @@ public class JAEC {
              * applying a gradient descent on a "soft constraint" instead of
              * having a hard constraint."
              */
-            for (int k = 0; k < this.tailLength; k++) {
-                this.weights[k] = this.weights[k] + 0.5f * (this.mju * e * this.Xs_T.getElement(this.tailLength + indexInFrame - k) / sum);
+            float step = 0.5f * this.mju * e / sum;
+            int base = this.Xs_T.getOffset() + indexInFrame + 1;
+            if (this.proportionate != null) {
+                //proportionate step of every weight, only in the active regions.
+                float[] gains = this.proportionate.getGains();
+                for (int r = 0; r < this.proportionate.getRuns(); r++) {
+                    int start = this.proportionate.getRunStart(r);
+                    this.kernels.axpyProduct(step, gains, start, this.Xs_T.getBuffer(), base + start, this.weights, start, this.proportionate.getRunLength(r));
+                }
+            } else if (this.segment != null) {
+                this.kernels.axpy(step, this.segment, base, this.segment, 0, this.tailLength);
+            } else {
+                this.kernels.axpy(step, this.Xs_T.getBuffer(), base, this.weights, 0, this.tailLength);
             }
         }
     }
@@ -474,8 +1677,8 @@ public class JAEC {
      */
     private float getMju() {
 
-        float[] mju_block0_T = this.fft.mjuIFFT(this.mjus_overlap_HalfComplex_F);
-        float newMju = mju_block0_T[this.frameSize - 1];
+        this.fft.mjuIFFT(this.mjus_overlap_HalfComplex_F, this.mjus_T);
+        float newMju = this.mjus_T[this.frameSize - 1];
 
         return newMju;
     }
@@ -493,11 +1696,21 @@ public class JAEC {
         // Y
         System.arraycopy(this.Ys_HalfCompex_F, 0, this.Ys_pre_HalfCompex_F, 0, this.frameSize);
         //new in v 1.4; add hamming window before FFT
-        this.Ys_HalfCompex_F = this.fft.yFFT(this.filter.hammingWindow(this.Ys_T));
+        this.filter.hammingWindow(this.Ys_T, this.Ys_HalfCompex_F);
+        this.fft.yFFT(this.Ys_HalfCompex_F, this.Ys_HalfCompex_F);
+        float[] power = this.Ys_pre_Power_F;
+        this.Ys_pre_Power_F = this.Ys_Power_F;
+        this.Ys_Power_F = power;
+        this.kernels.powerSpectrum(this.Ys_HalfCompex_F, this.Ys_Power_F);
         // E
         System.arraycopy(this.Es_HalfCompex_F, 0, this.Es_pre_HalfCompex_F, 0, this.frameSize);
         //new in v 1.4; add hamming window before FFT
-        this.Es_HalfCompex_F = this.fft.eFFT(this.filter.hammingWindow(this.Es_T));
+        this.filter.hammingWindow(this.Es_T, this.Es_HalfCompex_F);
+        this.fft.eFFT(this.Es_HalfCompex_F, this.Es_HalfCompex_F);
+        power = this.Es_pre_Power_F;
+        this.Es_pre_Power_F = this.Es_Power_F;
+        this.Es_Power_F = power;
+        this.kernels.powerSpectrum(this.Es_HalfCompex_F, this.Es_Power_F);
         //1. update Eit
         this.updateEit();
         //2. update Mju in frequency domain
@@ -522,16 +1735,8 @@ public class JAEC {
         }
 
         //mju[1:FFtNu/2-1]
-        int real;
-        int img;
-        for (int k = 1; k < this.frameSize / 2; k++) {
-            real = 2 * k;
-            img = real + 1;
-            mju_option = this.eit
-                    * complex_square(this.Ys_HalfCompex_F[real], this.Ys_HalfCompex_F[img])
-                    / complex_square(this.Es_HalfCompex_F[real], this.Es_HalfCompex_F[img]);
-            this.mjus_overlap_HalfComplex_F[k] = (mju_option < this.mjuMax_F) ? mju_option : this.mjuMax_F;
-        }
+        this.kernels.clippedRatio(this.eit, this.Ys_Power_F, this.Es_Power_F, this.mjuMax_F,
+                this.mjus_overlap_HalfComplex_F, 1, this.frameSize / 2);
 
         //update Mju
         this.mju = this.getMju();
@@ -560,8 +1765,6 @@ public class JAEC {
         float beta_C = 1 - beta;
         //System.out.println("[" + this.frameCount + "]#beta:" + beta);
 
-        int real;
-        int img;
         //frequency[0]
         this.py_HalfComplex_F[0] = (1 - this.gama) * this.py_HalfComplex_F[0]
                 + this.gama
@@ -589,33 +1792,20 @@ public class JAEC {
         this.ryy_HalfComplex_F[this.frameSize / 2] = beta_C * this.ryy_HalfComplex_F[this.frameSize / 2]
                 + beta * this.py_HalfComplex_F[this.frameSize / 2] * this.py_HalfComplex_F[this.frameSize / 2];
 
-        //frequency[else]
-        for (int k = 1; k < this.frameSize / 2; k++) {
-            real = 2 * k;
-            img = real + 1;
-            this.py_HalfComplex_F[k] = (1 - this.gama) * this.py_HalfComplex_F[k]
-                    + this.gama
-                    * (complex_square(this.Ys_HalfCompex_F[real], this.Ys_HalfCompex_F[img])
-                    - complex_square(this.Ys_pre_HalfCompex_F[real], this.Ys_pre_HalfCompex_F[img]));
-            this.pe_HalfComplex_F[k] = (1 - this.gama) * this.pe_HalfComplex_F[k]
-                    + this.gama
-                    * (complex_square(this.Es_HalfCompex_F[real], this.Es_HalfCompex_F[img])
-                    - complex_square(this.Es_pre_HalfCompex_F[real], this.Es_pre_HalfCompex_F[img]));
-            this.rey_HalfComplex_F[k] = beta_C * this.rey_HalfComplex_F[k]
-                    + beta * this.py_HalfComplex_F[k] * this.pe_HalfComplex_F[k];
-            this.ryy_HalfComplex_F[k] = beta_C * this.ryy_HalfComplex_F[k]
-                    + beta * this.py_HalfComplex_F[k] * this.py_HalfComplex_F[k];
-        }
+        //frequency[else], with power of Y and E calculated in updateMju().
+        int half = this.frameSize / 2;
+        this.kernels.smoothDifference(1 - this.gama, this.py_HalfComplex_F, this.gama, this.Ys_Power_F, this.Ys_pre_Power_F, 1, half);
+        this.kernels.smoothDifference(1 - this.gama, this.pe_HalfComplex_F, this.gama, this.Es_Power_F, this.Es_pre_Power_F, 1, half);
+        this.kernels.smoothProduct(beta_C, this.rey_HalfComplex_F, beta, this.py_HalfComplex_F, this.pe_HalfComplex_F, 1, half);
+        this.kernels.smoothProduct(beta_C, this.ryy_HalfComplex_F, beta, this.py_HalfComplex_F, this.py_HalfComplex_F, 1, half);
 
         /**
          * gain Eit and update global Eit.
          */
-        float sum_Rey = this.rey_HalfComplex_F[0] + this.rey_HalfComplex_F[this.frameSize / 2];
-        float sum_Ryy = this.ryy_HalfComplex_F[0] + this.ryy_HalfComplex_F[this.frameSize / 2];
-        for (int k = 1; k < this.frameSize / 2; k++) {
-            sum_Rey += 2 * this.rey_HalfComplex_F[k];
-            sum_Ryy += 2 * this.ryy_HalfComplex_F[k];
-        }
+        float sum_Rey = this.rey_HalfComplex_F[0] + this.rey_HalfComplex_F[half]
+                + 2 * this.kernels.sum(this.rey_HalfComplex_F, 1, half - 1);
+        float sum_Ryy = this.ryy_HalfComplex_F[0] + this.ryy_HalfComplex_F[half]
+                + 2 * this.kernels.sum(this.ryy_HalfComplex_F, 1, half - 1);
         this.eit = sum_Rey / sum_Ryy;
     }
 
@@ -627,14 +1817,8 @@ public class JAEC {
      */
     private float totalPower_HalfComplex(float[] p) {
         float edgePower = square(p[0]) + square(p[1]);
-        float symmetryPower = 0;
-        float real;
-        float img;
-        for (int k = 1; k < this.frameSize / 2; k++) {
-            real = p[2 * k];
-            img = p[2 * k + 1];
-            symmetryPower += complex_square(real, img);
-        }
+        //Re[k]*Re[k]+Im[k]*Im[k], 0<k<n/2, is the sum square of a[2] to a[n-1].
+        float symmetryPower = this.kernels.sumSquares(p, 2, this.frameSize - 2);
 
         return (edgePower + 2 * symmetryPower) / (this.frameSize);
     }
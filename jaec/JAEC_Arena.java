@@ -0,0 +1,139 @@
+package jaec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * slab arena of off-heap memory for the state of many JAEC.
+ *
+ * memory is taken from the OS in big direct buffers (slabs) and cut into
+ * segments. a freed segment is kept in a free list of its size and given
+ * to the next session of the same size, so a host with sessions coming and
+ * going keeps a constant number of slabs. slabs are given back to the OS
+ * only when the arena is dropped.
+ *
+ * only the state that grows with the tail length (weights and far-end
+ * history) is in the arena. every JAEC still has about 54 KB on the heap
+ * (frames, spectra and estimates of every frequency bin, FFT tables and
+ * filters) for any tail length, so the heap grows with the number of open
+ * sessions but not with their tails, and JAEC_Pool keeps it from being
+ * allocated again for every session.
+ *
+ * segments are native-order ByteBuffers, aligned to 64 bytes (cache line).
+ * the arena keeps the segments in use by identity (ByteBuffer.equals()
+ * compares contents), so a segment freed twice, or of another arena, is
+ * refused instead of being given to two sessions. allocate() and free() are
+ * synchronized, they are called when a session is opened or closed, never
+ * on the audio thread.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Arena {
+
+    private static final int ALIGNMENT = 64;
+    private final int slabBytes;
+    private final ArrayList<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    private final HashMap<Integer, ArrayDeque<ByteBuffer>> freeSegments = new HashMap<Integer, ArrayDeque<ByteBuffer>>();
+    private final Set<ByteBuffer> liveSegments = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+    private ByteBuffer currentSlab;
+    private long usedBytes;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param slabBytes : bytes of every slab, a segment bigger than that gets
+     * a slab of its own.
+     */
+    public JAEC_Arena(int slabBytes) {
+        this.slabBytes = slabBytes;
+    }
+
+    /**
+     * allocate a segment, it is filled with zeros.
+     *
+     * @param floats : number of FLOAT values in the segment.
+     * @return : a native-order segment of at least 4*floats bytes.
+     */
+    public synchronized ByteBuffer allocate(int floats) {
+        int size = (4 * floats + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        ByteBuffer segment = null;
+        ArrayDeque<ByteBuffer> free = this.freeSegments.get(size);
+        if (free != null) {
+            segment = free.poll();
+        }
+        if (segment != null) {
+            for (int i = 0; i < size; i += 8) {
+                segment.putLong(i, 0L);
+            }
+        } else {
+            segment = this.slice(size);
+        }
+        this.liveSegments.add(segment);
+        this.usedBytes += size;
+        return segment;
+    }
+
+    private ByteBuffer slice(int size) {
+        if (this.currentSlab == null || this.currentSlab.remaining() < size) {
+            //direct buffers are zeroed but have no alignment of their own, so the slab is cut from the first
+            //aligned address of a buffer with ALIGNMENT - 1 spare bytes.
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(this.slabBytes, size) + ALIGNMENT - 1);
+            this.slabs.add(buffer);
+            this.currentSlab = buffer.alignedSlice(ALIGNMENT);
+        }
+        int position = this.currentSlab.position();
+        ByteBuffer segment = this.currentSlab.duplicate();
+        segment.position(position).limit(position + size);
+        this.currentSlab.position(position + size);
+        return segment.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * give a segment back to the arena, it must not be used any more.
+     *
+     * @param segment : a segment of allocate().
+     * @throws IllegalArgumentException : the segment is not in use in this
+     * arena, it is freed already or allocated by another arena.
+     */
+    public synchronized void free(ByteBuffer segment) {
+        if (!this.liveSegments.remove(segment)) {
+            throw new IllegalArgumentException("segment is not in use in this arena (freed twice, or of another arena)");
+        }
+        int size = segment.capacity();
+        ArrayDeque<ByteBuffer> free = this.freeSegments.get(size);
+        if (free == null) {
+            free = new ArrayDeque<ByteBuffer>();
+            this.freeSegments.put(size, free);
+        }
+        free.push(segment);
+        this.usedBytes -= size;
+    }
+
+    /**
+     * get the bytes of segments in use.
+     *
+     * @return : bytes in use.
+     */
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    /**
+     * get the bytes of all slabs.
+     *
+     * @return : bytes taken from the OS.
+     */
+    public synchronized long getReservedBytes() {
+        long bytes = 0;
+        for (ByteBuffer slab : this.slabs) {
+            bytes += slab.capacity();
+        }
+        return bytes;
+    }
+}
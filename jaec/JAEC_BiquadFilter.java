@@ -0,0 +1,188 @@
+package jaec;
+
+import java.util.Arrays;
+
+/**
+ * streaming band-pass filter of cascaded biquads (second order IIR
+ * sections), an alternative of the FFT band-pass of JAEC_Filter for the
+ * pre-filter of near-end signal.
+ *
+ * the band is a 4th order Butterworth high-pass (two biquads with Q of
+ * 0.5412 and 1.3066) followed by a 4th order Butterworth low-pass, from the
+ * bilinear transform of the "Audio EQ Cookbook" of R. Bristow-Johnson. the
+ * low-pass is left out if its cut-off is not below 0.45 of the sample rate.
+ * every section is a direct form I, 5 multiply-adds for every sample in
+ * DOUBLE (the high-pass pole at 50 Hz is very close to 1), and the output of
+ * every section is rounded to FLOAT. blocks are filtered by two sections at a
+ * time, so the recursion of one overlaps the other.
+ *
+ * the state is kept across blocks, so the output does not depend on how the
+ * signal is split into blocks and has no artefacts at the block edges, as
+ * the circular convolution of the FFT filter has. nothing is allocated after
+ * the constructor.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_BiquadFilter {
+
+    private final double[] butterworthQ = {0.54119610, 1.30656296}; // 4th order, 1/(2cos(pi/8)) and 1/(2cos(3pi/8))
+    private final double denormalFloor = 1e-30; // state below it is flushed to zero at the end of a block
+    private final int sections;
+    // coefficients of every section, normalised by a0
+    private final double[] b0;
+    private final double[] b1;
+    private final double[] b2;
+    private final double[] a1;
+    private final double[] a2;
+    // state of every section: the latest two inputs and outputs
+    private final double[] x1;
+    private final double[] x2;
+    private final double[] y1;
+    private final double[] y2;
+
+    /**
+     * Constructor of this class.
+     *
+     * @param lowerHZ: lower boundary in Hz for band-pass filter.
+     * @param higherHZ: higher boundary in Hz for band-pass filter.
+     * @param sample_rate: sample rate of input stream.
+     */
+    public JAEC_BiquadFilter(int lowerHZ, int higherHZ, float sample_rate) {
+        if (lowerHZ <= 0 || lowerHZ >= higherHZ || lowerHZ >= sample_rate / 2) {
+            throw new IllegalArgumentException("band must be from above 0 Hz to below the Nyquist frequency: "
+                    + lowerHZ + "-" + higherHZ + " Hz");
+        }
+        boolean lowPass = higherHZ < 0.45f * sample_rate;
+        this.sections = lowPass ? 2 * this.butterworthQ.length : this.butterworthQ.length;
+        this.b0 = new double[this.sections];
+        this.b1 = new double[this.sections];
+        this.b2 = new double[this.sections];
+        this.a1 = new double[this.sections];
+        this.a2 = new double[this.sections];
+        this.x1 = new double[this.sections];
+        this.x2 = new double[this.sections];
+        this.y1 = new double[this.sections];
+        this.y2 = new double[this.sections];
+        for (int q = 0; q < this.butterworthQ.length; q++) {
+            this.design(q, lowerHZ / sample_rate, this.butterworthQ[q], true);
+            if (lowPass) {
+                this.design(this.butterworthQ.length + q, higherHZ / sample_rate, this.butterworthQ[q], false);
+            }
+        }
+    }
+
+    /**
+     * coefficients of one section.
+     *
+     * @param s : index of the section.
+     * @param f : cut-off frequency relative to the sample rate.
+     * @param Q : quality factor.
+     * @param highPass : true for high-pass, false for low-pass.
+     */
+    private void design(int s, double f, double Q, boolean highPass) {
+        double w0 = 2 * Math.PI * f;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * Q);
+        double a0 = 1 + alpha;
+        double b = highPass ? (1 + cos) / 2 : (1 - cos) / 2;
+        this.b0[s] = b / a0;
+        this.b1[s] = (highPass ? -2 * b : 2 * b) / a0;
+        this.b2[s] = b / a0;
+        this.a1[s] = -2 * cos / a0;
+        this.a2[s] = (1 - alpha) / a0;
+    }
+
+    /**
+     * band pass filter of a block, the state goes on from the previous
+     * block.
+     *
+     * @param x: array of signal for band pass filtering.
+     * @param y: array for band-pass filter result, it can be the same array
+     * as x.
+     * @param len: the number of samples from index 0.
+     */
+    public void bandPass(float[] x, float[] y, int len) {
+        if (x != y) {
+            System.arraycopy(x, 0, y, 0, len);
+        }
+        //two sections at a time over the whole block, in place: the recursion of one overlaps the other.
+        for (int s = 0; s < this.sections; s += 2) {
+            int t = s + 1;
+            double sb0 = this.b0[s];
+            double sb1 = this.b1[s];
+            double sb2 = this.b2[s];
+            double sa1 = this.a1[s];
+            double sa2 = this.a2[s];
+            double tb0 = this.b0[t];
+            double tb1 = this.b1[t];
+            double tb2 = this.b2[t];
+            double ta1 = this.a1[t];
+            double ta2 = this.a2[t];
+            double sx1 = this.x1[s];
+            double sx2 = this.x2[s];
+            double sy1 = this.y1[s];
+            double sy2 = this.y2[s];
+            double tx1 = this.x1[t];
+            double tx2 = this.x2[t];
+            double ty1 = this.y1[t];
+            double ty2 = this.y2[t];
+            for (int i = 0; i < len; i++) {
+                double in = y[i];
+                //only the last multiply-add waits for the previous output.
+                double mid = (float) (sb0 * in + sb1 * sx1 + sb2 * sx2 - sa2 * sy2 - sa1 * sy1);
+                sx2 = sx1;
+                sx1 = in;
+                sy2 = sy1;
+                sy1 = mid;
+                double out = (float) (tb0 * mid + tb1 * tx1 + tb2 * tx2 - ta2 * ty2 - ta1 * ty1);
+                tx2 = tx1;
+                tx1 = mid;
+                ty2 = ty1;
+                ty1 = out;
+                y[i] = (float) out;
+            }
+            this.x1[s] = sx1;
+            this.x2[s] = sx2;
+            this.y1[s] = this.flush(sy1);
+            this.y2[s] = this.flush(sy2);
+            this.x1[t] = tx1;
+            this.x2[t] = tx2;
+            this.y1[t] = this.flush(ty1);
+            this.y2[t] = this.flush(ty2);
+        }
+    }
+
+    private double flush(double z) {
+        return Math.abs(z) < this.denormalFloor ? 0 : z;
+    }
+
+    /**
+     * band pass filter of one sample.
+     *
+     * @param x: the sample.
+     * @return : the filtered sample.
+     */
+    public float bandPass(float x) {
+        double in = x;
+        for (int s = 0; s < this.sections; s++) {
+            double out = (float) (this.b0[s] * in + this.b1[s] * this.x1[s] + this.b2[s] * this.x2[s]
+                    - this.a2[s] * this.y2[s] - this.a1[s] * this.y1[s]);
+            this.x2[s] = this.x1[s];
+            this.x1[s] = in;
+            this.y2[s] = this.y1[s];
+            this.y1[s] = out;
+            in = out;
+        }
+        return (float) in;
+    }
+
+    /**
+     * clear the state, the next sample starts from silence.
+     */
+    public void reset() {
+        Arrays.fill(this.x1, 0);
+        Arrays.fill(this.x2, 0);
+        Arrays.fill(this.y1, 0);
+        Arrays.fill(this.y2, 0);
+    }
+}
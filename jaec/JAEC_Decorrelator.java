@@ -0,0 +1,103 @@
+package jaec;
+
+/**
+ * decorrelation of several far-end signals before they are played, for AEC
+ * of several far-end signals (JAEC constructed with references).
+ *
+ * when the loudspeakers play the same source (e.g. stereo of one talker in
+ * the far-end room), their signals are linear mixtures of each other and the
+ * filters of JAEC have no unique solution: echo is cancelled, but by weights
+ * which are not the echo paths, and it comes back whenever the far-end room
+ * changes (another talker, a moved microphone). a small half-wave rectified
+ * copy of every signal is added to it, with positive half-waves for even
+ * references and negative half-waves for odd ones:
+ *
+ * x'[r] = x[r] + alpha * (x[r] + |x[r]|) / 2 (r even)
+ *
+ * x'[r] = x[r] + alpha * (x[r] - |x[r]|) / 2 (r odd)
+ *
+ * the nonlinear part is not a linear mixture of the others, so the filters
+ * converge to the echo paths. it is hardly audible for speech up to alpha
+ * 0.5. more than two references only alternate the two half-waves.
+ *
+ * the decorrelated signals must be played by the loudspeakers, and the same
+ * signals given to JAEC. nothing is allocated.
+ *
+ * REFERENCE "Benesty, J., Morgan, D.R., Sondhi, M.M., A better understanding
+ * and an improved solution to the specific problems of stereophonic acoustic
+ * echo cancellation. IEEE Transactions on Speech and Audio Processing, Vol.
+ * 6, No. 2, pp. 156-165, 1998".
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Decorrelator {
+
+    private final float alpha;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param alpha : amount of the nonlinear part, from 0 (no change) to 1.
+     */
+    public JAEC_Decorrelator(float alpha) {
+        if (!(alpha >= 0f && alpha <= 1f)) {
+            throw new IllegalArgumentException("alpha must be from 0 to 1: " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * decorrelate normalised far-end signals (-1f to 1f) in place.
+     *
+     * @param far : the signal of every loudspeaker, in the order of
+     * references.
+     * @param off : the first index of the block.
+     * @param len : the number of samples of the block.
+     */
+    public void process(float[][] far, int off, int len) {
+        float half = 0.5f * this.alpha;
+        for (int r = 0; r < far.length; r++) {
+            float[] x = far[r];
+            float sign = (r & 1) == 0 ? 1f : -1f;
+            for (int i = off; i < off + len; i++) {
+                x[i] += half * (x[i] + sign * Math.abs(x[i]));
+            }
+        }
+    }
+
+    /**
+     * decorrelate far-end signals of SHORT in place, values out of the range
+     * of SHORT are clipped.
+     *
+     * @param far : the signal of every loudspeaker, in the order of
+     * references.
+     * @param off : the first index of the block.
+     * @param len : the number of samples of the block.
+     */
+    public void process(short[][] far, int off, int len) {
+        float half = 0.5f * this.alpha;
+        for (int r = 0; r < far.length; r++) {
+            short[] x = far[r];
+            float sign = (r & 1) == 0 ? 1f : -1f;
+            for (int i = off; i < off + len; i++) {
+                float a = x[i] + half * (x[i] + sign * Math.abs(x[i]));
+                if (a > Short.MAX_VALUE) {
+                    x[i] = Short.MAX_VALUE;
+                } else if (a < Short.MIN_VALUE) {
+                    x[i] = Short.MIN_VALUE;
+                } else {
+                    x[i] = (short) a;
+                }
+            }
+        }
+    }
+
+    /**
+     * get the amount of the nonlinear part.
+     *
+     * @return : alpha.
+     */
+    public float getAlpha() {
+        return this.alpha;
+    }
+}
@@ -0,0 +1,187 @@
+package jaec;
+
+import java.util.Arrays;
+
+/**
+ * bulk delay estimation between far-end and near-end signals, by the
+ * generalized cross-correlation with phase transform (GCC-PHAT).
+ *
+ * the latest window of far-end and near-end signals is transformed (zero
+ * padded to twice the window, so the correlation is linear), the cross
+ * spectrum conj(X)*D is averaged over time and weighted by its magnitude
+ * (PHAT), and its inverse FFT gives the correlation for every delay. the
+ * delay of the peak is reported when the peak is clearly above the rest of
+ * the correlation for a few estimations in a row.
+ *
+ * REFERENCE "Knapp, C.H., Carter, G.C., The generalized correlation method
+ * for estimation of time delay. IEEE Transactions on Acoustics, Speech and
+ * Signal Processing, Vol. 24, No. 4, pp. 320-327, 1976".
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_DelayEstimator {
+
+    private final float smoothing = 0.9f; // recursive average of cross spectrum
+    private final float peakRatio = 8f; // min ratio between peak and RMS of the correlation
+    private final int stableCount = 3; // number of estimations in a row with the same peak
+    private final int stableRange = 4; // samples, max change of peak in a row
+    private final float energyFloor = 1e-6f; // energy per sample of a silent window
+    private int blockSize;
+    private int maxDelay;
+    private int windowSize;
+    private int blocksPerEstimation; // blocks between two estimations before locking
+    private FFT_HalfComplex fft;
+    private float[] x_T; // latest far-end window
+    private float[] d_T; // latest near-end window
+    private float[] X_HalfComplex_F;
+    private float[] D_HalfComplex_F;
+    private float[] S_HalfComplex_F; // averaged cross spectrum
+    private float[] r_T; // correlation
+    private int blockCount;
+    private int candidate = -1; // peak of the latest estimations
+    private int candidateCount;
+    private int delay = -1; // locked delay, -1 if unknown
+
+    /**
+     * the constructor of this class.
+     *
+     * @param blockSize : number of samples of every pushed block.
+     * @param maxDelay : max delay in samples to be searched.
+     */
+    public JAEC_DelayEstimator(int blockSize, int maxDelay) {
+        this.blockSize = blockSize;
+        this.maxDelay = maxDelay;
+        //window is a power of 2 and at least twice the max delay, so half of the window is always correlated.
+        this.windowSize = blockSize;
+        while (this.windowSize < 2 * maxDelay) {
+            this.windowSize *= 2;
+        }
+        this.blocksPerEstimation = 4;
+        this.fft = new FFT_HalfComplex(2 * this.windowSize);
+        this.x_T = new float[this.windowSize];
+        this.d_T = new float[this.windowSize];
+        this.X_HalfComplex_F = new float[2 * this.windowSize];
+        this.D_HalfComplex_F = new float[2 * this.windowSize];
+        this.S_HalfComplex_F = new float[2 * this.windowSize];
+        this.r_T = new float[2 * this.windowSize];
+    }
+
+    /**
+     * function to restart the estimation.
+     */
+    public void reset() {
+        Arrays.fill(this.x_T, 0f);
+        Arrays.fill(this.d_T, 0f);
+        Arrays.fill(this.S_HalfComplex_F, 0f);
+        this.blockCount = 0;
+        this.candidate = -1;
+        this.candidateCount = 0;
+        this.delay = -1;
+    }
+
+    /**
+     * get the latest locked delay.
+     *
+     * @return : delay in samples, -1 if it is unknown yet.
+     */
+    public int getDelay() {
+        return this.delay;
+    }
+
+    /**
+     * put the latest blocks of far-end and near-end signals, the delay is
+     * estimated every few blocks.
+     *
+     * @param x : far-end signal, the first block size values are used.
+     * @param d : near-end signal, the first block size values are used.
+     * @return : true if the locked delay is changed by this block.
+     */
+    public boolean push(float[] x, float[] d) {
+        System.arraycopy(this.x_T, this.blockSize, this.x_T, 0, this.windowSize - this.blockSize);
+        System.arraycopy(x, 0, this.x_T, this.windowSize - this.blockSize, this.blockSize);
+        System.arraycopy(this.d_T, this.blockSize, this.d_T, 0, this.windowSize - this.blockSize);
+        System.arraycopy(d, 0, this.d_T, this.windowSize - this.blockSize, this.blockSize);
+
+        this.blockCount++;
+        //estimate less often after locking, only to follow the change of echo path.
+        int period = (this.delay < 0) ? this.blocksPerEstimation : 4 * this.blocksPerEstimation;
+        if (this.blockCount < period) {
+            return false;
+        }
+        this.blockCount = 0;
+        return this.estimate();
+    }
+
+    private boolean estimate() {
+        float xEnergy = 0f;
+        float dEnergy = 0f;
+        for (int i = 0; i < this.windowSize; i++) {
+            xEnergy += this.x_T[i] * this.x_T[i];
+            dEnergy += this.d_T[i] * this.d_T[i];
+        }
+        //no estimation without far-end or near-end signal.
+        if (xEnergy < this.energyFloor * this.windowSize || dEnergy < this.energyFloor * this.windowSize) {
+            return false;
+        }
+
+        //zero padded FFT
+        System.arraycopy(this.x_T, 0, this.X_HalfComplex_F, 0, this.windowSize);
+        Arrays.fill(this.X_HalfComplex_F, this.windowSize, 2 * this.windowSize, 0f);
+        this.fft.forward(this.X_HalfComplex_F);
+        System.arraycopy(this.d_T, 0, this.D_HalfComplex_F, 0, this.windowSize);
+        Arrays.fill(this.D_HalfComplex_F, this.windowSize, 2 * this.windowSize, 0f);
+        this.fft.forward(this.D_HalfComplex_F);
+
+        //averaged cross spectrum S = conj(X)*D, and PHAT weighting into r.
+        float[] X = this.X_HalfComplex_F;
+        float[] D = this.D_HalfComplex_F;
+        float[] S = this.S_HalfComplex_F;
+        float[] R = this.r_T;
+        float c = 1 - this.smoothing;
+        S[0] = this.smoothing * S[0] + c * X[0] * D[0];
+        S[1] = this.smoothing * S[1] + c * X[1] * D[1];
+        R[0] = phat(S[0], Math.abs(S[0]));
+        R[1] = phat(S[1], Math.abs(S[1]));
+        for (int i = 2; i < S.length; i = i + 2) {
+            S[i] = this.smoothing * S[i] + c * (X[i] * D[i] + X[i + 1] * D[i + 1]);
+            S[i + 1] = this.smoothing * S[i + 1] + c * (X[i] * D[i + 1] - X[i + 1] * D[i]);
+            float magnitude = (float) Math.sqrt(S[i] * S[i] + S[i + 1] * S[i + 1]);
+            R[i] = phat(S[i], magnitude);
+            R[i + 1] = phat(S[i + 1], magnitude);
+        }
+        this.fft.inverse(R);
+
+        //r[k] is the correlation of near-end with far-end delayed by k.
+        int peak = 0;
+        float sumSquare = 0f;
+        for (int k = 0; k <= this.maxDelay; k++) {
+            sumSquare += R[k] * R[k];
+            if (R[k] > R[peak]) {
+                peak = k;
+            }
+        }
+        float rms = (float) Math.sqrt(sumSquare / (this.maxDelay + 1));
+        if (R[peak] < this.peakRatio * rms) {
+            this.candidateCount = 0;
+            return false;
+        }
+
+        if (this.candidate >= 0 && Math.abs(peak - this.candidate) <= this.stableRange) {
+            this.candidateCount++;
+        } else {
+            this.candidateCount = 1;
+        }
+        this.candidate = peak;
+
+        if (this.candidateCount >= this.stableCount
+                && (this.delay < 0 || Math.abs(peak - this.delay) > this.stableRange)) {
+            this.delay = peak;
+            return true;
+        }
+        return false;
+    }
+
+    private static float phat(float value, float magnitude) {
+        return (magnitude > 0) ? value / magnitude : 0f;
+    }
+}
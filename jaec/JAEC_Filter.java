@@ -11,6 +11,7 @@
 package jaec;
 
 import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
+import java.util.Arrays;
 
 public class JAEC_Filter {
 
@@ -19,6 +20,9 @@ public class JAEC_Filter {
     private int frame_size;
     private float[] hammingWeights;
     private float sampleRate;
+    // FFT plan and buffer are kept for band pass filter, nothing is allocated for every frame.
+    private FloatFFT_1D fft;
+    private float[] bandPassBuffer;
 
     /**
      * Constructor of this class.
@@ -42,6 +46,9 @@ public class JAEC_Filter {
         for (int i = 0; i < this.frame_size; i++) {
             hammingWeights[i] = (float) (a - b * (Math.cos(2 * Math.PI * i / (this.frame_size - 1))));
         }
+
+        this.fft = new FloatFFT_1D(this.frame_size);
+        this.bandPassBuffer = new float[this.frame_size * 2];
     }
 
     /**
@@ -52,10 +59,21 @@ public class JAEC_Filter {
      */
     public float[] hammingWindow(float[] x) {
         float[] y = new float[this.frame_size];
+        this.hammingWindow(x, y);
+        return y;
+    }
+
+    /**
+     * hamming window function without allocation.
+     *
+     * @param x: array of signal for hamming window process.
+     * @param y: array for hamming window result, it can be the same array as
+     * x.
+     */
+    public void hammingWindow(float[] x, float[] y) {
         for (int i = 0; i < this.frame_size; i++) {
             y[i] = hammingWeights[i] * x[i];
         }
-        return y;
     }
 
     /**
@@ -65,10 +83,24 @@ public class JAEC_Filter {
      * @return : band-pass filter result.
      */
     public float[] bandPass(float[] x) {
-        float[] y = new float[this.frame_size * 2];
+        float[] y1 = new float[this.frame_size];
+        this.bandPass(x, y1);
+        return y1;
+    }
+
+    /**
+     * band pass filter without allocation, FFT plan and buffer are reused.
+     *
+     * @param x: array of signal for band pass filtering.
+     * @param y1: array for band-pass filter result, it can be the same array
+     * as x.
+     */
+    public void bandPass(float[] x, float[] y1) {
+        float[] y = this.bandPassBuffer;
         System.arraycopy(x, 0, y, 0, frame_size);
+        Arrays.fill(y, frame_size, frame_size * 2, 0f);
 
-        FloatFFT_1D fft = new FloatFFT_1D(this.frame_size);
+        FloatFFT_1D fft = this.fft;
         fft.realForwardFull(y);
 
         //remove low frequency
@@ -83,11 +115,8 @@ public class JAEC_Filter {
         }
         fft.complexInverse(y, true);
 
-        float[] y1 = new float[this.frame_size];
         for (int i = 0; i < this.frame_size; i++) {
             y1[i] = y[2 * i];
         }
-
-        return y1;
     }
 }
@@ -0,0 +1,254 @@
+package jaec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * fixed-point echo estimation and weight updating of the time domain NLMS,
+ * in the way of the fixed-point build of Speex. far-end history is kept as
+ * 16 bits PCM (Q15) in a mirrored FIFO of SHORT, and weights as Q30 INT, so
+ * the per-sample working set is less than half of the FLOAT one.
+ *
+ * the echo is accumulated in LONG and saturated to the SHORT range, weights
+ * are saturated to the INT range, and the sum squares of far-end signal are
+ * kept in LONG (Q30), so the incremental sums are exact without rounding
+ * drift.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_FixedPoint {
+
+    public static final int Q15_ONE = 1 << 15;
+    private final int weightShift = 30; // weights in Q30, range -2 to 2
+    private final int stepShift = 26; // extra bits of the step before multiplying far-end signal
+    private final long maxStep = 1L << 47; // g*x(k) must stay in the LONG range
+    private short[] array; // mirrored, see XFIFOArray
+    private int arrayLength;
+    private int nextPointer;
+    private int tailLength;
+    private int maxTailLength;
+    private int skip; // the oldest elements out of a shortened tail.
+    private int[] weights; // Q30, w[tailLength-1] is relevant to the latest far-end signal
+    private int[] checkpointWeights; // copy of the weights by checkpoint()
+    private long windowSumSquare; // Q30, sum square of the whole FIFO
+    private long tailSumSquare; // Q30, for the latest index in frame
+    private boolean tailSumSquareInitialized = false;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param frameSize : size of a frame, half a frame is added at once.
+     * @param tailLength : number of weights.
+     */
+    public JAEC_FixedPoint(int frameSize, int tailLength) {
+        this.tailLength = tailLength;
+        this.maxTailLength = tailLength;
+        this.arrayLength = frameSize / 2 + tailLength;
+        this.array = new short[2 * this.arrayLength];
+        this.weights = new int[tailLength];
+    }
+
+    /**
+     * function to restart, weights and far-end history are cleared.
+     */
+    public void reset() {
+        Arrays.fill(this.array, (short) 0);
+        Arrays.fill(this.weights, 0);
+        this.nextPointer = 0;
+        this.windowSumSquare = 0;
+        this.tailSumSquareInitialized = false;
+    }
+
+    /**
+     * shorten (or restore) the tail, only the latest half frame and tail
+     * elements are used.
+     *
+     * @param tailLength : the new tail length, not more than the length of
+     * the constructor.
+     */
+    public void setTailLength(int tailLength) {
+        if (tailLength <= 0 || tailLength > this.maxTailLength) {
+            throw new IllegalArgumentException("tail length must be from 1 to " + this.maxTailLength + ": " + tailLength);
+        }
+        this.tailLength = tailLength;
+        this.skip = this.maxTailLength - tailLength;
+        this.tailSumSquareInitialized = false;
+        long sum = 0;
+        int off = this.nextPointer + this.skip;
+        for (int i = off; i < off + this.arrayLength - this.skip; i++) {
+            sum += this.array[i] * this.array[i];
+        }
+        this.windowSumSquare = sum;
+    }
+
+    /**
+     * add half a frame of far-end signal.
+     *
+     * @param x : normalised far-end signal (-1f to 1f), the first len values
+     * are used.
+     * @param len : number of samples.
+     */
+    public void add(float[] x, int len) {
+        for (int i = 0; i < len; i++) {
+            short a = toQ15(x[i]);
+            short b = this.array[this.nextPointer + this.skip];
+            this.windowSumSquare += a * a - b * b;
+            this.array[this.nextPointer] = a;
+            this.array[this.nextPointer + this.arrayLength] = a;
+            this.nextPointer++;
+            if (this.nextPointer == this.arrayLength) {
+                this.nextPointer = 0;
+            }
+        }
+    }
+
+    /**
+     * write the weights in use, for snapshots.
+     *
+     * @param out : the output.
+     */
+    public void writeWeights(DataOutput out) throws IOException {
+        for (int k = 0; k < this.tailLength; k++) {
+            out.writeInt(this.weights[k]);
+        }
+    }
+
+    /**
+     * read the weights written by writeWeights(), the tail length must be
+     * the same.
+     *
+     * @param in : the input.
+     */
+    public void readWeights(DataInput in) throws IOException {
+        for (int k = 0; k < this.tailLength; k++) {
+            this.weights[k] = in.readInt();
+        }
+    }
+
+    /**
+     * keep a copy of the weights in memory, only the first call allocates
+     * it.
+     */
+    public void checkpoint() {
+        if (this.checkpointWeights == null) {
+            this.checkpointWeights = new int[this.maxTailLength];
+        }
+        System.arraycopy(this.weights, 0, this.checkpointWeights, 0, this.maxTailLength);
+    }
+
+    /**
+     * restore the weights of checkpoint(), far-end history is not changed.
+     */
+    public void rollback() {
+        System.arraycopy(this.checkpointWeights, 0, this.weights, 0, this.maxTailLength);
+    }
+
+    /**
+     * return the sum square of the whole FIFO (half frame and tail).
+     *
+     * @return : the sum square, normalised as the FLOAT signal.
+     */
+    public float getWindowSumSquare() {
+        return this.windowSumSquare / (float) (1L << 30);
+    }
+
+    /**
+     * return the length of the FIFO (half frame and tail).
+     *
+     * @return : the length of the FIFO.
+     */
+    public int getLength() {
+        return this.arrayLength - this.skip;
+    }
+
+    /**
+     * the tail sum square is calculated again by the next weight updating,
+     * it must be called if weights are not updated for every index of a
+     * frame.
+     */
+    public void invalidateTailSumSquare() {
+        this.tailSumSquareInitialized = false;
+    }
+
+    /**
+     * echo estimation for an index of the latest half frame.
+     *
+     * @param indexInFrame : index in the latest half frame.
+     * @return : echo in Q15, saturated to the SHORT range.
+     */
+    public int estimateEcho(int indexInFrame) {
+        int base = this.nextPointer + this.skip + indexInFrame + 1;
+        long acc = 0;
+        for (int k = 0; k < this.tailLength; k++) {
+            acc += (long) this.weights[k] * this.array[base + k];
+        }
+        return saturateShort(acc >> this.weightShift);
+    }
+
+    /**
+     * NLMS weight updating for an index of the latest half frame, it must be
+     * called for every index in order.
+     *
+     * @param e : output (e) in Q15.
+     * @param stepQ15 : step size (0.5*mju) in Q15.
+     * @param indexInFrame : index in the latest half frame.
+     */
+    public void updateWeights(int e, int stepQ15, int indexInFrame) {
+        int base = this.nextPointer + this.skip + indexInFrame;
+        if (!this.tailSumSquareInitialized) {
+            long sum = 0;
+            for (int i = base + 1; i <= base + this.tailLength; i++) {
+                sum += this.array[i] * this.array[i];
+            }
+            this.tailSumSquare = sum;
+            this.tailSumSquareInitialized = true;
+        } else {
+            int a0 = this.array[base];
+            int a1 = this.array[base + this.tailLength];
+            this.tailSumSquare += a1 * a1 - a0 * a0;
+        }
+        if (this.tailSumSquare == 0 || e == 0) {
+            return;
+        }
+
+        //w(k) += step*e*x(k)/sum in Q30: (step*e << stepShift)/sum*x(k) >> (stepShift-15).
+        long g = ((long) stepQ15 * e << this.stepShift) / this.tailSumSquare;
+        g = Math.max(-this.maxStep, Math.min(this.maxStep, g));
+        int shift = this.stepShift - 15;
+        for (int k = 0; k < this.tailLength; k++) {
+            this.weights[k] = saturateInt((long) this.weights[k] + ((g * this.array[base + 1 + k]) >> shift));
+        }
+    }
+
+    /**
+     * convert a normalised value (-1f to 1f) into Q15.
+     *
+     * @param x : the normalised value.
+     * @return : the value in Q15, saturated to the SHORT range.
+     */
+    public static short toQ15(float x) {
+        return saturateShort(Math.round(x * Q15_ONE));
+    }
+
+    private static short saturateShort(long v) {
+        if (v > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (v < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) v;
+    }
+
+    private static int saturateInt(long v) {
+        if (v > Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        }
+        if (v < Integer.MIN_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) v;
+    }
+}
@@ -0,0 +1,307 @@
+package jaec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+/**
+ * the inner loops of AEC (echo estimation, weight updating and spectral
+ * statistics) which are pure FLOAT multiply-adds.
+ *
+ * this class is the scalar implementation. JAEC_VectorKernels overrides them
+ * with the Java Vector API (jdk.incubator.vector); it is picked by
+ * getInstance() at startup only when the module is available (java
+ * --add-modules jdk.incubator.vector) and passes the self test against the
+ * scalar kernels. the scalar kernels can be forced with the system property
+ * -Djaec.kernels=scalar.
+ *
+ * elementwise kernels give exactly the same result for both implementations,
+ * kernels with a sum (dot, sum, sumSquares) are only equal within the
+ * rounding of FLOAT, because the order of adding is changed.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Kernels {
+
+    private static final JAEC_Kernels INSTANCE = select();
+
+    /**
+     * get the kernels selected at startup.
+     *
+     * @return : vector kernels if available, otherwise scalar kernels.
+     */
+    public static JAEC_Kernels getInstance() {
+        return INSTANCE;
+    }
+
+    private static JAEC_Kernels select() {
+        JAEC_Kernels scalar = new JAEC_Kernels();
+        if ("scalar".equals(System.getProperty("jaec.kernels"))) {
+            return scalar;
+        }
+        try {
+            JAEC_Kernels vector = (JAEC_Kernels) Class.forName("jaec.JAEC_VectorKernels").getDeclaredConstructor().newInstance();
+            if (selfTest(vector, scalar)) {
+                return vector;
+            }
+        } catch (Exception | LinkageError ex) {
+            // module jdk.incubator.vector is not available.
+        }
+        return scalar;
+    }
+
+    /**
+     * name of the kernels for information.
+     *
+     * @return : name of the kernels.
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * dot product of two slices.
+     *
+     * @return : sum of a[aOff+i]*b[bOff+i], 0<=i<len.
+     */
+    public float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        float sum = 0f;
+        for (int i = 0; i < len; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    /**
+     * y[yOff+i] += s*x[xOff+i], 0<=i<len.
+     */
+    public void axpy(float s, float[] x, int xOff, float[] y, int yOff, int len) {
+        for (int i = 0; i < len; i++) {
+            y[yOff + i] += s * x[xOff + i];
+        }
+    }
+
+    /**
+     * dot product of two slices of native-order off-heap segments, offsets
+     * are FLOAT index.
+     *
+     * @return : sum of a[aOff+i]*b[bOff+i], 0<=i<len.
+     */
+    public float dot(ByteBuffer a, int aOff, ByteBuffer b, int bOff, int len) {
+        float sum = 0f;
+        for (int i = 0; i < len; i++) {
+            sum += a.getFloat((aOff + i) << 2) * b.getFloat((bOff + i) << 2);
+        }
+        return sum;
+    }
+
+    /**
+     * y[yOff+i] += s*x[xOff+i], 0<=i<len, for native-order off-heap segments,
+     * offsets are FLOAT index.
+     */
+    public void axpy(float s, ByteBuffer x, int xOff, ByteBuffer y, int yOff, int len) {
+        for (int i = 0; i < len; i++) {
+            int yi = (yOff + i) << 2;
+            y.putFloat(yi, y.getFloat(yi) + s * x.getFloat((xOff + i) << 2));
+        }
+    }
+
+    /**
+     * y[yOff+i] += s*g[gOff+i]*x[xOff+i], 0<=i<len.
+     */
+    public void axpyProduct(float s, float[] g, int gOff, float[] x, int xOff, float[] y, int yOff, int len) {
+        for (int i = 0; i < len; i++) {
+            y[yOff + i] += s * g[gOff + i] * x[xOff + i];
+        }
+    }
+
+    /**
+     * sum of a slice.
+     *
+     * @return : sum of a[off+i], 0<=i<len.
+     */
+    public float sum(float[] a, int off, int len) {
+        float sum = 0f;
+        for (int i = 0; i < len; i++) {
+            sum += a[off + i];
+        }
+        return sum;
+    }
+
+    /**
+     * sum square of a slice.
+     *
+     * @return : sum of a[off+i]*a[off+i], 0<=i<len.
+     */
+    public float sumSquares(float[] a, int off, int len) {
+        float sum = 0f;
+        for (int i = 0; i < len; i++) {
+            sum += a[off + i] * a[off + i];
+        }
+        return sum;
+    }
+
+    /**
+     * power of a half complex spectrum, only for 0<k<n/2 (Re[k]=a[2*k],
+     * Im[k]=a[2*k+1]).
+     *
+     * @param a : half complex spectrum of n values.
+     * @param p : p[k] = Re[k]*Re[k] + Im[k]*Im[k], 0<k<n/2.
+     */
+    public void powerSpectrum(float[] a, float[] p) {
+        int half = a.length / 2;
+        for (int k = 1; k < half; k++) {
+            p[k] = a[2 * k] * a[2 * k] + a[2 * k + 1] * a[2 * k + 1];
+        }
+    }
+
+    /**
+     * recursive average of a difference: p[i] = c*p[i] + g*(x[i]-y[i]),
+     * from<=i<to.
+     */
+    public void smoothDifference(float c, float[] p, float g, float[] x, float[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            p[i] = c * p[i] + g * (x[i] - y[i]);
+        }
+    }
+
+    /**
+     * recursive average of a product: r[i] = c*r[i] + g*x[i]*y[i],
+     * from<=i<to.
+     */
+    public void smoothProduct(float c, float[] r, float g, float[] x, float[] y, int from, int to) {
+        for (int i = from; i < to; i++) {
+            r[i] = c * r[i] + g * x[i] * y[i];
+        }
+    }
+
+    /**
+     * clipped ratio: r[i] = min(s*x[i]/y[i], max), from<=i<to. NaN is
+     * clipped to max as well.
+     */
+    public void clippedRatio(float s, float[] x, float[] y, float max, float[] r, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float option = s * x[i] / y[i];
+            r[i] = (option < max) ? option : max;
+        }
+    }
+
+    /**
+     * compare all kernels of a candidate with the scalar kernels on random
+     * signals.
+     *
+     * @param candidate : kernels to be tested.
+     * @param scalar : reference kernels.
+     * @return : true if every result is equal within the FLOAT rounding.
+     */
+    public static boolean selfTest(JAEC_Kernels candidate, JAEC_Kernels scalar) {
+        Random random = new Random(2013);
+        int[] lengths = {1, 7, 64, 255, 513, 2000};
+        for (int len : lengths) {
+            float[] a = randomArray(random, len + 3);
+            float[] b = randomArray(random, len + 5);
+            float[] c = randomArray(random, len + 5);
+
+            if (!close(candidate.dot(a, 3, b, 5, len), scalar.dot(a, 3, b, 5, len), len)
+                    || !close(candidate.sum(a, 1, len), scalar.sum(a, 1, len), len)
+                    || !close(candidate.sumSquares(a, 2, len), scalar.sumSquares(a, 2, len), len)) {
+                return false;
+            }
+
+            float[] y1 = b.clone();
+            float[] y2 = b.clone();
+            candidate.axpy(0.3f, a, 3, y1, 5, len);
+            scalar.axpy(0.3f, a, 3, y2, 5, len);
+            if (!equal(y1, y2)) {
+                return false;
+            }
+
+            ByteBuffer sa = segment(a);
+            ByteBuffer sb = segment(b);
+            if (!close(candidate.dot(sa, 3, sb, 5, len), scalar.dot(sa, 3, sb, 5, len), len)) {
+                return false;
+            }
+            ByteBuffer sy1 = segment(b);
+            ByteBuffer sy2 = segment(b);
+            candidate.axpy(0.3f, sa, 3, sy1, 5, len);
+            scalar.axpy(0.3f, sa, 3, sy2, 5, len);
+            if (!sy1.equals(sy2)) {
+                return false;
+            }
+
+            y1 = b.clone();
+            y2 = b.clone();
+            candidate.axpyProduct(0.3f, c, 2, a, 3, y1, 5, len);
+            scalar.axpyProduct(0.3f, c, 2, a, 3, y2, 5, len);
+            if (!equal(y1, y2)) {
+                return false;
+            }
+
+            y1 = c.clone();
+            y2 = c.clone();
+            candidate.smoothDifference(0.9f, y1, 0.1f, a, b, 1, len);
+            scalar.smoothDifference(0.9f, y2, 0.1f, a, b, 1, len);
+            if (!equal(y1, y2)) {
+                return false;
+            }
+
+            y1 = c.clone();
+            y2 = c.clone();
+            candidate.smoothProduct(0.9f, y1, 0.1f, a, b, 1, len);
+            scalar.smoothProduct(0.9f, y2, 0.1f, a, b, 1, len);
+            if (!equal(y1, y2)) {
+                return false;
+            }
+
+            y1 = c.clone();
+            y2 = c.clone();
+            candidate.clippedRatio(0.7f, a, b, 0.5f, y1, 1, len);
+            scalar.clippedRatio(0.7f, a, b, 0.5f, y2, 1, len);
+            if (!equal(y1, y2)) {
+                return false;
+            }
+
+            y1 = c.clone();
+            y2 = c.clone();
+            candidate.powerSpectrum(a, y1);
+            scalar.powerSpectrum(a, y2);
+            if (!equal(y1, y2)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer segment(float[] a) {
+        ByteBuffer segment = ByteBuffer.allocateDirect(4 * a.length).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < a.length; i++) {
+            segment.putFloat(4 * i, a[i]);
+        }
+        return segment;
+    }
+
+    private static float[] randomArray(Random random, int len) {
+        float[] a = new float[len];
+        for (int i = 0; i < len; i++) {
+            a[i] = (float) random.nextGaussian();
+        }
+        return a;
+    }
+
+    /**
+     * a sum of len values is close, if the error is within the rounding of
+     * adding len values in any order.
+     */
+    private static boolean close(float x, float y, int len) {
+        return Math.abs(x - y) <= 4 * len * Math.ulp(Math.max(Math.abs(x), Math.abs(y)) + 1f);
+    }
+
+    private static boolean equal(float[] x, float[] y) {
+        for (int i = 0; i < x.length; i++) {
+            if (Float.floatToIntBits(x[i]) != Float.floatToIntBits(y[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,562 @@
+package jaec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Multi-delay block frequency-domain adaptive filter (MDF).
+ *
+ * The echo path of tailLength samples is split into partitions of one block
+ * (half of the fft size, overlap-save). Every block the far-end spectrum of
+ * the latest two blocks is pushed into a queue of partitions, the echo is
+ * estimated as the sum over partitions of W[p]*X[p] in frequency domain, and
+ * the weights are updated by the constrained gradient conj(X[p])*E with a
+ * learning rate for every frequency bin (Valin, 2007) instead of the single
+ * scalar mju of the time domain NLMS.
+ *
+ * All spectra are in the half complex format of FFT_HalfComplex:
+ * Re[0]=a[0]; Re[n/2]=a[1]; Re[k]=a[2*k], Im[k]=a[2*k+1] 0<k<n/2.
+ *
+ * For very long tails (8k-16k taps) the block can be processed on a small
+ * ForkJoinPool (see setParallelism()): the echo is estimated by groups of
+ * frequency bins and the weights are updated by groups of partitions, which
+ * are independent, so the output is exactly the same as without the pool.
+ *
+ * With several far-end signals (references, e.g. the loudspeakers of stereo
+ * playback) every reference has its own weights, and the echo is the sum
+ * over references and partitions. the spectra of all references of one
+ * block are kept next to each other, so one partition is processed for every
+ * reference at once, and the cost grows linearly with the references. the
+ * weights are normalised by the far-end power of all references together
+ * (the joint power, as multi-channel mdf.c of Speex), so the step does not
+ * grow with the number of loudspeakers. correlated references (the same
+ * source in both channels) have no unique solution, see JAEC_Decorrelator.
+ *
+ * Filters of several microphones with the same far-end signal can share the
+ * far-end spectra (see JAEC_MDF(JAEC_MDF)): only the owner pushes far-end
+ * blocks, and every filter keeps its own weights.
+ *
+ * REFERENCE "Soo, J.-S., Pang, K.K., Multidelay block frequency domain
+ * adaptive filter. IEEE Transactions on Acoustics, Speech and Signal
+ * Processing, Vol. 38, No. 2, pp. 373-376, 1990", and mdf.c of Speex.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_MDF {
+
+    /**
+     * regularisation of the far-end power, avoid the division by zero when
+     * far-end signal is silent.
+     */
+    private final float powerFloor = 1e-6f;
+    private int blockSize; // number of new samples for every block (overlap-save)
+    private int fftSize; // twice of block size
+    private int partitions; // number of blocks to cover the tail
+    private int activePartitions; // partitions in use, fewer for a shortened tail
+    private int references; // number of far-end signals
+    private FFT_HalfComplex fft;
+    private float[][] x_T; // [previous far-end block, latest far-end block] of every reference
+    private float[][] Xs_HalfComplex_F; // far-end spectra of the latest partitions, [reference 0, reference 1, ...]
+    private float[][] Ws_HalfComplex_F; // weights of every partition in frequency domain, the same layout
+    private float[] Sxx; // far-end power summed over partitions and references, for every bin.
+    private float[] Y_HalfComplex_F;
+    private float[] E_HalfComplex_F;
+    private float[] G_HalfComplex_F; // gradient of one partition
+    private int latestPartition; // pointer to remove array copying of partitions.
+    private JAEC_MDF farEnd; // the filter pushing far-end blocks, this one if it is not shared
+    private float[][] checkpointWs; // copy of the weights by checkpoint()
+    private ForkJoinPool pool;
+    private EchoTask[] echoTasks; // echo estimation by groups of bins
+    private UpdateTask[] updateTasks; // weight updating by groups of partitions
+
+    /**
+     * the constructor of this class.
+     *
+     * @param fftSize : size of FFT (also the frame size of AEC), must be the
+     * power of 2.
+     * @param tailLength : the number of weights in time domain.
+     */
+    public JAEC_MDF(int fftSize, int tailLength) {
+        this(fftSize, tailLength, 1);
+    }
+
+    /**
+     * the constructor of this class with several far-end signals.
+     *
+     * @param fftSize : size of FFT (also the frame size of AEC), must be the
+     * power of 2.
+     * @param tailLength : the number of weights in time domain, for every
+     * reference.
+     * @param references : the number of far-end signals.
+     */
+    public JAEC_MDF(int fftSize, int tailLength, int references) {
+        if (references <= 0) {
+            throw new IllegalArgumentException("number of far-end signals must be positive: " + references);
+        }
+        this.fftSize = fftSize;
+        this.blockSize = fftSize / 2;
+        this.partitions = (tailLength + this.blockSize - 1) / this.blockSize;
+        this.activePartitions = this.partitions;
+        this.references = references;
+        this.fft = new FFT_HalfComplex(this.fftSize);
+
+        this.x_T = new float[this.references][this.fftSize];
+        this.Xs_HalfComplex_F = new float[this.partitions][this.references * this.fftSize];
+        this.Ws_HalfComplex_F = new float[this.partitions][this.references * this.fftSize];
+        this.Sxx = new float[this.blockSize + 1];
+        this.Y_HalfComplex_F = new float[this.fftSize];
+        this.E_HalfComplex_F = new float[this.fftSize];
+        this.G_HalfComplex_F = new float[this.fftSize];
+        this.latestPartition = 0;
+        this.farEnd = this;
+        this.setParallelism(null);
+    }
+
+    /**
+     * the constructor of a filter sharing far-end spectra of another one.
+     * far-end blocks are pushed only to the owner, before estimateEcho() and
+     * updateWeights() of this one for the same block.
+     *
+     * @param owner : the filter pushing far-end blocks, it must not share
+     * those of another one.
+     */
+    public JAEC_MDF(JAEC_MDF owner) {
+        if (owner.farEnd != owner) {
+            throw new IllegalArgumentException("far-end spectra must be shared from the filter pushing them");
+        }
+        this.fftSize = owner.fftSize;
+        this.blockSize = owner.blockSize;
+        this.partitions = owner.partitions;
+        this.activePartitions = owner.activePartitions;
+        this.references = owner.references;
+        this.fft = new FFT_HalfComplex(this.fftSize);
+
+        this.x_T = owner.x_T;
+        this.Xs_HalfComplex_F = owner.Xs_HalfComplex_F;
+        this.Ws_HalfComplex_F = new float[this.partitions][this.references * this.fftSize];
+        this.Sxx = owner.Sxx;
+        this.Y_HalfComplex_F = new float[this.fftSize];
+        this.E_HalfComplex_F = new float[this.fftSize];
+        this.G_HalfComplex_F = new float[this.fftSize];
+        this.farEnd = owner;
+        this.setParallelism(null);
+    }
+
+    /**
+     * function to restart the filter, all weights and far-end history are
+     * cleared.
+     */
+    public void reset() {
+        this.clearWeights();
+        if (this.farEnd == this) {
+            this.clearFarEnd();
+            this.latestPartition = 0;
+        }
+    }
+
+    /**
+     * clear the weights only, far-end history is kept.
+     */
+    public void clearWeights() {
+        for (int p = 0; p < this.partitions; p++) {
+            Arrays.fill(this.Ws_HalfComplex_F[p], 0f);
+        }
+    }
+
+    /**
+     * clear the far-end history only, weights are kept. it is used when
+     * far-end signal is pushed again after a silence which was not pushed.
+     */
+    public void clearFarEnd() {
+        this.checkOwner();
+        for (int p = 0; p < this.partitions; p++) {
+            Arrays.fill(this.Xs_HalfComplex_F[p], 0f);
+        }
+        for (int r = 0; r < this.references; r++) {
+            Arrays.fill(this.x_T[r], 0f);
+        }
+        Arrays.fill(this.Sxx, 0f);
+    }
+
+    /**
+     * get the number of far-end signals.
+     *
+     * @return : the number of references.
+     */
+    public int getReferences() {
+        return this.references;
+    }
+
+    /**
+     * get the number of partitions which cover the tail.
+     *
+     * @return : the number of partitions.
+     */
+    public int getPartitions() {
+        return this.activePartitions;
+    }
+
+    /**
+     * shorten (or restore) the tail, only the latest partitions covering it
+     * are used for echo estimation and weight updating.
+     *
+     * @param tailLength : the new tail length, not more than the length of
+     * the constructor.
+     */
+    public void setTailLength(int tailLength) {
+        int p = (tailLength + this.blockSize - 1) / this.blockSize;
+        if (p <= 0 || p > this.partitions) {
+            throw new IllegalArgumentException("tail length must be from 1 to " + this.partitions * this.blockSize + ": " + tailLength);
+        }
+        this.activePartitions = p;
+    }
+
+    /**
+     * process blocks on a pool, one task for every thread of the pool. the
+     * output is the same as without it.
+     *
+     * @param pool : the pool, or null for the calling thread only.
+     */
+    public void setParallelism(ForkJoinPool pool) {
+        this.pool = pool;
+        int groups = pool == null ? 1 : pool.getParallelism();
+        int pairs = this.blockSize; // complex values of the half complex format, bins 0 and n/2 share the first.
+        this.echoTasks = new EchoTask[Math.min(groups, pairs)];
+        for (int g = 0; g < this.echoTasks.length; g++) {
+            this.echoTasks[g] = new EchoTask(2 * (g * pairs / this.echoTasks.length), 2 * ((g + 1) * pairs / this.echoTasks.length));
+        }
+        this.updateTasks = new UpdateTask[Math.min(groups, this.partitions * this.references)];
+        for (int g = 0; g < this.updateTasks.length; g++) {
+            //the first group uses the buffers of this class.
+            this.updateTasks[g] = new UpdateTask(g, this.updateTasks.length,
+                    g == 0 ? this.fft : new FFT_HalfComplex(this.fftSize), g == 0 ? this.G_HalfComplex_F : new float[this.fftSize]);
+        }
+    }
+
+    /**
+     * write the weights of the partitions in use (of every reference), for
+     * snapshots.
+     *
+     * @param out : the output.
+     */
+    public void writeWeights(DataOutput out) throws IOException {
+        for (int p = 0; p < this.activePartitions; p++) {
+            for (int i = 0; i < this.references * this.fftSize; i++) {
+                out.writeFloat(this.Ws_HalfComplex_F[p][i]);
+            }
+        }
+    }
+
+    /**
+     * read the weights written by writeWeights(), the tail length and the
+     * number of references must be the same.
+     *
+     * @param in : the input.
+     */
+    public void readWeights(DataInput in) throws IOException {
+        for (int p = 0; p < this.activePartitions; p++) {
+            for (int i = 0; i < this.references * this.fftSize; i++) {
+                this.Ws_HalfComplex_F[p][i] = in.readFloat();
+            }
+        }
+    }
+
+    /**
+     * keep a copy of the weights of every partition in memory, only the
+     * first call allocates it.
+     */
+    public void checkpoint() {
+        if (this.checkpointWs == null) {
+            this.checkpointWs = new float[this.partitions][this.references * this.fftSize];
+        }
+        for (int p = 0; p < this.partitions; p++) {
+            System.arraycopy(this.Ws_HalfComplex_F[p], 0, this.checkpointWs[p], 0, this.references * this.fftSize);
+        }
+    }
+
+    /**
+     * restore the weights of checkpoint(), far-end history is not changed.
+     */
+    public void rollback() {
+        for (int p = 0; p < this.partitions; p++) {
+            System.arraycopy(this.checkpointWs[p], 0, this.Ws_HalfComplex_F[p], 0, this.references * this.fftSize);
+        }
+    }
+
+    /**
+     * put the latest far-end block into the queue of partitions, the oldest
+     * one is replaced.
+     *
+     * @param x : far-end signal, only the first block size values are used.
+     */
+    public void pushFarEnd(float[] x) {
+        if (this.references != 1) {
+            throw new IllegalArgumentException("far-end signal of every reference is needed: " + this.references);
+        }
+        this.checkOwner();
+        this.nextPartition();
+        this.transformFarEnd(x, 0);
+        this.updateFarEndPower();
+    }
+
+    /**
+     * put the latest far-end block of every reference into the queue of
+     * partitions, the oldest one is replaced.
+     *
+     * @param x : far-end signal of every reference, only the first block
+     * size values are used.
+     */
+    public void pushFarEnd(float[][] x) {
+        this.checkOwner();
+        this.nextPartition();
+        for (int r = 0; r < this.references; r++) {
+            this.transformFarEnd(x[r], r);
+        }
+        this.updateFarEndPower();
+    }
+
+    private void nextPartition() {
+        this.latestPartition--;
+        if (this.latestPartition < 0) {
+            this.latestPartition = this.partitions - 1;
+        }
+    }
+
+    /**
+     * spectrum of the latest two blocks of one reference, into the latest
+     * partition.
+     */
+    private void transformFarEnd(float[] x, int reference) {
+        //overlap-save: [previous block, latest block]
+        float[] x_r = this.x_T[reference];
+        System.arraycopy(x_r, this.blockSize, x_r, 0, this.blockSize);
+        System.arraycopy(x, 0, x_r, this.blockSize, this.blockSize);
+
+        float[] X = this.Xs_HalfComplex_F[this.latestPartition];
+        int base = reference * this.fftSize;
+        System.arraycopy(x_r, 0, X, base, this.fftSize);
+        this.fft.forward(X, base);
+    }
+
+    /**
+     * far-end power of the whole tail of all references in every bin.
+     */
+    private void updateFarEndPower() {
+        Arrays.fill(this.Sxx, 0f);
+        for (int p = 0; p < this.activePartitions; p++) {
+            float[] Xp = this.partition(p);
+            for (int base = 0; base < Xp.length; base += this.fftSize) {
+                this.Sxx[0] += Xp[base] * Xp[base];
+                this.Sxx[this.blockSize] += Xp[base + 1] * Xp[base + 1];
+                for (int k = 1; k < this.blockSize; k++) {
+                    float re = Xp[base + 2 * k];
+                    float im = Xp[base + 2 * k + 1];
+                    this.Sxx[k] += re * re + im * im;
+                }
+            }
+        }
+    }
+
+    /**
+     * echo estimation for the latest far-end block.
+     *
+     * @param y : output of echo estimation, the first block size values are
+     * filled.
+     */
+    public void estimateEcho(float[] y) {
+        this.invokeAll(this.echoTasks);
+        this.fft.inverse(this.Y_HalfComplex_F);
+        //overlap-save: only the second half is the linear convolution.
+        System.arraycopy(this.Y_HalfComplex_F, this.blockSize, y, 0, this.blockSize);
+    }
+
+    /**
+     * update weights of all partitions with learning rate of every frequency
+     * bin.
+     *
+     * @param e : near-end signal without echo, the first block size values
+     * are used.
+     * @param mjus_HalfComplex_F : learning rate of every frequency bin (from
+     * 0 to fft size/2).
+     */
+    public void updateWeights(float[] e, float[] mjus_HalfComplex_F) {
+        //E = FFT([0, e])
+        Arrays.fill(this.E_HalfComplex_F, 0, this.blockSize, 0f);
+        System.arraycopy(e, 0, this.E_HalfComplex_F, this.blockSize, this.blockSize);
+        this.fft.forward(this.E_HalfComplex_F);
+
+        /**
+         * normalise E with the far-end power of the tail in each bin, so the
+         * step matches the NLMS of the time domain. The factor 0.5f of Speex
+         * soft constraint (see JAEC.updateWeights) cancels the factor 2 of the
+         * spectrum power of the 2*block samples.
+         */
+        float[] E = this.E_HalfComplex_F;
+        E[0] = E[0] * mjus_HalfComplex_F[0] / (this.Sxx[0] + this.powerFloor);
+        E[1] = E[1] * mjus_HalfComplex_F[this.blockSize] / (this.Sxx[this.blockSize] + this.powerFloor);
+        for (int k = 1; k < this.blockSize; k++) {
+            float step = mjus_HalfComplex_F[k] / (this.Sxx[k] + this.powerFloor);
+            E[2 * k] = E[2 * k] * step;
+            E[2 * k + 1] = E[2 * k + 1] * step;
+        }
+
+        this.invokeAll(this.updateTasks);
+    }
+
+    /**
+     * far-end spectra shared from another filter are changed only by it.
+     */
+    private void checkOwner() {
+        if (this.farEnd != this) {
+            throw new IllegalStateException("far-end signal is pushed to the filter it is shared from");
+        }
+    }
+
+    /**
+     * run the tasks, the first one on the calling thread and the others on
+     * the pool.
+     */
+    private void invokeAll(RecursiveAction[] tasks) {
+        for (int g = 1; g < tasks.length; g++) {
+            tasks[g].reinitialize();
+            this.pool.execute(tasks[g]);
+        }
+        tasks[0].reinitialize();
+        tasks[0].invoke();
+        for (int g = 1; g < tasks.length; g++) {
+            tasks[g].join();
+        }
+    }
+
+    /**
+     * echo spectrum Y = sum(W[p][r]*X[p][r]) over partitions and references,
+     * of the values from (inclusive) to (exclusive) of the half complex
+     * format, both even.
+     */
+    private void estimateEcho(int from, int to) {
+        Arrays.fill(this.Y_HalfComplex_F, from, to, 0f);
+        for (int p = 0; p < this.activePartitions; p++) {
+            float[] W = this.Ws_HalfComplex_F[p];
+            float[] X = this.partition(p);
+            for (int base = 0; base < W.length; base += this.fftSize) {
+                multiplyAccumulate(W, X, base, this.Y_HalfComplex_F, from, to);
+            }
+        }
+    }
+
+    /**
+     * weight updating of the filters u (partition u/references of reference
+     * u%references), u%groups==group, with the normalised E.
+     */
+    private void updatePartitions(int group, int groups, FFT_HalfComplex fft, float[] G) {
+        float[] E = this.E_HalfComplex_F;
+        for (int u = group; u < this.activePartitions * this.references; u += groups) {
+            int p = u / this.references;
+            int base = (u - p * this.references) * this.fftSize;
+            //G = conj(X)*E
+            conjugateMultiply(this.partition(p), base, E, G);
+            //gradient constraint: weights longer than a block are removed.
+            fft.inverse(G);
+            Arrays.fill(G, this.blockSize, this.fftSize, 0f);
+            fft.forward(G);
+            float[] W = this.Ws_HalfComplex_F[p];
+            for (int i = 0; i < this.fftSize; i++) {
+                W[base + i] += G[i];
+            }
+        }
+    }
+
+    /**
+     * far-end spectra with the delay of p blocks.
+     *
+     * @param p : delay counted by blocks, 0 is the latest.
+     * @return : far-end spectrum of every reference in half complex, one
+     * after another.
+     */
+    private float[] partition(int p) {
+        int i = this.farEnd.latestPartition + p;
+        if (i >= this.partitions) {
+            i = i - this.partitions;
+        }
+        return this.Xs_HalfComplex_F[i];
+    }
+
+    /**
+     * c += a * b in half complex format, a and b from base, for the values
+     * from (inclusive) to (exclusive) of c, both even.
+     */
+    private static void multiplyAccumulate(float[] a, float[] b, int base, float[] c, int from, int to) {
+        if (from == 0) {
+            c[0] += a[base] * b[base];
+            c[1] += a[base + 1] * b[base + 1];
+            from = 2;
+        }
+        for (int i = from; i < to; i = i + 2) {
+            int j = base + i;
+            c[i] += a[j] * b[j] - a[j + 1] * b[j + 1];
+            c[i + 1] += a[j] * b[j + 1] + a[j + 1] * b[j];
+        }
+    }
+
+    /**
+     * c = conj(a) * b in half complex format, a from base.
+     */
+    private static void conjugateMultiply(float[] a, int base, float[] b, float[] c) {
+        c[0] = a[base] * b[0];
+        c[1] = a[base + 1] * b[1];
+        for (int i = 2; i < c.length; i = i + 2) {
+            int j = base + i;
+            c[i] = a[j] * b[i] + a[j + 1] * b[i + 1];
+            c[i + 1] = a[j] * b[i + 1] - a[j + 1] * b[i];
+        }
+    }
+
+    /**
+     * echo estimation of a group of bins, reused for every block.
+     */
+    private class EchoTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        EchoTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            estimateEcho(this.from, this.to);
+        }
+    }
+
+    /**
+     * weight updating of a group of partitions (of every reference), with
+     * its own FFT and gradient buffer, reused for every block.
+     */
+    private class UpdateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int group;
+        private final int groups;
+        private final FFT_HalfComplex fft;
+        private final float[] G;
+
+        UpdateTask(int group, int groups, FFT_HalfComplex fft, float[] G) {
+            this.group = group;
+            this.groups = groups;
+            this.fft = fft;
+            this.G = G;
+        }
+
+        @Override
+        protected void compute() {
+            updatePartitions(this.group, this.groups, this.fft, this.G);
+        }
+    }
+}
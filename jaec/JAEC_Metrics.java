@@ -0,0 +1,279 @@
+package jaec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * metrics of one JAEC, instead of printing on the audio thread.
+ *
+ * they are written only by the thread calling echoCancel, and can be read by
+ * any other thread (e.g. monitoring) at any time without any lock. counters
+ * are LongAdder, gauges are volatile fields holding the latest value. nothing
+ * is allocated when they are updated.
+ *
+ * the optional listener is told about rare events (overflow, reset, far-end
+ * alignment). it is called on the audio thread, so it must return at once:
+ * no I/O, no lock, hand the event over to another thread if needed.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Metrics {
+
+    /**
+     * receiver of rare events of AEC, it is called on the audio thread.
+     */
+    public interface Listener {
+
+        /**
+         * the output (e) is out of the range -1f to 1f, and the sample is
+         * not processed.
+         *
+         * @param errorCount : number of errors since the last reset.
+         * @param value : the output (e) out of range.
+         */
+        void overflow(int errorCount, float value);
+
+        /**
+         * AEC is restarted after too many errors.
+         *
+         * @param resets : number of resets since creation.
+         */
+        void reset(long resets);
+
+        /**
+         * far-end signal is aligned to a new bulk delay.
+         *
+         * @param delay : estimated delay in samples.
+         * @param bulkDelay : delay applied to far-end signal.
+         * @param tailLength : number of weights in use.
+         */
+        void farEndAligned(int delay, int bulkDelay, int tailLength);
+    }
+
+    private final float erleSmoothing = 0.9f; // recursive average of frame power for ERLE
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder idleFrames = new LongAdder();
+    private final LongAdder frameNanos = new LongAdder();
+    private volatile float mju;
+    private volatile float eit;
+    private volatile float erle;
+    private volatile long lastFrameNanos;
+    private volatile long maxFrameNanos;
+    private volatile Listener listener;
+    // only used by the audio thread
+    private float nearEndPower;
+    private float outputPower;
+
+    /**
+     * set the receiver of events, null to remove it.
+     *
+     * @param listener : receiver of events, it is called on the audio thread.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * get the number of overflow errors since creation (not cleared by
+     * reset).
+     *
+     * @return : the number of errors.
+     */
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    /**
+     * get the number of resets after too many errors.
+     *
+     * @return : the number of resets.
+     */
+    public long getResets() {
+        return this.resets.sum();
+    }
+
+    /**
+     * get the number of rollbacks to a checkpoint, after too many errors or
+     * by JAEC.rollback().
+     *
+     * @return : the number of rollbacks.
+     */
+    public long getRollbacks() {
+        return this.rollbacks.sum();
+    }
+
+    /**
+     * get the number of processed (half) frames.
+     *
+     * @return : the number of frames.
+     */
+    public long getFrames() {
+        return this.frames.sum();
+    }
+
+    /**
+     * get the number of frames skipped because far-end signal was silent.
+     *
+     * @return : the number of idle frames.
+     */
+    public long getIdleFrames() {
+        return this.idleFrames.sum();
+    }
+
+    /**
+     * get the latest average learning rate.
+     *
+     * @return : mju.
+     */
+    public float getMju() {
+        return this.mju;
+    }
+
+    /**
+     * get the latest leakage estimation.
+     *
+     * @return : eit.
+     */
+    public float getEit() {
+        return this.eit;
+    }
+
+    /**
+     * get the echo return loss enhancement, power of near-end signal over
+     * power of output, averaged over the latest frames.
+     *
+     * @return : ERLE in dB, 0 before any output.
+     */
+    public float getErle() {
+        return this.erle;
+    }
+
+    /**
+     * get the time of processing the latest frame.
+     *
+     * @return : time in nanoseconds.
+     */
+    public long getLastFrameNanos() {
+        return this.lastFrameNanos;
+    }
+
+    /**
+     * get the max time of processing one frame.
+     *
+     * @return : time in nanoseconds.
+     */
+    public long getMaxFrameNanos() {
+        return this.maxFrameNanos;
+    }
+
+    /**
+     * get the average time of processing one frame.
+     *
+     * @return : time in nanoseconds, 0 before any frame.
+     */
+    public double getAverageFrameNanos() {
+        long n = this.frames.sum();
+        return (n == 0) ? 0 : (double) this.frameNanos.sum() / n;
+    }
+
+    /**
+     * metrics for information.
+     *
+     * @return : metrics of AEC.
+     */
+    @Override
+    public String toString() {
+        return "frames:" + this.getFrames()
+                + ", idle frames:" + this.getIdleFrames()
+                + ", errors:" + this.getErrors()
+                + ", resets:" + this.getResets()
+                + ", rollbacks:" + this.getRollbacks()
+                + ", mju:" + this.mju
+                + ", eit:" + this.eit
+                + ", ERLE:" + this.erle + "dB"
+                + ", frame time(avg/max ns):" + (long) this.getAverageFrameNanos() + "/" + this.maxFrameNanos;
+    }
+
+    void overflow(int errorCount, float value) {
+        this.errors.increment();
+        Listener l = this.listener;
+        if (l != null) {
+            l.overflow(errorCount, value);
+        }
+    }
+
+    void reset() {
+        this.resets.increment();
+        this.nearEndPower = 0f;
+        this.outputPower = 0f;
+        Listener l = this.listener;
+        if (l != null) {
+            l.reset(this.resets.sum());
+        }
+    }
+
+    void rollback() {
+        this.rollbacks.increment();
+        this.nearEndPower = 0f;
+        this.outputPower = 0f;
+    }
+
+    /**
+     * clear all counters and gauges and remove the listener, for a recycled
+     * AEC.
+     */
+    void clear() {
+        this.errors.reset();
+        this.resets.reset();
+        this.rollbacks.reset();
+        this.frames.reset();
+        this.idleFrames.reset();
+        this.frameNanos.reset();
+        this.mju = 0f;
+        this.eit = 0f;
+        this.erle = 0f;
+        this.lastFrameNanos = 0;
+        this.maxFrameNanos = 0;
+        this.nearEndPower = 0f;
+        this.outputPower = 0f;
+        this.listener = null;
+    }
+
+    void farEndAligned(int delay, int bulkDelay, int tailLength) {
+        Listener l = this.listener;
+        if (l != null) {
+            l.farEndAligned(delay, bulkDelay, tailLength);
+        }
+    }
+
+    /**
+     * record a processed frame.
+     *
+     * @param nanos : time of processing.
+     * @param farEndActive : false if echo estimation was skipped.
+     * @param mju : the latest average learning rate.
+     * @param eit : the latest leakage estimation.
+     * @param nearEndSumSquare : sum square of near-end signal of the frame.
+     * @param outputSumSquare : sum square of output of the frame.
+     */
+    void frame(long nanos, boolean farEndActive, float mju, float eit, float nearEndSumSquare, float outputSumSquare) {
+        this.frames.increment();
+        if (!farEndActive) {
+            this.idleFrames.increment();
+        }
+        this.frameNanos.add(nanos);
+        this.lastFrameNanos = nanos;
+        if (nanos > this.maxFrameNanos) {
+            this.maxFrameNanos = nanos;
+        }
+        this.mju = mju;
+        this.eit = eit;
+        this.nearEndPower = this.erleSmoothing * this.nearEndPower + (1 - this.erleSmoothing) * nearEndSumSquare;
+        this.outputPower = this.erleSmoothing * this.outputPower + (1 - this.erleSmoothing) * outputSumSquare;
+        if (this.outputPower > 0 && this.nearEndPower > 0) {
+            this.erle = (float) (10 * Math.log10(this.nearEndPower / this.outputPower));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package jaec;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AEC of several microphones (e.g. a microphone array) with one far-end
+ * signal. every microphone has its own JAEC (weights, learning rates, power
+ * estimates), but the far-end history is kept only once: the first JAEC adds
+ * every far-end frame to it (and the far-end spectra of ENGINE_BLOCK_FREQUENCY,
+ * and the sum square of the tail for every sample of ENGINE_TIME_DOMAIN), and
+ * the others read it for the same frame. the output of every microphone is
+ * exactly the same as a JAEC of its own, until it is restarted (far-end
+ * history is kept then).
+ *
+ * only ENGINE_TIME_DOMAIN and ENGINE_BLOCK_FREQUENCY, without delay
+ * estimation. all microphones are processed on the calling thread, the
+ * first one before the others for every frame.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_MultiMic {
+
+    private final JAEC[] aecs; // aecs[0] is the owner of far-end history
+    private final float SHORT_RANGE = 32768.0f;
+    private final float[] x_Bulk_Buffer;
+    private final float[] d_Bulk_Buffer;
+    private final float[] e_Bulk_Buffer;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param tail_length : the length of echo reverberation time, counted by
+     * the number of samples.
+     * @param sample_rate : rate of sampling, the number of samples in one
+     * second.
+     * @param engine : JAEC.ENGINE_TIME_DOMAIN or JAEC.ENGINE_BLOCK_FREQUENCY.
+     * @param microphones : the number of microphones.
+     */
+    public JAEC_MultiMic(int tail_length, float sample_rate, int engine, int microphones) {
+        if (microphones <= 0) {
+            throw new IllegalArgumentException("number of microphones must be positive: " + microphones);
+        }
+        if (engine != JAEC.ENGINE_TIME_DOMAIN && engine != JAEC.ENGINE_BLOCK_FREQUENCY) {
+            throw new IllegalArgumentException("far-end history can only be shared by the time domain and block frequency engines: " + engine);
+        }
+        this.aecs = new JAEC[microphones];
+        this.aecs[0] = new JAEC(tail_length, sample_rate, engine);
+        for (int m = 1; m < microphones; m++) {
+            this.aecs[m] = new JAEC(this.aecs[0]);
+        }
+        int half = this.aecs[0].getSamplesToFrameEnd();
+        this.x_Bulk_Buffer = new float[half];
+        this.d_Bulk_Buffer = new float[half];
+        this.e_Bulk_Buffer = new float[half];
+    }
+
+    /**
+     * AEC of every microphone on a block of signals, the same as
+     * JAEC.echoCancel(short[], short[], short[], int, int) of each. nothing
+     * is allocated.
+     *
+     * @param far : the acoustic signal from far-end side.
+     * @param near : the signal of every microphone, including local speech
+     * and echo.
+     * @param out : adjusted signal of every microphone without echo.
+     * @param off : the first index of the block in far, near and out.
+     * @param len : the number of samples of the block.
+     */
+    public void echoCancel(short[] far, short[][] near, short[][] out, int off, int len) {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            //one frame at a time: far-end history is added by the owner before the others read it.
+            int n = Math.min(end - i, this.aecs[0].getSamplesToFrameEnd());
+            for (int j = 0; j < n; j++) {
+                this.x_Bulk_Buffer[j] = far[i + j] / SHORT_RANGE;
+            }
+            for (int m = 0; m < this.aecs.length; m++) {
+                short[] d = near[m];
+                for (int j = 0; j < n; j++) {
+                    this.d_Bulk_Buffer[j] = d[i + j] / SHORT_RANGE;
+                }
+                this.aecs[m].echoCancel(this.x_Bulk_Buffer, this.d_Bulk_Buffer, this.e_Bulk_Buffer, 0, n);
+                short[] e = out[m];
+                for (int j = 0; j < n; j++) {
+                    e[i + j] = clipFloat2Short(this.e_Bulk_Buffer[j] * SHORT_RANGE);
+                }
+            }
+            i += n;
+        }
+    }
+
+    /**
+     * AEC of every microphone on a block of normalised signals (-1f to 1f),
+     * the same as JAEC.echoCancel(float[], float[], float[], int, int) of
+     * each. nothing is allocated.
+     *
+     * @param far : the acoustic signal from far-end side.
+     * @param near : the signal of every microphone, including local speech
+     * and echo.
+     * @param out : adjusted signal of every microphone without echo.
+     * @param off : the first index of the block in far, near and out.
+     * @param len : the number of samples of the block.
+     */
+    public void echoCancel(float[] far, float[][] near, float[][] out, int off, int len) {
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            int n = Math.min(end - i, this.aecs[0].getSamplesToFrameEnd());
+            for (int m = 0; m < this.aecs.length; m++) {
+                this.aecs[m].echoCancel(far, near[m], out[m], i, n);
+            }
+            i += n;
+        }
+    }
+
+    /**
+     * get the number of microphones.
+     *
+     * @return : the number of microphones.
+     */
+    public int getMicrophones() {
+        return this.aecs.length;
+    }
+
+    /**
+     * get the metrics of AEC of one microphone, they can be read by any
+     * thread.
+     *
+     * @param microphone : index of the microphone.
+     * @return : metrics of AEC.
+     */
+    public JAEC_Metrics getMetrics(int microphone) {
+        return this.aecs[microphone].getMetrics();
+    }
+
+    /**
+     * get the latency of AEC, the same for every microphone.
+     *
+     * @return : the latency in samples.
+     */
+    public int getLatency() {
+        return this.aecs[0].getLatency();
+    }
+
+    /**
+     * restart AEC of every microphone, far-end history is kept.
+     */
+    public void reset() {
+        for (JAEC aec : this.aecs) {
+            aec.reset();
+        }
+    }
+
+    /**
+     * enable or disable far-end activity gating of every microphone, see
+     * JAEC.setFarEndGating().
+     *
+     * @param enabled : true to skip silent frames.
+     */
+    public void setFarEndGating(boolean enabled) {
+        for (JAEC aec : this.aecs) {
+            aec.setFarEndGating(enabled);
+        }
+    }
+
+    /**
+     * select the pre-filter of every microphone, see JAEC.setPreFilter().
+     *
+     * @param preFilter : JAEC.PRE_FILTER_FFT or JAEC.PRE_FILTER_BIQUAD.
+     */
+    public void setPreFilter(int preFilter) {
+        for (JAEC aec : this.aecs) {
+            aec.setPreFilter(preFilter);
+        }
+    }
+
+    /**
+     * process blocks of every microphone on a small pool, see
+     * JAEC.setParallelism().
+     *
+     * @param pool : the pool, or null for the calling thread only.
+     */
+    public void setParallelism(ForkJoinPool pool) {
+        for (JAEC aec : this.aecs) {
+            aec.setParallelism(pool);
+        }
+    }
+
+    /**
+     * take checkpoints of every microphone, see JAEC.setCheckpointInterval().
+     *
+     * @param frames : number of frames between two checkpoints, 0 to
+     * disable.
+     */
+    public void setCheckpointInterval(int frames) {
+        for (JAEC aec : this.aecs) {
+            aec.setCheckpointInterval(frames);
+        }
+    }
+
+    private static short clipFloat2Short(float a) {
+        if (a > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        } else if (a < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) a;
+    }
+}
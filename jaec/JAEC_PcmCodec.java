@@ -0,0 +1,412 @@
+package jaec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * bulk conversion between interleaved PCM bytes (byte[] or ByteBuffer, heap
+ * or direct) and the SHORT or FLOAT (-1f to 1f) blocks of the AEC bulk API.
+ * signed 16, 24 and 32 bits samples of both endianness are supported.
+ *
+ * bytes are read and written by byte array (or byte buffer) view
+ * VarHandles, a whole block in one loop without any object per sample, and
+ * the order of a ByteBuffer is not used nor changed. only one channel of
+ * the interleaved frames is converted by a call. samples of more than 16
+ * bits are truncated to the SHORT range, and FLOAT signals are clipped to
+ * the range of the format.
+ *
+ * a codec has no state, it can be shared by any threads.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_PcmCodec {
+
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle BUFFER_SHORT_LE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_SHORT_BE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle BUFFER_INT_LE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_INT_BE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final float FULL_SCALE_INVERSE = 1f / 2147483648f; // samples are left aligned in INT, exact
+    private final int bits;
+    private final boolean bigEndian;
+    private final int channels;
+    private final int sampleBytes;
+    private final int frameBytes;
+    private final float scale; // full scale of the format
+    private final int shift; // bits below the samples left aligned in INT
+    private final int max; // the max sample left aligned in INT
+
+    /**
+     * the constructor of this class.
+     *
+     * @param bits : bits of a sample, 16, 24 or 32.
+     * @param bigEndian : true for big-endian samples.
+     * @param channels : number of interleaved channels of a frame.
+     */
+    public JAEC_PcmCodec(int bits, boolean bigEndian, int channels) {
+        if (bits != 16 && bits != 24 && bits != 32) {
+            throw new IllegalArgumentException("only 16, 24 and 32 bits PCM is supported: " + bits);
+        }
+        if (channels <= 0) {
+            throw new IllegalArgumentException("number of channels must be positive: " + channels);
+        }
+        this.bits = bits;
+        this.bigEndian = bigEndian;
+        this.channels = channels;
+        this.sampleBytes = bits / 8;
+        this.frameBytes = this.sampleBytes * channels;
+        this.scale = (float) (1L << (bits - 1));
+        this.shift = 32 - bits;
+        this.max = (int) ((1L << (bits - 1)) - 1) << this.shift;
+    }
+
+    public int getBits() {
+        return this.bits;
+    }
+
+    public boolean isBigEndian() {
+        return this.bigEndian;
+    }
+
+    public int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * get the number of bytes of an interleaved frame (a sample of every
+     * channel).
+     *
+     * @return : bytes of a frame.
+     */
+    public int getFrameBytes() {
+        return this.frameBytes;
+    }
+
+    /**
+     * convert frames of PCM bytes into SHORT samples of one channel.
+     *
+     * @param src : PCM bytes.
+     * @param srcOff : index of the first frame in src.
+     * @param channel : the channel to convert, from 0.
+     * @param dst : samples.
+     * @param dstOff : the first index in dst.
+     * @param frames : number of frames.
+     */
+    public void decode(byte[] src, int srcOff, int channel, short[] dst, int dstOff, int frames) {
+        int p = srcOff + channel * this.sampleBytes;
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    dst[dstOff + i] = (short) SHORT_BE.get(src, p);
+                }
+            } else {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    dst[dstOff + i] = (short) SHORT_LE.get(src, p);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            dst[dstOff + i] = (short) (this.read(src, p) >> 16);
+        }
+    }
+
+    /**
+     * convert frames of PCM bytes into normalised FLOAT samples (-1f to 1f)
+     * of one channel.
+     *
+     * @param src : PCM bytes.
+     * @param srcOff : index of the first frame in src.
+     * @param channel : the channel to convert, from 0.
+     * @param dst : samples.
+     * @param dstOff : the first index in dst.
+     * @param frames : number of frames.
+     */
+    public void decode(byte[] src, int srcOff, int channel, float[] dst, int dstOff, int frames) {
+        int p = srcOff + channel * this.sampleBytes;
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    dst[dstOff + i] = (short) SHORT_BE.get(src, p) * (1f / 32768f);
+                }
+            } else {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    dst[dstOff + i] = (short) SHORT_LE.get(src, p) * (1f / 32768f);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            dst[dstOff + i] = this.read(src, p) * FULL_SCALE_INVERSE;
+        }
+    }
+
+    /**
+     * convert SHORT samples into one channel of frames of PCM bytes, the
+     * other channels are not changed.
+     *
+     * @param src : samples.
+     * @param srcOff : the first index in src.
+     * @param dst : PCM bytes.
+     * @param dstOff : index of the first frame in dst.
+     * @param channel : the channel to write, from 0.
+     * @param frames : number of frames.
+     */
+    public void encode(short[] src, int srcOff, byte[] dst, int dstOff, int channel, int frames) {
+        int p = dstOff + channel * this.sampleBytes;
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    SHORT_BE.set(dst, p, src[srcOff + i]);
+                }
+            } else {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    SHORT_LE.set(dst, p, src[srcOff + i]);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            this.write(dst, p, src[srcOff + i] << 16);
+        }
+    }
+
+    /**
+     * convert normalised FLOAT samples into one channel of frames of PCM
+     * bytes, the other channels are not changed.
+     *
+     * @param src : samples, out of the range -1f to 1f is clipped.
+     * @param srcOff : the first index in src.
+     * @param dst : PCM bytes.
+     * @param dstOff : index of the first frame in dst.
+     * @param channel : the channel to write, from 0.
+     * @param frames : number of frames.
+     */
+    public void encode(float[] src, int srcOff, byte[] dst, int dstOff, int channel, int frames) {
+        int p = dstOff + channel * this.sampleBytes;
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            this.write(dst, p, this.toInt(src[srcOff + i]));
+        }
+    }
+
+    /**
+     * convert the sample of one channel of a single frame into SHORT, for
+     * callers which are given a frame at a time.
+     *
+     * @param src : PCM bytes.
+     * @param srcOff : index of the frame in src.
+     * @param channel : the channel to convert, from 0.
+     * @return : the sample.
+     */
+    public short decodeShort(byte[] src, int srcOff, int channel) {
+        return (short) (this.read(src, srcOff + channel * this.sampleBytes) >> 16);
+    }
+
+    /**
+     * convert a SHORT sample into one channel of a single frame.
+     *
+     * @param sample : the sample.
+     * @param dst : PCM bytes.
+     * @param dstOff : index of the frame in dst.
+     * @param channel : the channel to write, from 0.
+     */
+    public void encodeShort(short sample, byte[] dst, int dstOff, int channel) {
+        this.write(dst, dstOff + channel * this.sampleBytes, sample << 16);
+    }
+
+    /**
+     * convert frames of PCM bytes into SHORT samples of one channel, the
+     * position and order of src are not used.
+     *
+     * @param src : PCM bytes, heap or direct.
+     * @param srcIndex : index of the first frame in src.
+     * @param channel : the channel to convert, from 0.
+     * @param dst : samples.
+     * @param dstOff : the first index in dst.
+     * @param frames : number of frames.
+     */
+    public void decode(ByteBuffer src, int srcIndex, int channel, short[] dst, int dstOff, int frames) {
+        int p = srcIndex + channel * this.sampleBytes;
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    dst[dstOff + i] = (short) BUFFER_SHORT_BE.get(src, p);
+                }
+            } else {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    dst[dstOff + i] = (short) BUFFER_SHORT_LE.get(src, p);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            dst[dstOff + i] = (short) (this.read(src, p) >> 16);
+        }
+    }
+
+    /**
+     * convert frames of PCM bytes into normalised FLOAT samples (-1f to 1f)
+     * of one channel, the position and order of src are not used.
+     *
+     * @param src : PCM bytes, heap or direct.
+     * @param srcIndex : index of the first frame in src.
+     * @param channel : the channel to convert, from 0.
+     * @param dst : samples.
+     * @param dstOff : the first index in dst.
+     * @param frames : number of frames.
+     */
+    public void decode(ByteBuffer src, int srcIndex, int channel, float[] dst, int dstOff, int frames) {
+        int p = srcIndex + channel * this.sampleBytes;
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            dst[dstOff + i] = this.read(src, p) * FULL_SCALE_INVERSE;
+        }
+    }
+
+    /**
+     * convert SHORT samples into one channel of frames of PCM bytes, the
+     * other channels are not changed. the position and order of dst are not
+     * used.
+     *
+     * @param src : samples.
+     * @param srcOff : the first index in src.
+     * @param dst : PCM bytes, heap or direct.
+     * @param dstIndex : index of the first frame in dst.
+     * @param channel : the channel to write, from 0.
+     * @param frames : number of frames.
+     */
+    public void encode(short[] src, int srcOff, ByteBuffer dst, int dstIndex, int channel, int frames) {
+        int p = dstIndex + channel * this.sampleBytes;
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    BUFFER_SHORT_BE.set(dst, p, src[srcOff + i]);
+                }
+            } else {
+                for (int i = 0; i < frames; i++, p += this.frameBytes) {
+                    BUFFER_SHORT_LE.set(dst, p, src[srcOff + i]);
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            this.write(dst, p, src[srcOff + i] << 16);
+        }
+    }
+
+    /**
+     * convert normalised FLOAT samples into one channel of frames of PCM
+     * bytes, the other channels are not changed. the position and order of
+     * dst are not used.
+     *
+     * @param src : samples, out of the range -1f to 1f is clipped.
+     * @param srcOff : the first index in src.
+     * @param dst : PCM bytes, heap or direct.
+     * @param dstIndex : index of the first frame in dst.
+     * @param channel : the channel to write, from 0.
+     * @param frames : number of frames.
+     */
+    public void encode(float[] src, int srcOff, ByteBuffer dst, int dstIndex, int channel, int frames) {
+        int p = dstIndex + channel * this.sampleBytes;
+        for (int i = 0; i < frames; i++, p += this.frameBytes) {
+            this.write(dst, p, this.toInt(src[srcOff + i]));
+        }
+    }
+
+    /**
+     * @return : the sample at p, left aligned in INT.
+     */
+    private int read(byte[] src, int p) {
+        if (this.bits == 16) {
+            return (short) (this.bigEndian ? SHORT_BE.get(src, p) : SHORT_LE.get(src, p)) << 16;
+        } else if (this.bits == 32) {
+            return (int) (this.bigEndian ? INT_BE.get(src, p) : INT_LE.get(src, p));
+        } else if (this.bigEndian) {
+            return (src[p] << 24) | ((src[p + 1] & 0xFF) << 16) | ((src[p + 2] & 0xFF) << 8);
+        } else {
+            return (src[p + 2] << 24) | ((src[p + 1] & 0xFF) << 16) | ((src[p] & 0xFF) << 8);
+        }
+    }
+
+    private int read(ByteBuffer src, int p) {
+        if (this.bits == 16) {
+            return (short) (this.bigEndian ? BUFFER_SHORT_BE.get(src, p) : BUFFER_SHORT_LE.get(src, p)) << 16;
+        } else if (this.bits == 32) {
+            return (int) (this.bigEndian ? BUFFER_INT_BE.get(src, p) : BUFFER_INT_LE.get(src, p));
+        } else if (this.bigEndian) {
+            return (src.get(p) << 24) | ((src.get(p + 1) & 0xFF) << 16) | ((src.get(p + 2) & 0xFF) << 8);
+        } else {
+            return (src.get(p + 2) << 24) | ((src.get(p + 1) & 0xFF) << 16) | ((src.get(p) & 0xFF) << 8);
+        }
+    }
+
+    /**
+     * write the left aligned sample v at p, the low bits out of the format
+     * are dropped.
+     */
+    private void write(byte[] dst, int p, int v) {
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                SHORT_BE.set(dst, p, (short) (v >> 16));
+            } else {
+                SHORT_LE.set(dst, p, (short) (v >> 16));
+            }
+        } else if (this.bits == 32) {
+            if (this.bigEndian) {
+                INT_BE.set(dst, p, v);
+            } else {
+                INT_LE.set(dst, p, v);
+            }
+        } else if (this.bigEndian) {
+            dst[p] = (byte) (v >> 24);
+            dst[p + 1] = (byte) (v >> 16);
+            dst[p + 2] = (byte) (v >> 8);
+        } else {
+            dst[p] = (byte) (v >> 8);
+            dst[p + 1] = (byte) (v >> 16);
+            dst[p + 2] = (byte) (v >> 24);
+        }
+    }
+
+    private void write(ByteBuffer dst, int p, int v) {
+        if (this.bits == 16) {
+            if (this.bigEndian) {
+                BUFFER_SHORT_BE.set(dst, p, (short) (v >> 16));
+            } else {
+                BUFFER_SHORT_LE.set(dst, p, (short) (v >> 16));
+            }
+        } else if (this.bits == 32) {
+            if (this.bigEndian) {
+                BUFFER_INT_BE.set(dst, p, v);
+            } else {
+                BUFFER_INT_LE.set(dst, p, v);
+            }
+        } else if (this.bigEndian) {
+            dst.put(p, (byte) (v >> 24));
+            dst.put(p + 1, (byte) (v >> 16));
+            dst.put(p + 2, (byte) (v >> 8));
+        } else {
+            dst.put(p, (byte) (v >> 8));
+            dst.put(p + 1, (byte) (v >> 16));
+            dst.put(p + 2, (byte) (v >> 24));
+        }
+    }
+
+    /**
+     * @return : the FLOAT sample left aligned in INT, clipped to the range of
+     * the format and truncated as JAEC does for SHORT.
+     */
+    private int toInt(float a) {
+        float v = a * this.scale;
+        if (v >= this.scale) {
+            return this.max;
+        } else if (v < -this.scale) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) v << this.shift;
+    }
+}
@@ -0,0 +1,236 @@
+package jaec;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * real-time AEC stage between capture and playback threads. far-end
+ * (reference), microphone and output streams are passed in lock-free
+ * JAEC_Ring of timestamped blocks, so a stalled playback never stalls AEC
+ * (output blocks are dropped when the output ring is full), and a late AEC
+ * never stalls capture (the capture thread drops blocks when the microphone
+ * ring is full).
+ *
+ * far-end signal is aligned to the capture clock by timestamps, not by
+ * array index: the microphone stream defines the sample positions, and a
+ * far-end block is placed at the position of its timestamp relative to the
+ * latest microphone block. a far-end block within 1 ms of the end of the
+ * previous one is taken as contiguous, so the jitter of timestamps does not
+ * cut the stream. far-end blocks must be published no later than the
+ * microphone blocks of the same time (the far-end signal is known before it
+ * is played), positions without far-end signal are silent.
+ *
+ * run() is the loop of the AEC thread, stop() ends it after the microphone
+ * ring is drained. counters are written by the AEC thread only, and can be
+ * read by any thread.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Pipeline implements Runnable {
+
+    private final int spinsBeforePark = 100; // busy waits before parking, when the microphone ring is empty
+    private final long parkNanos = 50000; // 50 micro seconds
+    private final JAEC aec;
+    private final float sampleRate;
+    private final JAEC_Ring farEnd;
+    private final JAEC_Ring microphone;
+    private final JAEC_Ring output;
+    private final short[] aligned; // far-end signal at the positions of the capture clock
+    private final int alignedMask;
+    private final int tolerance; // max gap (in samples) between far-end blocks taken as contiguous
+    private final short[] farBlock; // far-end signal of the current microphone block
+    private final short[] discarded; // output when the output ring is full
+    private long position; // position of the next microphone sample
+    private long farEndNext = Long.MIN_VALUE; // position after the latest far-end block
+    private long farEndHigh = Long.MIN_VALUE; // the highest position of far-end signal so far
+    private volatile boolean running = true;
+    private volatile long processedBlocks;
+    private volatile long droppedOutputBlocks;
+    private volatile long missingFarEndSamples;
+    private volatile long lateFarEndSamples;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param aec : the AEC, only used by the thread of run().
+     * @param sampleRate : sample rate of all streams.
+     * @param blockSize : max number of samples of a block.
+     * @param ringBlocks : number of blocks of every ring, a power of 2.
+     */
+    public JAEC_Pipeline(JAEC aec, float sampleRate, int blockSize, int ringBlocks) {
+        this.aec = aec;
+        this.sampleRate = sampleRate;
+        this.farEnd = new JAEC_Ring(ringBlocks, blockSize);
+        this.microphone = new JAEC_Ring(ringBlocks, blockSize);
+        this.output = new JAEC_Ring(ringBlocks, blockSize);
+        //the whole far-end ring fits in, ahead of the microphone.
+        int capacity = Integer.highestOneBit(2 * ringBlocks * blockSize - 1) << 1;
+        this.aligned = new short[capacity];
+        this.alignedMask = capacity - 1;
+        this.tolerance = Math.max(1, (int) (sampleRate / 1000));
+        this.farBlock = new short[blockSize];
+        this.discarded = new short[blockSize];
+    }
+
+    /**
+     * get the ring of far-end signal, the producer is the thread which
+     * sends signal to the speaker, timestamps are the playing time.
+     *
+     * @return : the far-end ring.
+     */
+    public JAEC_Ring getFarEndRing() {
+        return this.farEnd;
+    }
+
+    /**
+     * get the ring of microphone signal, the producer is the capture thread,
+     * timestamps are the capture time on the same clock as far-end.
+     *
+     * @return : the microphone ring.
+     */
+    public JAEC_Ring getMicrophoneRing() {
+        return this.microphone;
+    }
+
+    /**
+     * get the ring of output, the consumer is the playback (or sending)
+     * thread. a block has the timestamp of its microphone block.
+     *
+     * @return : the output ring.
+     */
+    public JAEC_Ring getOutputRing() {
+        return this.output;
+    }
+
+    /**
+     * the loop of the AEC thread, until stop() is called and the microphone
+     * ring is empty.
+     */
+    @Override
+    public void run() {
+        int idle = 0;
+        while (true) {
+            JAEC_Ring.Block mic = this.microphone.peek();
+            if (mic == null) {
+                if (!this.running) {
+                    //the last blocks published before stop() are checked once more.
+                    if (this.microphone.peek() == null) {
+                        return;
+                    }
+                    continue;
+                }
+                idle++;
+                if (idle < this.spinsBeforePark) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(this.parkNanos);
+                }
+                continue;
+            }
+            idle = 0;
+            this.process(mic);
+            this.microphone.release();
+        }
+    }
+
+    /**
+     * end run() once the blocks already in the microphone ring are
+     * processed.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    private void process(JAEC_Ring.Block mic) {
+        int len = mic.length;
+        this.alignFarEnd(mic.timestamp);
+        for (int i = 0; i < len; i++) {
+            int k = (int) (this.position + i) & this.alignedMask;
+            this.farBlock[i] = this.aligned[k];
+            this.aligned[k] = 0;
+        }
+        long end = this.position + len;
+        if (this.farEndHigh < end) {
+            this.missingFarEndSamples += end - Math.max(this.position, this.farEndHigh);
+        }
+
+        JAEC_Ring.Block out = this.output.claim();
+        this.aec.echoCancel(this.farBlock, mic.samples, out != null ? out.samples : this.discarded, 0, len);
+        if (out != null) {
+            out.length = len;
+            out.timestamp = mic.timestamp;
+            this.output.publish();
+        } else {
+            this.droppedOutputBlocks++;
+        }
+        this.position = end;
+        this.processedBlocks++;
+    }
+
+    /**
+     * move far-end blocks from the ring to their positions, relative to the
+     * microphone block at the current position.
+     *
+     * @param micTimestamp : timestamp of the microphone block.
+     */
+    private void alignFarEnd(long micTimestamp) {
+        JAEC_Ring.Block far;
+        while ((far = this.farEnd.peek()) != null) {
+            long q = this.position + Math.round((far.timestamp - micTimestamp) * (double) this.sampleRate / 1e9);
+            if (this.farEndNext != Long.MIN_VALUE && Math.abs(q - this.farEndNext) <= this.tolerance) {
+                q = this.farEndNext;
+            }
+            if (q + far.length > this.position + this.aligned.length) {
+                //too far ahead, it is kept for the next microphone blocks.
+                return;
+            }
+            for (int i = 0; i < far.length; i++) {
+                if (q + i >= this.position) {
+                    this.aligned[(int) (q + i) & this.alignedMask] = far.samples[i];
+                } else {
+                    this.lateFarEndSamples++;
+                }
+            }
+            this.farEndNext = q + far.length;
+            this.farEndHigh = Math.max(this.farEndHigh, this.farEndNext);
+            this.farEnd.release();
+        }
+    }
+
+    /**
+     * get the number of microphone blocks processed.
+     *
+     * @return : the number of blocks.
+     */
+    public long getProcessedBlocks() {
+        return this.processedBlocks;
+    }
+
+    /**
+     * get the number of output blocks dropped because the output ring was
+     * full (playback stalled).
+     *
+     * @return : the number of blocks.
+     */
+    public long getDroppedOutputBlocks() {
+        return this.droppedOutputBlocks;
+    }
+
+    /**
+     * get the number of microphone samples without far-end signal.
+     *
+     * @return : the number of samples.
+     */
+    public long getMissingFarEndSamples() {
+        return this.missingFarEndSamples;
+    }
+
+    /**
+     * get the number of far-end samples which came after their microphone
+     * samples had been processed, they are discarded.
+     *
+     * @return : the number of samples.
+     */
+    public long getLateFarEndSamples() {
+        return this.lateFarEndSamples;
+    }
+}
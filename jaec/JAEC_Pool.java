@@ -0,0 +1,140 @@
+package jaec;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * pool of JAEC of one engine, tail length and sample rate, for hosts of many
+ * short sessions. a JAEC given back by release() is cleared in place (the
+ * same as a new one, see JAEC.recycle()) and handed out again by acquire(),
+ * instead of allocating every buffer, FFT table and filter of a new JAEC for
+ * every session.
+ *
+ * acquire() and release() can be called by any thread without lock. at most
+ * maxIdle JAEC are kept, the others are released (off-heap state goes back
+ * to the arena). after close(), nothing is kept any more: a JAEC given back
+ * late (e.g. by a worker still running after a timed-out shutdown) is
+ * released at once.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Pool {
+
+    private final int tailLength;
+    private final float sampleRate;
+    private final int engine;
+    private final JAEC_Arena arena; // off-heap state of every JAEC, null for heap
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<JAEC> idle = new ConcurrentLinkedQueue<JAEC>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private volatile boolean closed = false;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param tail_length : tail length of every JAEC.
+     * @param sample_rate : sample rate of every JAEC.
+     * @param engine : engine of every JAEC, see JAEC.ENGINE_TIME_DOMAIN.
+     * @param arena : arena of the off-heap state, null for heap.
+     * @param maxIdle : max number of JAEC kept for reusing.
+     */
+    public JAEC_Pool(int tail_length, float sample_rate, int engine, JAEC_Arena arena, int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("max number of idle AEC must not be negative: " + maxIdle);
+        }
+        this.tailLength = tail_length;
+        this.sampleRate = sample_rate;
+        this.engine = engine;
+        this.arena = arena;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * get an idle JAEC, or a new one if there is none.
+     *
+     * @return : a JAEC in the state of a new one.
+     */
+    public JAEC acquire() {
+        JAEC aec = this.idle.poll();
+        if (aec != null) {
+            this.idleCount.decrementAndGet();
+            this.reused.increment();
+            return aec;
+        }
+        this.created.increment();
+        return new JAEC(this.tailLength, this.sampleRate, this.engine, this.arena);
+    }
+
+    /**
+     * give a JAEC of acquire() back, it must not be used by the caller any
+     * more. it is cleared on the calling thread.
+     *
+     * @param aec : the JAEC.
+     */
+    public void release(JAEC aec) {
+        if (this.closed) {
+            aec.release();
+            return;
+        }
+        if (this.idleCount.incrementAndGet() > this.maxIdle) {
+            this.idleCount.decrementAndGet();
+            aec.release();
+            return;
+        }
+        aec.recycle();
+        this.idle.offer(aec);
+        //close() could have emptied the pool between the check above and the offer.
+        if (this.closed) {
+            this.clear();
+        }
+    }
+
+    /**
+     * release all idle JAEC.
+     */
+    public void clear() {
+        JAEC aec;
+        while ((aec = this.idle.poll()) != null) {
+            this.idleCount.decrementAndGet();
+            aec.release();
+        }
+    }
+
+    /**
+     * release all idle JAEC, and every JAEC given back from now on.
+     */
+    public void close() {
+        this.closed = true;
+        this.clear();
+    }
+
+    /**
+     * get the number of idle JAEC.
+     *
+     * @return : the number of idle JAEC.
+     */
+    public int getIdleCount() {
+        return this.idleCount.get();
+    }
+
+    /**
+     * get the number of JAEC created by acquire().
+     *
+     * @return : the number of created JAEC.
+     */
+    public long getCreated() {
+        return this.created.sum();
+    }
+
+    /**
+     * get the number of JAEC reused by acquire().
+     *
+     * @return : the number of reused JAEC.
+     */
+    public long getReused() {
+        return this.reused.sum();
+    }
+}
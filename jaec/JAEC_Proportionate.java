@@ -0,0 +1,206 @@
+package jaec;
+
+import java.util.Arrays;
+
+/**
+ * proportionate gains and active tap regions of the time domain weights, for
+ * the improved proportionate NLMS (IPNLMS) update:
+ *
+ * g(k) = (1-alpha)/(2L) + (1+alpha)|w(k)|/(2|w|_1 + epsilon)
+ *
+ * w(k) += mju*e*L*g(k)*x(n-k)/|x|^2
+ *
+ * the normalisation x'Gx is replaced by |x|^2/L (exact for a white far-end
+ * signal), so the sum square kept by XFIFOArray is used as in NLMS. with
+ * uniform gains (alpha = -1) the update is the NLMS one.
+ *
+ * REFERENCE "Benesty, J., Gay, S.L., An improved PNLMS algorithm. IEEE
+ * International Conference on Acoustics, Speech, and Signal Processing,
+ * Vol. 2, pp. 1881-1884, 2002".
+ *
+ * echo paths are sparse, most weights stay near zero. the tail is divided
+ * into regions, and regions far below the strongest one (and not next to an
+ * active one) are dormant: echo estimation and weight updating skip them.
+ * every few frames all regions are updated once, so a dormant region can
+ * wake up when the echo path changes.
+ *
+ * gains and regions are calculated once for every frame.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Proportionate {
+
+    private final float alpha = -0.5f; // -1: NLMS, 1: PNLMS
+    private final float epsilon = 1e-6f;
+    private final int regionSize = 64; // taps of a region
+    private final float activeRatio = 1e-4f; // min energy of active region relative to the strongest one, -40 dB
+    private final float weightFloor = 1e-8f; // energy of the strongest region before any echo is learnt
+    private final int probePeriod = 16; // frames between two updates of all regions
+    private int maxTailLength;
+    private int tailLength;
+    private float[] gains; // L*g(k), the average is 1
+    private float[] regionEnergy;
+    private boolean[] regionActive;
+    private int[] runStart; // contiguous runs of active regions
+    private int[] runLength;
+    private int runs;
+    private int activeTaps;
+    private int frameCount;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param tailLength : number of weights.
+     */
+    public JAEC_Proportionate(int tailLength) {
+        this.maxTailLength = tailLength;
+        this.gains = new float[tailLength];
+        int regions = (tailLength + this.regionSize - 1) / this.regionSize;
+        this.regionEnergy = new float[regions];
+        this.regionActive = new boolean[regions];
+        this.runStart = new int[regions];
+        this.runLength = new int[regions];
+        this.setTailLength(tailLength);
+    }
+
+    /**
+     * function to restart: uniform gains and all taps active.
+     */
+    public void reset() {
+        Arrays.fill(this.gains, 1f);
+        this.frameCount = 0;
+        this.activateAll();
+    }
+
+    /**
+     * shorten (or restore) the tail, gains and regions are restarted.
+     *
+     * @param tailLength : the new tail length, not more than the length of
+     * the constructor.
+     */
+    public void setTailLength(int tailLength) {
+        if (tailLength <= 0 || tailLength > this.maxTailLength) {
+            throw new IllegalArgumentException("tail length must be from 1 to " + this.maxTailLength + ": " + tailLength);
+        }
+        this.tailLength = tailLength;
+        this.reset();
+    }
+
+    /**
+     * calculate gains and active regions from the latest weights, once for
+     * every frame.
+     *
+     * @param weights : the weights, the first tail length values are used.
+     */
+    public void update(float[] weights) {
+        int regions = (this.tailLength + this.regionSize - 1) / this.regionSize;
+        float l1 = 0f;
+        float maxEnergy = 0f;
+        for (int r = 0; r < regions; r++) {
+            int end = Math.min(this.tailLength, (r + 1) * this.regionSize);
+            float energy = 0f;
+            for (int k = r * this.regionSize; k < end; k++) {
+                l1 += Math.abs(weights[k]);
+                energy += weights[k] * weights[k];
+            }
+            this.regionEnergy[r] = energy;
+            maxEnergy = Math.max(maxEnergy, energy);
+        }
+
+        //L*g(k), so uniform gains are 1 as NLMS.
+        float uniform = (1 - this.alpha) / 2;
+        float proportionate = (1 + this.alpha) * this.tailLength / (2 * l1 + this.epsilon);
+        for (int k = 0; k < this.tailLength; k++) {
+            this.gains[k] = uniform + proportionate * Math.abs(weights[k]);
+        }
+
+        this.frameCount++;
+        if (maxEnergy < this.weightFloor || this.frameCount % this.probePeriod == 0) {
+            //nothing is learnt yet, or probe for a changed echo path.
+            this.activateAll();
+            return;
+        }
+        float threshold = this.activeRatio * maxEnergy;
+        for (int r = 0; r < regions; r++) {
+            this.regionActive[r] = this.regionEnergy[r] >= threshold
+                    || (r > 0 && this.regionEnergy[r - 1] >= threshold)
+                    || (r < regions - 1 && this.regionEnergy[r + 1] >= threshold);
+        }
+        this.buildRuns(regions);
+    }
+
+    private void activateAll() {
+        this.runs = 1;
+        this.runStart[0] = 0;
+        this.runLength[0] = this.tailLength;
+        this.activeTaps = this.tailLength;
+    }
+
+    private void buildRuns(int regions) {
+        this.runs = 0;
+        this.activeTaps = 0;
+        int r = 0;
+        while (r < regions) {
+            if (!this.regionActive[r]) {
+                r++;
+                continue;
+            }
+            int start = r * this.regionSize;
+            while (r < regions && this.regionActive[r]) {
+                r++;
+            }
+            int end = Math.min(this.tailLength, r * this.regionSize);
+            this.runStart[this.runs] = start;
+            this.runLength[this.runs] = end - start;
+            this.activeTaps += end - start;
+            this.runs++;
+        }
+    }
+
+    /**
+     * get the gains L*g(k) of the weights, their average is 1.
+     *
+     * @return : the gains.
+     */
+    public float[] getGains() {
+        return this.gains;
+    }
+
+    /**
+     * get the number of contiguous runs of active taps.
+     *
+     * @return : the number of runs.
+     */
+    public int getRuns() {
+        return this.runs;
+    }
+
+    /**
+     * get the first tap of a run.
+     *
+     * @param run : index of the run.
+     * @return : index of the first weight.
+     */
+    public int getRunStart(int run) {
+        return this.runStart[run];
+    }
+
+    /**
+     * get the number of taps of a run.
+     *
+     * @param run : index of the run.
+     * @return : number of weights.
+     */
+    public int getRunLength(int run) {
+        return this.runLength[run];
+    }
+
+    /**
+     * get the number of active taps.
+     *
+     * @return : the number of weights in use.
+     */
+    public int getActiveTaps() {
+        return this.activeTaps;
+    }
+}
@@ -0,0 +1,158 @@
+package jaec;
+
+import java.util.Arrays;
+
+/**
+ * polyphase FIR resampler by an integer factor, for running AEC at a lower
+ * internal rate than the stream (e.g. 48000 Hz streams and AEC at 16000 Hz).
+ *
+ * the prototype low-pass filter is a Blackman windowed sinc of
+ * 32*factor+1 taps, cut at 85% of the Nyquist frequency of the low rate,
+ * with a gain of 1 at DC. the decimator only calculates every factor-th
+ * output, and the interpolator splits the filter into factor phases of 33
+ * taps, so the cost is 33 multiply-adds for every sample of the high rate.
+ * both directions delay the signal by getDelay() samples of the high rate.
+ *
+ * an instance keeps the history of one stream, so it is used either for
+ * decimate() or for interpolate(), never for both.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Resampler {
+
+    private final int halfTaps = 16; // taps of every phase on each side of the centre
+    private final float cutoff = 0.85f; // cut-off frequency, relative to the Nyquist frequency of the low rate
+    private final int factor;
+    private final float[] taps; // prototype filter, symmetric
+    private final float[] phases; // interpolator: phase p at p*phaseLength, reversed and scaled by factor
+    private final int phaseLength;
+    private final float[] history; // mirrored, see XFIFOArray
+    private int nextPointer;
+    private int phase; // decimator: index of the next input in the group of factor inputs
+    private JAEC_Kernels kernels = JAEC_Kernels.getInstance();
+
+    /**
+     * the constructor of this class.
+     *
+     * @param factor : ratio of the high rate over the low rate, at least 2.
+     */
+    public JAEC_Resampler(int factor) {
+        if (factor < 2) {
+            throw new IllegalArgumentException("resampling factor must be at least 2: " + factor);
+        }
+        this.factor = factor;
+        int length = 2 * this.halfTaps * factor + 1;
+        this.taps = new float[length];
+        double fc = 0.5 * this.cutoff / factor; // cycles per sample of the high rate
+        double sum = 0;
+        for (int k = 0; k < length; k++) {
+            double t = k - (length - 1) / 2.0;
+            double sinc = t == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * t) / (Math.PI * t);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * k / (length - 1)) + 0.08 * Math.cos(4 * Math.PI * k / (length - 1));
+            this.taps[k] = (float) (sinc * window);
+            sum += this.taps[k];
+        }
+        for (int k = 0; k < length; k++) {
+            this.taps[k] /= sum;
+        }
+
+        //y[m*factor+p] = factor*sum(h[j*factor+p]*x[m-j]), the history is oldest first, so the phases are reversed.
+        this.phaseLength = (length + factor - 1) / factor;
+        this.phases = new float[factor * this.phaseLength];
+        for (int p = 0; p < factor; p++) {
+            for (int i = 0; i < this.phaseLength; i++) {
+                int k = (this.phaseLength - 1 - i) * factor + p;
+                this.phases[p * this.phaseLength + i] = k < length ? factor * this.taps[k] : 0f;
+            }
+        }
+
+        this.history = new float[2 * Math.max(length, this.phaseLength)];
+        this.reset();
+    }
+
+    /**
+     * clear the history.
+     */
+    public void reset() {
+        Arrays.fill(this.history, 0f);
+        this.nextPointer = 0;
+        this.phase = 0;
+    }
+
+    /**
+     * get the ratio of the high rate over the low rate.
+     *
+     * @return : the factor.
+     */
+    public int getFactor() {
+        return this.factor;
+    }
+
+    /**
+     * get the delay of the filter, for both decimation and interpolation.
+     *
+     * @return : delay in samples of the high rate.
+     */
+    public int getDelay() {
+        return this.halfTaps * this.factor;
+    }
+
+    private void push(float a, int length) {
+        this.history[this.nextPointer] = a;
+        this.history[this.nextPointer + length] = a;
+        this.nextPointer++;
+        if (this.nextPointer == length) {
+            this.nextPointer = 0;
+        }
+    }
+
+    /**
+     * decimate a block of the high rate. the first input and every
+     * factor-th input after it give an output, so len inputs give about
+     * len/factor outputs, depending on the inputs of the previous calls.
+     *
+     * @param in : signal of the high rate.
+     * @param inOff : the first index in in.
+     * @param len : number of samples of the high rate.
+     * @param out : signal of the low rate, at least len/factor+1 values from
+     * outOff.
+     * @param outOff : the first index in out.
+     * @return : number of samples written into out.
+     */
+    public int decimate(float[] in, int inOff, int len, float[] out, int outOff) {
+        int length = this.taps.length;
+        int n = 0;
+        for (int i = 0; i < len; i++) {
+            this.push(in[inOff + i], length);
+            if (this.phase == 0) {
+                out[outOff + n] = this.kernels.dot(this.taps, 0, this.history, this.nextPointer, length);
+                n++;
+            }
+            this.phase++;
+            if (this.phase == this.factor) {
+                this.phase = 0;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * interpolate a block of the low rate, every input gives factor
+     * outputs.
+     *
+     * @param in : signal of the low rate.
+     * @param inOff : the first index in in.
+     * @param len : number of samples of the low rate.
+     * @param out : signal of the high rate, len*factor values from outOff.
+     * @param outOff : the first index in out.
+     */
+    public void interpolate(float[] in, int inOff, int len, float[] out, int outOff) {
+        for (int i = 0; i < len; i++) {
+            this.push(in[inOff + i], this.phaseLength);
+            for (int p = 0; p < this.factor; p++) {
+                out[outOff + i * this.factor + p] = this.kernels.dot(this.phases, p * this.phaseLength,
+                        this.history, this.nextPointer, this.phaseLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package jaec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * lock-free ring of audio blocks between one producer thread and one
+ * consumer thread (single-producer/single-consumer), e.g. capture and AEC.
+ *
+ * all blocks are allocated by the constructor and reused, nothing is copied
+ * or allocated when a block is passed. the producer fills the block of
+ * claim() and hands it over by publish(), the consumer reads the block of
+ * peek() and gives it back by release(). neither side ever waits: claim()
+ * returns null when the ring is full and peek() when it is empty, so the
+ * caller decides whether to drop the block or try again later.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Ring {
+
+    /**
+     * a block of 16 bits PCM samples (mono) with the time of its first
+     * sample.
+     */
+    public static final class Block {
+
+        public final short[] samples;
+        public int length; // number of samples in use
+        public long timestamp; // time of the first sample in nanoseconds, on the clock of the device
+
+        Block(int capacity) {
+            this.samples = new short[capacity];
+        }
+    }
+    private final Block[] blocks;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next block to read, written by the consumer only
+    private final AtomicLong tail = new AtomicLong(); // next block to write, written by the producer only
+    private long producerHead; // the latest head seen by the producer
+    private long consumerTail; // the latest tail seen by the consumer
+
+    /**
+     * the constructor of this class.
+     *
+     * @param blocks : number of blocks, a power of 2.
+     * @param blockSize : max number of samples of a block.
+     */
+    public JAEC_Ring(int blocks, int blockSize) {
+        if (blocks <= 0 || (blocks & (blocks - 1)) != 0) {
+            throw new IllegalArgumentException("number of blocks must be a power of 2: " + blocks);
+        }
+        this.blocks = new Block[blocks];
+        for (int i = 0; i < blocks; i++) {
+            this.blocks[i] = new Block(blockSize);
+        }
+        this.mask = blocks - 1;
+    }
+
+    /**
+     * producer: get the next free block to fill.
+     *
+     * @return : the block, or null if the ring is full.
+     */
+    public Block claim() {
+        long t = this.tail.get();
+        if (t - this.producerHead == this.blocks.length) {
+            this.producerHead = this.head.get();
+            if (t - this.producerHead == this.blocks.length) {
+                return null;
+            }
+        }
+        return this.blocks[(int) t & this.mask];
+    }
+
+    /**
+     * producer: hand the block of claim() over to the consumer.
+     */
+    public void publish() {
+        //ordered store: the samples are visible before the new tail.
+        this.tail.lazySet(this.tail.get() + 1);
+    }
+
+    /**
+     * consumer: get the oldest published block.
+     *
+     * @return : the block, or null if the ring is empty.
+     */
+    public Block peek() {
+        long h = this.head.get();
+        if (h == this.consumerTail) {
+            this.consumerTail = this.tail.get();
+            if (h == this.consumerTail) {
+                return null;
+            }
+        }
+        return this.blocks[(int) h & this.mask];
+    }
+
+    /**
+     * consumer: give the block of peek() back to the producer.
+     */
+    public void release() {
+        this.head.lazySet(this.head.get() + 1);
+    }
+
+    /**
+     * get the number of published blocks not released yet, it can be read
+     * by any thread.
+     *
+     * @return : the number of blocks.
+     */
+    public int size() {
+        long h = this.head.get();
+        return (int) (this.tail.get() - h);
+    }
+
+    /**
+     * get the number of blocks.
+     *
+     * @return : the capacity.
+     */
+    public int getCapacity() {
+        return this.blocks.length;
+    }
+}
@@ -0,0 +1,401 @@
+package jaec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * sub-band adaptive filter: a DFT-modulated filterbank (weighted
+ * overlap-add) splits far-end and near-end signals into fftSize/2+1 complex
+ * bands decimated by the hop, every band has a short complex NLMS filter of
+ * about tailLength/hop taps, and the output of all bands is synthesised back
+ * into the time domain.
+ *
+ * both analysis and synthesis use a periodic Hann window of fftSize
+ * samples, and the hop is a quarter of it (4 times oversampled), so the
+ * filterbank reconstructs perfectly (Hann^2 adds up to a constant with this
+ * hop) and the aliasing between bands is low enough for the adaptation. the
+ * output is delayed by getDelay() samples (fftSize-hop).
+ *
+ * bands are independent, so they can be processed in parallel by a
+ * ForkJoinPool (see setParallelism()), one task for every group of bands
+ * and every block, which pays off for very long tails.
+ *
+ * REFERENCE "Crochiere, R.E., A weighted overlap-add method of short-time
+ * Fourier analysis/synthesis. IEEE Transactions on Acoustics, Speech and
+ * Signal Processing, Vol. 28, No. 1, pp. 99-102, 1980".
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Subband {
+
+    /**
+     * regularisation of the far-end power, avoid the division by zero when
+     * far-end signal is silent.
+     */
+    private final float powerFloor = 1e-6f;
+    private final int fftSize = 128;
+    private final int hop = this.fftSize / 4;
+    private final int bands = this.fftSize / 2 + 1;
+    private int blockSize; // number of new samples for every block
+    private int hops; // hops in a block
+    private int maxTaps; // taps of every band for the tail of the constructor
+    private int taps; // taps in use, fewer for a shortened tail
+    private FFT_HalfComplex fft;
+    private float[] window; // analysis and synthesis, the synthesis is scaled by 1/1.5 of Hann^2
+    private float[] x_T; // the latest fftSize far-end samples
+    private float[] d_T; // the latest fftSize near-end samples
+    private float[] overlap_T; // overlap-add of the synthesis
+    private float[][] Xs_HalfComplex_F; // far-end spectrum of every hop of the block
+    private float[][] Ds_HalfComplex_F; // near-end spectrum of every hop of the block
+    private float[][] Es_HalfComplex_F; // output spectrum of every hop of the block
+    private float[] historyRe; // band k at k*2*maxTaps, mirrored (see XFIFOArray), oldest first
+    private float[] historyIm;
+    private float[] weightsRe; // band k at k*maxTaps, in the same order as the history
+    private float[] weightsIm;
+    private float[] checkpointRe; // copy of the weights by checkpoint()
+    private float[] checkpointIm;
+    private int nextPointer; // next index to write in the history of every band
+    private float[] mjus; // learning rate of every band for the block
+    private float[] d_Delayed_T; // near-end signal delayed as the output, [delay, block]
+    private JAEC_Kernels kernels = JAEC_Kernels.getInstance();
+    private ForkJoinPool pool;
+    private BandTask[] tasks;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param blockSize : number of new samples for every block, a multiple of
+     * 32 (the hop).
+     * @param tailLength : the tail length in samples.
+     */
+    public JAEC_Subband(int blockSize, int tailLength) {
+        if (blockSize % this.hop != 0) {
+            throw new IllegalArgumentException("block size must be a multiple of " + this.hop + ": " + blockSize);
+        }
+        this.blockSize = blockSize;
+        this.hops = blockSize / this.hop;
+        this.maxTaps = this.bandTaps(tailLength);
+        this.taps = this.maxTaps;
+        this.fft = new FFT_HalfComplex(this.fftSize);
+
+        this.window = new float[this.fftSize];
+        for (int i = 0; i < this.fftSize; i++) {
+            this.window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / this.fftSize));
+        }
+        this.x_T = new float[this.fftSize];
+        this.d_T = new float[this.fftSize];
+        this.overlap_T = new float[this.fftSize];
+        this.Xs_HalfComplex_F = new float[this.hops][this.fftSize];
+        this.Ds_HalfComplex_F = new float[this.hops][this.fftSize];
+        this.Es_HalfComplex_F = new float[this.hops][this.fftSize];
+        this.historyRe = new float[this.bands * 2 * this.maxTaps];
+        this.historyIm = new float[this.bands * 2 * this.maxTaps];
+        this.weightsRe = new float[this.bands * this.maxTaps];
+        this.weightsIm = new float[this.bands * this.maxTaps];
+        this.mjus = new float[this.bands];
+        this.d_Delayed_T = new float[this.getDelay() + blockSize];
+        this.tasks = new BandTask[]{new BandTask(0, this.bands)};
+    }
+
+    private int bandTaps(int tailLength) {
+        //the analysis window spreads the response by one window.
+        return (tailLength + this.fftSize + this.hop - 1) / this.hop;
+    }
+
+    /**
+     * function to restart the filter, all weights and history are cleared.
+     */
+    public void reset() {
+        this.clearFarEnd();
+        Arrays.fill(this.weightsRe, 0f);
+        Arrays.fill(this.weightsIm, 0f);
+        Arrays.fill(this.d_T, 0f);
+        Arrays.fill(this.overlap_T, 0f);
+        Arrays.fill(this.d_Delayed_T, 0f);
+    }
+
+    /**
+     * clear the far-end history only, weights are kept. it is used when
+     * far-end signal is processed again after a silence.
+     */
+    public void clearFarEnd() {
+        Arrays.fill(this.x_T, 0f);
+        Arrays.fill(this.historyRe, 0f);
+        Arrays.fill(this.historyIm, 0f);
+        this.nextPointer = 0;
+    }
+
+    /**
+     * get the delay of the output, by analysis and synthesis.
+     *
+     * @return : the delay in samples.
+     */
+    public int getDelay() {
+        return this.fftSize - this.hop;
+    }
+
+    /**
+     * get the number of taps of every band.
+     *
+     * @return : taps in use.
+     */
+    public int getTaps() {
+        return this.taps;
+    }
+
+    /**
+     * shorten (or restore) the tail, only the latest taps of every band are
+     * used.
+     *
+     * @param tailLength : the new tail length, not more than the length of
+     * the constructor.
+     */
+    public void setTailLength(int tailLength) {
+        if (tailLength <= 0) {
+            throw new IllegalArgumentException("tail length must be positive: " + tailLength);
+        }
+        this.taps = Math.min(this.bandTaps(tailLength), this.maxTaps);
+    }
+
+    /**
+     * process bands in parallel, the bands are split into one group for
+     * every thread of the pool. the output is the same as without it.
+     *
+     * @param pool : the pool, or null for the calling thread only.
+     */
+    public void setParallelism(ForkJoinPool pool) {
+        this.pool = pool;
+        int groups = pool == null ? 1 : Math.min(pool.getParallelism(), this.bands);
+        this.tasks = new BandTask[groups];
+        for (int g = 0; g < groups; g++) {
+            this.tasks[g] = new BandTask(g * this.bands / groups, (g + 1) * this.bands / groups);
+        }
+    }
+
+    /**
+     * write the weights of the taps in use, for snapshots.
+     *
+     * @param out : the output.
+     */
+    public void writeWeights(DataOutput out) throws IOException {
+        for (int k = 0; k < this.bands; k++) {
+            for (int i = this.maxTaps - this.taps; i < this.maxTaps; i++) {
+                out.writeFloat(this.weightsRe[k * this.maxTaps + i]);
+                out.writeFloat(this.weightsIm[k * this.maxTaps + i]);
+            }
+        }
+    }
+
+    /**
+     * read the weights written by writeWeights(), the tail length must be
+     * the same.
+     *
+     * @param in : the input.
+     */
+    public void readWeights(DataInput in) throws IOException {
+        for (int k = 0; k < this.bands; k++) {
+            for (int i = this.maxTaps - this.taps; i < this.maxTaps; i++) {
+                this.weightsRe[k * this.maxTaps + i] = in.readFloat();
+                this.weightsIm[k * this.maxTaps + i] = in.readFloat();
+            }
+        }
+    }
+
+    /**
+     * keep a copy of the weights of every band in memory, only the first
+     * call allocates it.
+     */
+    public void checkpoint() {
+        if (this.checkpointRe == null) {
+            this.checkpointRe = new float[this.weightsRe.length];
+            this.checkpointIm = new float[this.weightsIm.length];
+        }
+        System.arraycopy(this.weightsRe, 0, this.checkpointRe, 0, this.weightsRe.length);
+        System.arraycopy(this.weightsIm, 0, this.checkpointIm, 0, this.weightsIm.length);
+    }
+
+    /**
+     * restore the weights of checkpoint(), far-end history is not changed
+     * and the synthesis of the diverged weights is cleared.
+     */
+    public void rollback() {
+        System.arraycopy(this.checkpointRe, 0, this.weightsRe, 0, this.weightsRe.length);
+        System.arraycopy(this.checkpointIm, 0, this.weightsIm, 0, this.weightsIm.length);
+        Arrays.fill(this.overlap_T, 0f);
+    }
+
+    /**
+     * echo cancellation of a block, echo estimation and weight updating of
+     * every band.
+     *
+     * @param x : far-end signal, the first block size values are used.
+     * @param d : near-end signal, the first block size values are used.
+     * @param mjus_HalfComplex_F : learning rate of every frequency bin of an
+     * FFT of frameSize (from 0 to frameSize/2), the nearest bin of every
+     * band is used.
+     * @param frameSize : the FFT size of the learning rate.
+     * @param y : output of echo, delayed by getDelay().
+     * @param e : output without echo, delayed by getDelay().
+     */
+    public void process(float[] x, float[] d, float[] mjus_HalfComplex_F, int frameSize, float[] y, float[] e) {
+        //I. analysis of every hop.
+        for (int h = 0; h < this.hops; h++) {
+            this.analyse(this.x_T, x, h * this.hop, this.Xs_HalfComplex_F[h]);
+            this.analyse(this.d_T, d, h * this.hop, this.Ds_HalfComplex_F[h]);
+        }
+        for (int k = 0; k < this.bands; k++) {
+            this.mjus[k] = mjus_HalfComplex_F[k * frameSize / this.fftSize];
+        }
+
+        //II. NLMS of every band, the groups of bands run in parallel.
+        if (this.tasks.length == 1) {
+            this.processBands(0, this.bands);
+        } else {
+            for (int g = 1; g < this.tasks.length; g++) {
+                this.tasks[g].reinitialize();
+                this.pool.execute(this.tasks[g]);
+            }
+            this.processBands(this.tasks[0].from, this.tasks[0].to);
+            for (int g = 1; g < this.tasks.length; g++) {
+                this.tasks[g].join();
+            }
+        }
+        this.nextPointer = (this.nextPointer + this.hops) % this.maxTaps;
+
+        //III. synthesis of every hop.
+        for (int h = 0; h < this.hops; h++) {
+            this.synthesise(this.Es_HalfComplex_F[h], e, h * this.hop);
+        }
+        this.delayNearEnd(d);
+        for (int i = 0; i < this.blockSize; i++) {
+            y[i] = this.d_Delayed_T[i] - e[i];
+        }
+    }
+
+    /**
+     * pass the near-end signal through the filterbank without echo
+     * estimation, for blocks of silent far-end signal. the far-end history
+     * should be cleared by clearFarEnd() before the next process().
+     *
+     * @param d : near-end signal, the first block size values are used.
+     * @param e : output, the near-end signal delayed by getDelay().
+     */
+    public void passNearEnd(float[] d, float[] e) {
+        for (int h = 0; h < this.hops; h++) {
+            this.analyse(this.d_T, d, h * this.hop, this.Ds_HalfComplex_F[h]);
+            this.synthesise(this.Ds_HalfComplex_F[h], e, h * this.hop);
+        }
+        this.delayNearEnd(d);
+    }
+
+    private void delayNearEnd(float[] d) {
+        System.arraycopy(this.d_Delayed_T, this.blockSize, this.d_Delayed_T, 0, this.getDelay());
+        System.arraycopy(d, 0, this.d_Delayed_T, this.getDelay(), this.blockSize);
+    }
+
+    /**
+     * shift a hop of signal into the window, and FFT of the windowed signal.
+     */
+    private void analyse(float[] history, float[] s, int off, float[] S) {
+        System.arraycopy(history, this.hop, history, 0, this.fftSize - this.hop);
+        System.arraycopy(s, off, history, this.fftSize - this.hop, this.hop);
+        for (int i = 0; i < this.fftSize; i++) {
+            S[i] = history[i] * this.window[i];
+        }
+        this.fft.forward(S);
+    }
+
+    /**
+     * inverse FFT of a hop, windowed and added to the overlap, the oldest
+     * hop is complete and written into the output.
+     */
+    private void synthesise(float[] S, float[] s, int off) {
+        this.fft.inverse(S);
+        for (int i = 0; i < this.fftSize; i++) {
+            this.overlap_T[i] += S[i] * this.window[i] / 1.5f;
+        }
+        System.arraycopy(this.overlap_T, 0, s, off, this.hop);
+        System.arraycopy(this.overlap_T, this.hop, this.overlap_T, 0, this.fftSize - this.hop);
+        Arrays.fill(this.overlap_T, this.fftSize - this.hop, this.fftSize, 0f);
+    }
+
+    /**
+     * NLMS of the bands from (inclusive) to (exclusive) for every hop of the
+     * block, only the bands of this range are read and written.
+     */
+    private void processBands(int from, int to) {
+        int skip = this.maxTaps - this.taps;
+        for (int k = from; k < to; k++) {
+            //half complex: Re[0]=a[0], Re[n/2]=a[1], Re[k]=a[2k], Im[k]=a[2k+1].
+            int re = k == this.bands - 1 ? 1 : 2 * k;
+            int im = k == 0 || k == this.bands - 1 ? -1 : 2 * k + 1;
+            int hBase = k * 2 * this.maxTaps;
+            int wBase = k * this.maxTaps + skip;
+            float step = 0.5f * this.mjus[k];
+            int pointer = this.nextPointer;
+            for (int h = 0; h < this.hops; h++) {
+                float[] X = this.Xs_HalfComplex_F[h];
+                float[] D = this.Ds_HalfComplex_F[h];
+                float[] E = this.Es_HalfComplex_F[h];
+                //push the latest far-end value of the band.
+                float xr = X[re];
+                float xi = im < 0 ? 0f : X[im];
+                this.historyRe[hBase + pointer] = xr;
+                this.historyRe[hBase + pointer + this.maxTaps] = xr;
+                this.historyIm[hBase + pointer] = xi;
+                this.historyIm[hBase + pointer + this.maxTaps] = xi;
+                pointer++;
+                if (pointer == this.maxTaps) {
+                    pointer = 0;
+                }
+                int base = hBase + pointer + skip;
+
+                //Y = sum(W*X)
+                float yr = this.kernels.dot(this.weightsRe, wBase, this.historyRe, base, this.taps)
+                        - this.kernels.dot(this.weightsIm, wBase, this.historyIm, base, this.taps);
+                float yi = this.kernels.dot(this.weightsRe, wBase, this.historyIm, base, this.taps)
+                        + this.kernels.dot(this.weightsIm, wBase, this.historyRe, base, this.taps);
+                float er = D[re] - yr;
+                float ei = im < 0 ? 0f : D[im] - yi;
+                E[re] = er;
+                if (im >= 0) {
+                    E[im] = ei;
+                }
+
+                //W += step*E*conj(X)/sum(|X|^2)
+                float power = this.kernels.sumSquares(this.historyRe, base, this.taps)
+                        + this.kernels.sumSquares(this.historyIm, base, this.taps) + this.powerFloor;
+                float gr = step * er / power;
+                float gi = step * ei / power;
+                this.kernels.axpy(gr, this.historyRe, base, this.weightsRe, wBase, this.taps);
+                this.kernels.axpy(gi, this.historyIm, base, this.weightsRe, wBase, this.taps);
+                this.kernels.axpy(gi, this.historyRe, base, this.weightsIm, wBase, this.taps);
+                this.kernels.axpy(-gr, this.historyIm, base, this.weightsIm, wBase, this.taps);
+            }
+        }
+    }
+
+    /**
+     * the bands of one group, reused for every block.
+     */
+    private class BandTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        BandTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            processBands(this.from, this.to);
+        }
+    }
+}
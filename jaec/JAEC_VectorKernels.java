@@ -0,0 +1,187 @@
+package jaec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * kernels of JAEC_Kernels with the Java Vector API, the preferred species of
+ * the CPU is used (8 lanes for AVX2, 16 lanes for AVX-512). this class needs
+ * the module jdk.incubator.vector for both compiling and running, it is only
+ * loaded by JAEC_Kernels.getInstance().
+ *
+ * elementwise kernels use separate multiply and add (no fma), so that they
+ * are equal to the scalar kernels bit by bit.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+class JAEC_VectorKernels extends JAEC_Kernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder(); // order of off-heap segments
+
+    @Override
+    public String getName() {
+        return "vector(" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, aOff + i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, bOff + i);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += a[aOff + i] * b[bOff + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float s, float[] x, int xOff, float[] y, int yOff, int len) {
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i);
+            vy.add(vx.mul(s)).intoArray(y, yOff + i);
+        }
+        for (; i < len; i++) {
+            y[yOff + i] += s * x[xOff + i];
+        }
+    }
+
+    @Override
+    public float dot(ByteBuffer a, int aOff, ByteBuffer b, int bOff, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromByteBuffer(SPECIES, a, (aOff + i) << 2, ORDER);
+            FloatVector vb = FloatVector.fromByteBuffer(SPECIES, b, (bOff + i) << 2, ORDER);
+            acc = va.fma(vb, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += a.getFloat((aOff + i) << 2) * b.getFloat((bOff + i) << 2);
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(float s, ByteBuffer x, int xOff, ByteBuffer y, int yOff, int len) {
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromByteBuffer(SPECIES, x, (xOff + i) << 2, ORDER);
+            FloatVector vy = FloatVector.fromByteBuffer(SPECIES, y, (yOff + i) << 2, ORDER);
+            vy.add(vx.mul(s)).intoByteBuffer(y, (yOff + i) << 2, ORDER);
+        }
+        for (; i < len; i++) {
+            int yi = (yOff + i) << 2;
+            y.putFloat(yi, y.getFloat(yi) + s * x.getFloat((xOff + i) << 2));
+        }
+    }
+
+    @Override
+    public void axpyProduct(float s, float[] g, int gOff, float[] x, int xOff, float[] y, int yOff, int len) {
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector vg = FloatVector.fromArray(SPECIES, g, gOff + i);
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, xOff + i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, yOff + i);
+            vy.add(vg.mul(s).mul(vx)).intoArray(y, yOff + i);
+        }
+        for (; i < len; i++) {
+            y[yOff + i] += s * g[gOff + i] * x[xOff + i];
+        }
+    }
+
+    @Override
+    public float sum(float[] a, int off, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            acc = acc.add(FloatVector.fromArray(SPECIES, a, off + i));
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += a[off + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float sumSquares(float[] a, int off, int len) {
+        FloatVector acc = FloatVector.zero(SPECIES);
+        int upper = SPECIES.loopBound(len);
+        int i = 0;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, off + i);
+            acc = va.fma(va, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            sum += a[off + i] * a[off + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void smoothDifference(float c, float[] p, float g, float[] x, float[] y, int from, int to) {
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector vp = FloatVector.fromArray(SPECIES, p, i);
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            vp.mul(c).add(vx.sub(vy).mul(g)).intoArray(p, i);
+        }
+        for (; i < to; i++) {
+            p[i] = c * p[i] + g * (x[i] - y[i]);
+        }
+    }
+
+    @Override
+    public void smoothProduct(float c, float[] r, float g, float[] x, float[] y, int from, int to) {
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector vr = FloatVector.fromArray(SPECIES, r, i);
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            vr.mul(c).add(vx.mul(g).mul(vy)).intoArray(r, i);
+        }
+        for (; i < to; i++) {
+            r[i] = c * r[i] + g * x[i] * y[i];
+        }
+    }
+
+    @Override
+    public void clippedRatio(float s, float[] x, float[] y, float max, float[] r, int from, int to) {
+        FloatVector vmax = FloatVector.broadcast(SPECIES, max);
+        int upper = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < upper; i += SPECIES.length()) {
+            FloatVector vx = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector vy = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector option = vx.mul(s).div(vy);
+            VectorMask<Float> smaller = option.compare(VectorOperators.LT, vmax);
+            vmax.blend(option, smaller).intoArray(r, i);
+        }
+        for (; i < to; i++) {
+            float option = s * x[i] / y[i];
+            r[i] = (option < max) ? option : max;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package jaec;
+
+/**
+ * AEC of streams at a high sample rate (e.g. 48000 Hz) with a JAEC at a lower
+ * internal rate (16000 Hz by default), where the frame, tail and band-pass
+ * of JAEC are tuned. far-end and microphone signals are decimated by
+ * JAEC_Resampler, echo is cancelled at the internal rate, and the output is
+ * interpolated back. for 48000 Hz it is 1/3 of the taps at 1/3 of the rate,
+ * about 1/9 of the cost of JAEC at the stream rate.
+ *
+ * the upper band of the microphone signal (above the internal Nyquist
+ * frequency) is split off as the microphone less its decimated and
+ * interpolated copy, delayed by the latency of JAEC, and added to the output
+ * again. it is not cancelled, but attenuated by the ERLE of the lower band
+ * (at most 30 dB), so the upper band of echo is suppressed as much as the
+ * lower band, and the upper band of near-end speech is kept while the lower
+ * band is kept. the suppression can be disabled.
+ *
+ * the output is delayed by getLatency() samples of the stream rate.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class JAEC_Wideband {
+
+    private final float SHORT_RANGE = 32768.0f;
+    private final float minHighBandGain = 0.0316f; // -30 dB
+    private final JAEC aec;
+    private final int factor;
+    private final int lowBlock; // samples of the internal rate processed at once
+    private final JAEC_Resampler farDecimator;
+    private final JAEC_Resampler micDecimator;
+    private final JAEC_Resampler outInterpolator;
+    private final JAEC_Resampler micInterpolator; // lower band of microphone, to split off the upper band
+    private final float[] farLow;
+    private final float[] micLow;
+    private final float[] outLow;
+    private final float[] outHigh; // interpolated output, the first carry values are left from the previous block
+    private final float[] micLowHigh; // interpolated lower band of microphone, the same layout as outHigh
+    private int carry;
+    private final float[] micDelayLine; // microphone delayed by the resampling filters
+    private int micPointer;
+    private final float[] highBandDelayLine; // upper band delayed by JAEC
+    private int highBandPointer;
+    private boolean highBandSuppression = true;
+    private float highBandGain = 1f;
+    /**
+     * buffers for the bulk API of SHORT.
+     */
+    private final float[] x_Bulk_Buffer;
+    private final float[] d_Bulk_Buffer;
+    private final float[] e_Bulk_Buffer;
+
+    /**
+     * the constructor of this class with the internal rate of 16000 Hz.
+     *
+     * @param tail_length : tail length of JAEC, counted by the number of
+     * samples of the internal rate.
+     * @param sample_rate : rate of the streams, a multiple of 16000.
+     * @param engine : engine of JAEC.
+     */
+    public JAEC_Wideband(int tail_length, float sample_rate, int engine) {
+        this(tail_length, sample_rate, 16000f, engine);
+    }
+
+    /**
+     * the constructor of this class.
+     *
+     * @param tail_length : tail length of JAEC, counted by the number of
+     * samples of the internal rate.
+     * @param sample_rate : rate of the streams.
+     * @param internal_rate : rate of JAEC, sample_rate must be a multiple
+     * (at least 2) of it.
+     * @param engine : engine of JAEC.
+     */
+    public JAEC_Wideband(int tail_length, float sample_rate, float internal_rate, int engine) {
+        float ratio = sample_rate / internal_rate;
+        if (ratio < 2 || ratio != Math.round(ratio)) {
+            throw new IllegalArgumentException("sample rate must be a multiple of the internal rate: "
+                    + sample_rate + ", " + internal_rate);
+        }
+        this.factor = Math.round(ratio);
+        this.aec = new JAEC(tail_length, internal_rate, engine);
+        this.farDecimator = new JAEC_Resampler(this.factor);
+        this.micDecimator = new JAEC_Resampler(this.factor);
+        this.outInterpolator = new JAEC_Resampler(this.factor);
+        this.micInterpolator = new JAEC_Resampler(this.factor);
+
+        this.lowBlock = this.aec.getLatency();
+        this.farLow = new float[this.lowBlock];
+        this.micLow = new float[this.lowBlock];
+        this.outLow = new float[this.lowBlock];
+        this.outHigh = new float[(this.lowBlock + 1) * this.factor];
+        this.micLowHigh = new float[(this.lowBlock + 1) * this.factor];
+        //decimation and interpolation delay the lower band by both filters.
+        this.micDelayLine = new float[this.farDecimator.getDelay() + this.outInterpolator.getDelay()];
+        this.highBandDelayLine = new float[this.aec.getLatency() * this.factor];
+        this.x_Bulk_Buffer = new float[this.lowBlock * this.factor];
+        this.d_Bulk_Buffer = new float[this.lowBlock * this.factor];
+        this.e_Bulk_Buffer = new float[this.lowBlock * this.factor];
+    }
+
+    /**
+     * get the JAEC at the internal rate, for metrics, delay estimation and
+     * snapshots.
+     *
+     * @return : the JAEC.
+     */
+    public JAEC getAec() {
+        return this.aec;
+    }
+
+    /**
+     * get the latency of the output: both resampling filters and JAEC.
+     *
+     * @return : the latency in samples of the stream rate.
+     */
+    public int getLatency() {
+        return this.micDelayLine.length + this.highBandDelayLine.length;
+    }
+
+    /**
+     * enable or disable the suppression of the upper band by the ERLE of the
+     * lower band (enabled by default).
+     *
+     * @param enabled : false to pass the upper band through unchanged.
+     */
+    public void setHighBandSuppression(boolean enabled) {
+        this.highBandSuppression = enabled;
+    }
+
+    /**
+     * AEC on a block of signals of the stream rate. Nothing is allocated,
+     * output is written into the buffer of caller.
+     *
+     * @param far: the acoustic signal from far-end side.
+     * @param near: the acoustic signal from local microphone, including local
+     * speech and echo.
+     * @param out: adjusted near-end signal without echo.
+     * @param off: the first index of the block in far, near and out.
+     * @param len: the number of samples of the block.
+     */
+    public void echoCancel(short[] far, short[] near, short[] out, int off, int len) {
+        int end = off + len;
+        for (int i = off; i < end; i += this.x_Bulk_Buffer.length) {
+            int n = Math.min(end - i, this.x_Bulk_Buffer.length);
+            for (int j = 0; j < n; j++) {
+                this.x_Bulk_Buffer[j] = far[i + j] / SHORT_RANGE;
+                this.d_Bulk_Buffer[j] = near[i + j] / SHORT_RANGE;
+            }
+            this.echoCancel(this.x_Bulk_Buffer, this.d_Bulk_Buffer, this.e_Bulk_Buffer, 0, n);
+            for (int j = 0; j < n; j++) {
+                float a = this.e_Bulk_Buffer[j] * SHORT_RANGE;
+                out[i + j] = a > Short.MAX_VALUE ? Short.MAX_VALUE : a < Short.MIN_VALUE ? Short.MIN_VALUE : (short) a;
+            }
+        }
+    }
+
+    /**
+     * AEC on a block of normalised signals (-1f to 1f) of the stream rate.
+     * Nothing is allocated, output is written into the buffer of caller.
+     *
+     * @param far: the acoustic signal from far-end side.
+     * @param near: the acoustic signal from local microphone.
+     * @param out: adjusted near-end signal without echo.
+     * @param off: the first index of the block in far, near and out.
+     * @param len: the number of samples of the block.
+     */
+    public void echoCancel(float[] far, float[] near, float[] out, int off, int len) {
+        int end = off + len;
+        int block = this.lowBlock * this.factor;
+        for (int i = off; i < end; i += block) {
+            this.processBlock(far, near, out, i, Math.min(end - i, block));
+        }
+    }
+
+    /**
+     * @param len : at most lowBlock*factor samples, they give at most
+     * lowBlock samples of the internal rate.
+     */
+    private void processBlock(float[] far, float[] near, float[] out, int off, int len) {
+        //I. the lower band at the internal rate, both decimators are in the same phase.
+        int n = this.farDecimator.decimate(far, off, len, this.farLow, 0);
+        this.micDecimator.decimate(near, off, len, this.micLow, 0);
+        this.aec.echoCancel(this.farLow, this.micLow, this.outLow, 0, n);
+        this.outInterpolator.interpolate(this.outLow, 0, n, this.outHigh, this.carry);
+        this.micInterpolator.interpolate(this.micLow, 0, n, this.micLowHigh, this.carry);
+
+        //II. gain of the upper band for this block, ramped from the gain of the previous block.
+        float gain = 1f;
+        if (this.highBandSuppression) {
+            gain = (float) Math.pow(10, -this.aec.getMetrics().getErle() / 20);
+            gain = Math.max(this.minHighBandGain, Math.min(1f, gain));
+        }
+        float step = (gain - this.highBandGain) / len;
+
+        //III. output: interpolated lower band and the delayed upper band.
+        for (int j = 0; j < len; j++) {
+            float d = this.micDelayLine[this.micPointer];
+            this.micDelayLine[this.micPointer] = near[off + j];
+            this.micPointer = this.micPointer + 1 == this.micDelayLine.length ? 0 : this.micPointer + 1;
+            float high = this.highBandDelayLine[this.highBandPointer];
+            this.highBandDelayLine[this.highBandPointer] = d - this.micLowHigh[j];
+            this.highBandPointer = this.highBandPointer + 1 == this.highBandDelayLine.length ? 0 : this.highBandPointer + 1;
+            this.highBandGain += step;
+            out[off + j] = this.outHigh[j] + this.highBandGain * high;
+        }
+        this.highBandGain = gain;
+
+        //interpolated samples ahead of the input are kept for the next block.
+        int available = this.carry + n * this.factor;
+        this.carry = available - len;
+        System.arraycopy(this.outHigh, len, this.outHigh, 0, this.carry);
+        System.arraycopy(this.micLowHigh, len, this.micLowHigh, 0, this.carry);
+    }
+}
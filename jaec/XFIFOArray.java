@@ -1,8 +1,15 @@
 package jaec;
 
+import java.util.Arrays;
+
 /**
  * this class implement a FIFO array with pointer. this can increase the speed of operations.
- * also overlap-save is applied in this implementation. 
+ * also overlap-save is applied in this implementation.
+ *
+ * the array is mirrored: every element is stored twice, at the pointer and at
+ * the pointer plus the length of the FIFO, so the whole FIFO (from the earliest
+ * element to the latest one) is always one contiguous slice of the array,
+ * starting at getOffset(). kernels can run through it without wrapping index.
  * @author Jie Yang (Dublin, Januray, 2013)
  */
 public class XFIFOArray {
@@ -11,10 +18,14 @@ public class XFIFOArray {
     protected int arrayLength;
     // use pointer to remove the cost of massive operation of array copying.
     protected int nextPointer;
-    private int tailLength;
-    private boolean sumSquareInitialized = false;
+    protected int tailLength;
+    protected int maxTailLength;
+    protected int skip; // the oldest elements out of a shortened tail.
+    protected boolean sumSquareInitialized = false;
     //For optimisation purpose: do not need to re-calculate sharing parts between two signal process.
-    private float preSumSquare;
+    protected float preSumSquare;
+    //sum square of the whole FIFO (half frame and tail), updated by add().
+    protected double windowSumSquare;
 
     /**
      * the constructor of the class.
@@ -22,17 +33,78 @@ public class XFIFOArray {
      * @param length : the length of the array.
      */
     public XFIFOArray(int frameSize, int tailLength) {
+        this(frameSize, tailLength, true);
+    }
+
+    /**
+     * the constructor for sub classes keeping the elements elsewhere.
+     *
+     * @param allocate : false if the array is not used.
+     */
+    protected XFIFOArray(int frameSize, int tailLength, boolean allocate) {
         this.tailLength = tailLength;
-        //overlap save 
+        this.maxTailLength = tailLength;
+        this.skip = 0;
+        //overlap save
         this.arrayLength = frameSize/2 + this.tailLength;
-        this.array = new float[this.arrayLength];
+        //mirrored
+        if (allocate) {
+            this.array = new float[2 * this.arrayLength];
+        }
         this.nextPointer = 0;
     }
 
     public void reset() {
         this.sumSquareInitialized = false;
         this.nextPointer = 0;
-        this.array = new float[this.arrayLength];
+        Arrays.fill(this.array, 0f);
+        this.windowSumSquare = 0;
+    }
+
+    /**
+     * shorten (or restore) the tail, the FIFO only covers the latest half
+     * frame and tail elements after that. the sum square is calculated
+     * again.
+     *
+     * @param tailLength : the new tail length, not more than the length of
+     * the constructor.
+     */
+    public void setTailLength(int tailLength) {
+        if (tailLength <= 0 || tailLength > this.maxTailLength) {
+            throw new IllegalArgumentException("tail length must be from 1 to " + this.maxTailLength + ": " + tailLength);
+        }
+        this.tailLength = tailLength;
+        this.skip = this.maxTailLength - tailLength;
+        this.sumSquareInitialized = false;
+        this.updateWindowSumSquare();
+    }
+
+    /**
+     * the sum square of getTailSumSquare() is calculated again by the next
+     * call, it must be called if getTailSumSquare() is not called for every
+     * element of a frame.
+     */
+    public void invalidateTailSumSquare() {
+        this.sumSquareInitialized = false;
+    }
+
+    /**
+     * return the sum square of the whole FIFO (half frame and tail), it is
+     * kept up to date by add() at the cost of one multiply-add.
+     *
+     * @return : the sum square of the FIFO.
+     */
+    public float getWindowSumSquare() {
+        return (float) this.windowSumSquare;
+    }
+
+    protected void updateWindowSumSquare() {
+        double sum = 0;
+        int off = this.nextPointer + this.skip;
+        for (int i = off; i < off + this.getLength(); i++) {
+            sum += this.array[i] * this.array[i];
+        }
+        this.windowSumSquare = sum;
     }
 
     /**
@@ -42,11 +114,17 @@ public class XFIFOArray {
      */
     public void add(float a) {
 
+        //the earliest element of the FIFO is dropped.
+        float b = this.array[this.nextPointer + this.skip];
+        this.windowSumSquare += a * a - b * b;
         this.array[this.nextPointer] = a;
+        this.array[this.nextPointer + this.arrayLength] = a;
         this.nextPointer++;
-        //"if" is more efficient than "%" 
+        //"if" is more efficient than "%"
         if (this.nextPointer == this.arrayLength) {
             this.nextPointer = 0;
+            //once for every round, remove the rounding error of the incremental sum.
+            this.updateWindowSumSquare();
         }
     }
 
@@ -58,11 +136,37 @@ public class XFIFOArray {
      * @return
      */
     public float getElement(int i) {
-        int po = (this.nextPointer + i);
-        if (po >= this.arrayLength) {
-            po = po - this.arrayLength;
-        }
-        return this.array[po];
+        return this.array[this.nextPointer + this.skip + i];
+    }
+
+    /**
+     * return the array behind the FIFO. the FIFO is the slice from getOffset()
+     * (the earliest element) to getOffset()+getLength()-1 (the latest one).
+     * the array must not be modified.
+     *
+     * @return : the mirrored array.
+     */
+    public float[] getBuffer() {
+        return this.array;
+    }
+
+    /**
+     * return the position of the earliest element in getBuffer(), it is
+     * changed by add().
+     *
+     * @return : offset of the FIFO slice.
+     */
+    public int getOffset() {
+        return this.nextPointer + this.skip;
+    }
+
+    /**
+     * return the length of the FIFO (half frame and tail).
+     *
+     * @return : the length of the FIFO.
+     */
+    public int getLength() {
+        return this.arrayLength - this.skip;
     }
 
     /**
@@ -72,19 +176,19 @@ public class XFIFOArray {
      */
     public float getTailSumSquare(int indexInFrame) {
         float sumSquare = 0f;
+        int base = this.nextPointer + this.skip + indexInFrame;
         if (!this.sumSquareInitialized) {
             //for the first time calling, compute sum as below, then apply optimization method to increase speed.
-            for (int i = 0; i < this.tailLength; i++) {
-                float a = this.getElement(this.tailLength + indexInFrame - i);
+            for (int i = base + this.tailLength; i > base; i--) {
+                float a = this.array[i];
                 sumSquare += a * a;
             }
             this.preSumSquare = sumSquare;
             this.sumSquareInitialized = true;
-            System.out.println("###SumSquare Initialized!");
         } else {
             //optimization to avoid massive calculation of sum square.
-            float a0 = this.getElement(indexInFrame);
-            float a1 = this.getElement(this.tailLength + indexInFrame);
+            float a0 = this.array[base];
+            float a1 = this.array[base + this.tailLength];
             sumSquare = this.preSumSquare - a0 * a0 + a1 * a1;
             this.preSumSquare = sumSquare;
         }
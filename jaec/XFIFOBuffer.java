@@ -0,0 +1,127 @@
+package jaec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * XFIFOArray kept in an off-heap segment (see JAEC_Arena) instead of a FLOAT
+ * array. the mirrored layout is the same, the FIFO is the slice of
+ * getSegment() from getOffset() (in FLOAT index), and getBuffer() returns
+ * null.
+ *
+ * @author Jie Yang (Dublin, February, 2013)
+ */
+public class XFIFOBuffer extends XFIFOArray {
+
+    private final ByteBuffer segment;
+    private final int base; // FLOAT index of the mirrored array in the segment
+
+    /**
+     * the constructor of the class.
+     *
+     * @param frameSize : size of a frame, the FIFO keeps half a frame and the
+     * tail.
+     * @param tailLength : the tail length.
+     * @param segment : native-order segment, 2*(frameSize/2+tailLength)
+     * FLOAT values from base are used.
+     * @param base : FLOAT index of the FIFO in the segment.
+     */
+    public XFIFOBuffer(int frameSize, int tailLength, ByteBuffer segment, int base) {
+        super(frameSize, tailLength, false);
+        this.segment = segment;
+        this.base = base;
+    }
+
+    /**
+     * number of FLOAT values needed in the segment.
+     *
+     * @return : the size of the FIFO.
+     */
+    public static int size(int frameSize, int tailLength) {
+        return 2 * (frameSize / 2 + tailLength);
+    }
+
+    private float get(int i) {
+        return this.segment.getFloat((this.base + i) << 2);
+    }
+
+    private void set(int i, float a) {
+        this.segment.putFloat((this.base + i) << 2, a);
+    }
+
+    @Override
+    public void reset() {
+        this.sumSquareInitialized = false;
+        this.nextPointer = 0;
+        for (int i = 0; i < 2 * this.arrayLength; i++) {
+            this.set(i, 0f);
+        }
+        this.windowSumSquare = 0;
+    }
+
+    @Override
+    public void add(float a) {
+        float b = this.get(this.nextPointer + this.skip);
+        this.windowSumSquare += a * a - b * b;
+        this.set(this.nextPointer, a);
+        this.set(this.nextPointer + this.arrayLength, a);
+        this.nextPointer++;
+        if (this.nextPointer == this.arrayLength) {
+            this.nextPointer = 0;
+            this.updateWindowSumSquare();
+        }
+    }
+
+    @Override
+    public float getElement(int i) {
+        return this.get(this.nextPointer + this.skip + i);
+    }
+
+    @Override
+    public float[] getBuffer() {
+        return null;
+    }
+
+    /**
+     * return the segment behind the FIFO, it must not be modified.
+     *
+     * @return : the segment.
+     */
+    public ByteBuffer getSegment() {
+        return this.segment;
+    }
+
+    @Override
+    public int getOffset() {
+        return this.base + this.nextPointer + this.skip;
+    }
+
+    @Override
+    public float getTailSumSquare(int indexInFrame) {
+        int b = this.nextPointer + this.skip + indexInFrame;
+        if (!this.sumSquareInitialized) {
+            float sumSquare = 0f;
+            for (int i = b + this.tailLength; i > b; i--) {
+                float a = this.get(i);
+                sumSquare += a * a;
+            }
+            this.preSumSquare = sumSquare;
+            this.sumSquareInitialized = true;
+        } else {
+            float a0 = this.get(b);
+            float a1 = this.get(b + this.tailLength);
+            this.preSumSquare = this.preSumSquare - a0 * a0 + a1 * a1;
+        }
+        return this.preSumSquare;
+    }
+
+    @Override
+    protected void updateWindowSumSquare() {
+        double sum = 0;
+        int off = this.nextPointer + this.skip;
+        for (int i = off; i < off + this.getLength(); i++) {
+            float a = this.get(i);
+            sum += a * a;
+        }
+        this.windowSumSquare = sum;
+    }
+}
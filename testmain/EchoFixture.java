@@ -0,0 +1,104 @@
+package testmain;
+
+import java.util.Random;
+
+/**
+ * synthetic echo of the test programs: coloured far-end signal, a random
+ * impulse response with an exponential decay as echo path, and microphone
+ * signal as the echo of far-end signal plus a little noise. the signals
+ * depend only on the Random and the order of the calls, so a test with a
+ * seed gets the same signals every run.
+ *
+ * @author Jie Yang
+ */
+public final class EchoFixture {
+
+    private EchoFixture() {
+    }
+
+    /**
+     * far-end signal as first-order autoregressive gaussian noise.
+     *
+     * @param random : source of the noise.
+     * @param samples : length of the signal.
+     * @param pole : coefficient of the previous sample, 0 for white noise,
+     * 0.8 or 0.9 for a signal that is coloured like speech.
+     * @param gain : standard deviation of the noise.
+     * @return : the signal, clipped to 16 bits.
+     */
+    public static short[] farEnd(Random random, int samples, double pole, double gain) {
+        short[] far = new short[samples];
+        double s = 0;
+        for (int n = 0; n < samples; n++) {
+            s = pole * s + random.nextGaussian() * gain;
+            far[n] = (short) Math.max(-32768, Math.min(32767, s));
+        }
+        return far;
+    }
+
+    /**
+     * @param random : source of the coefficients.
+     * @param length : number of coefficients.
+     * @param decay : coefficients decay as exp(-k / decay).
+     * @param gain : standard deviation of the first coefficient.
+     * @return : random impulse response with an exponential decay.
+     */
+    public static float[] path(Random random, int length, double decay, double gain) {
+        float[] h = new float[length];
+        for (int k = 0; k < length; k++) {
+            h[k] = (float) (random.nextGaussian() * Math.exp(-k / decay) * gain);
+        }
+        return h;
+    }
+
+    /**
+     * microphone signal of the echo of far-end signal through a path.
+     *
+     * @param random : source of the noise.
+     * @param far : far-end signal.
+     * @param path : impulse response of the echo path.
+     * @param delay : echo delay in samples, before the path.
+     * @param noise : standard deviation of the noise.
+     * @return : the signal, clipped to 16 bits.
+     */
+    public static short[] microphone(Random random, short[] far, float[] path, int delay, double noise) {
+        short[] near = new short[far.length];
+        for (int n = 0; n < far.length; n++) {
+            double y = random.nextGaussian() * noise;
+            for (int k = 0; k < path.length && n - delay - k >= 0; k++) {
+                y += path[k] * far[n - delay - k];
+            }
+            near[n] = (short) Math.max(-32768, Math.min(32767, y));
+        }
+        return near;
+    }
+
+    /**
+     * @param x : the signal.
+     * @param h : impulse response.
+     * @param delay : delay in samples, before the response.
+     * @return : the signal through the response, as long as the signal.
+     */
+    public static float[] convolve(float[] x, float[] h, int delay) {
+        float[] y = new float[x.length];
+        for (int n = 0; n < x.length; n++) {
+            double sum = 0;
+            for (int k = 0; k < h.length && n - delay - k >= 0; k++) {
+                sum += h[k] * x[n - delay - k];
+            }
+            y[n] = (float) sum;
+        }
+        return y;
+    }
+
+    /**
+     * @return : the sum of two signals of the same length.
+     */
+    public static float[] add(float[] a, float[] b) {
+        float[] c = new float[a.length];
+        for (int n = 0; n < a.length; n++) {
+            c[n] = a[n] + b[n];
+        }
+        return c;
+    }
+}
@@ -0,0 +1,240 @@
+package testmain;
+
+import jaec.JAEC_Pipeline;
+import jaec.JAEC_Ring;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * stand-in of the sound card for JAEC_Pipeline, so the pipeline can be
+ * tested headless: far-end and microphone signals are read from WAV files
+ * (WavReader) and published into the rings of the pipeline at the pace of
+ * the device, and the output ring is written into a WAV file (WavWriter).
+ *
+ * the clock of the device starts at 0 with the first microphone sample, a
+ * block of both streams has the time of its first sample as timestamp.
+ * far-end blocks are published some blocks ahead of the microphone blocks
+ * of the same time, as the playback buffer of a sound card has them before
+ * they are played. a microphone block is dropped if its ring is full, as
+ * capture can not wait. an output block is written at the position of its
+ * timestamp, and the positions of dropped blocks are silent, so the output
+ * file stays aligned to the microphone file.
+ *
+ * play() runs the capture on the calling thread, the AEC and the writer
+ * on threads of their own.
+ *
+ * @author Jie Yang
+ */
+public class FileAudioDevice {
+
+    private final JAEC_Pipeline pipeline;
+    private final int blockSize;
+    private final double speed;
+    private final int leadBlocks;
+    private volatile long capturedBlocks;
+    private volatile long droppedCaptureBlocks;
+    private volatile long writtenBlocks;
+    private volatile long silentSamples;
+
+    /**
+     * the constructor of this class.
+     *
+     * @param pipeline : the pipeline, its thread is started by play().
+     * @param blockSize : samples of every block, not more than the block
+     * size of the pipeline.
+     * @param speed : pace of the device, 1 for real time, 4 for four times
+     * faster.
+     * @param leadBlocks : number of far-end blocks published ahead of the
+     * microphone.
+     */
+    public FileAudioDevice(JAEC_Pipeline pipeline, int blockSize, double speed, int leadBlocks) {
+        if (!(speed > 0) || leadBlocks < 0) {
+            throw new IllegalArgumentException("speed must be positive and lead must not be negative: " + speed + ", " + leadBlocks);
+        }
+        this.pipeline = pipeline;
+        this.blockSize = blockSize;
+        this.speed = speed;
+        this.leadBlocks = leadBlocks;
+    }
+
+    /**
+     * play the far-end file and capture the microphone file until the end
+     * of the microphone file, then wait for the pipeline and the writer.
+     * far-end signal after the end of its file is silent.
+     *
+     * @param farPath : WAV file of far-end signal.
+     * @param micPath : WAV file of microphone signal, with the same sample
+     * rate.
+     * @param outPath : WAV file of the output, it is replaced.
+     */
+    public void play(String farPath, String micPath, String outPath) throws IOException, InterruptedException {
+        try (WavReader far = new WavReader(farPath);
+                WavReader mic = new WavReader(micPath)) {
+            float sampleRate = mic.getSampleRate();
+            if (far.getSampleRate() != sampleRate) {
+                throw new IOException("far-end and microphone files have different sample rates: "
+                        + far.getSampleRate() + ", " + sampleRate);
+            }
+            long blockNanos = Math.round(1e9 * this.blockSize / sampleRate);
+            Writer writer = new Writer(new WavWriter(outPath, sampleRate), sampleRate);
+            Thread aecThread = new Thread(this.pipeline, "aec");
+            Thread writerThread = new Thread(writer, "writer");
+            aecThread.start();
+            writerThread.start();
+            try {
+                this.capture(far, mic, blockNanos);
+            } finally {
+                this.pipeline.stop();
+                aecThread.join();
+                writer.stop();
+                writerThread.join();
+            }
+            if (writer.error != null) {
+                throw writer.error;
+            }
+        }
+    }
+
+    private void capture(WavReader far, WavReader mic, long blockNanos) throws IOException {
+        JAEC_Ring farRing = this.pipeline.getFarEndRing();
+        JAEC_Ring micRing = this.pipeline.getMicrophoneRing();
+        short[] micBlock = new short[this.blockSize];
+        long start = System.nanoTime();
+        for (long b = -this.leadBlocks; true; b++) {
+            long due = start + (long) ((b + this.leadBlocks) * blockNanos / this.speed);
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(100000);
+            }
+            long f = b + this.leadBlocks;
+            if (far.getRemaining() > 0) {
+                JAEC_Ring.Block block;
+                //the far-end signal is never lost, the player waits for the ring.
+                while ((block = farRing.claim()) == null) {
+                    Thread.onSpinWait();
+                }
+                block.length = far.read(block.samples, 0, this.blockSize);
+                block.timestamp = f * blockNanos;
+                farRing.publish();
+            }
+            if (b >= 0) {
+                int len = mic.read(micBlock, 0, this.blockSize);
+                if (len < 0) {
+                    return;
+                }
+                this.capturedBlocks++;
+                JAEC_Ring.Block block = micRing.claim();
+                if (block == null) {
+                    this.droppedCaptureBlocks++;
+                    continue;
+                }
+                System.arraycopy(micBlock, 0, block.samples, 0, len);
+                block.length = len;
+                block.timestamp = b * blockNanos;
+                micRing.publish();
+            }
+        }
+    }
+
+    /**
+     * get the number of microphone blocks read from the file.
+     *
+     * @return : the number of blocks.
+     */
+    public long getCapturedBlocks() {
+        return this.capturedBlocks;
+    }
+
+    /**
+     * get the number of microphone blocks dropped because the microphone
+     * ring was full.
+     *
+     * @return : the number of blocks.
+     */
+    public long getDroppedCaptureBlocks() {
+        return this.droppedCaptureBlocks;
+    }
+
+    /**
+     * get the number of output blocks written into the file.
+     *
+     * @return : the number of blocks.
+     */
+    public long getWrittenBlocks() {
+        return this.writtenBlocks;
+    }
+
+    /**
+     * get the number of silent samples written for blocks without output.
+     *
+     * @return : the number of samples.
+     */
+    public long getSilentSamples() {
+        return this.silentSamples;
+    }
+
+    /**
+     * writer thread, every output block is written at the position of its
+     * timestamp.
+     */
+    private class Writer implements Runnable {
+
+        private final WavWriter file;
+        private final float sampleRate;
+        private final short[] silence;
+        private long position; // next sample of the file
+        private volatile boolean running = true;
+        private volatile IOException error;
+
+        Writer(WavWriter file, float sampleRate) {
+            this.file = file;
+            this.sampleRate = sampleRate;
+            this.silence = new short[blockSize];
+        }
+
+        void stop() {
+            this.running = false;
+        }
+
+        @Override
+        public void run() {
+            JAEC_Ring ring = pipeline.getOutputRing();
+            try {
+                while (true) {
+                    JAEC_Ring.Block block = ring.peek();
+                    if (block == null) {
+                        if (!this.running) {
+                            //the last blocks published before stop() are checked once more.
+                            if (ring.peek() == null) {
+                                return;
+                            }
+                            continue;
+                        }
+                        LockSupport.parkNanos(100000);
+                        continue;
+                    }
+                    long off = Math.round(block.timestamp * (double) this.sampleRate / 1e9);
+                    while (this.position < off) {
+                        int n = (int) Math.min(this.silence.length, off - this.position);
+                        this.file.write(this.silence, 0, n);
+                        this.position += n;
+                        silentSamples += n;
+                    }
+                    this.file.write(block.samples, 0, block.length);
+                    this.position += block.length;
+                    ring.release();
+                    writtenBlocks++;
+                }
+            } catch (IOException ex) {
+                this.error = ex;
+            } finally {
+                try {
+                    this.file.close();
+                } catch (IOException ex) {
+                    if (this.error == null) {
+                        this.error = ex;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package testmain;
+
+import jaec.JAEC;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * allocation regression test: once AEC is warmed up, echoCancel must not
+ * allocate anything for all engines and for both per-sample and bulk API
+ * (and with the biquad pre-filter), neither reset(), checkpoint() (after the
+ * first one) and rollback().
+ * the bytes allocated by the current thread are read from
+ * com.sun.management.ThreadMXBean, the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassAllocation {
+
+    public static void main(String[] args) {
+
+        int samples = 16000 * 80;
+        //long enough for C2 to compile the kernels, vector kernels box their vectors before that.
+        int warmUp = 16000 * 60;
+        int block = 320; //20ms at 16kHz, not a multiple of the half frame.
+
+        //synthetic far-end and microphone (far-end with an echo delay of 300 samples).
+        Random random = new Random(1);
+        short[] far = new short[samples];
+        short[] near = new short[samples];
+        for (int n = 0; n < samples; n++) {
+            far[n] = (short) (random.nextGaussian() * 2000);
+            if (n >= 300) {
+                near[n] = (short) (far[n - 300] / 2 + random.nextGaussian() * 30);
+            }
+        }
+        short[] out = new short[samples];
+
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        boolean failed = false;
+
+        int[] engines = {JAEC.ENGINE_TIME_DOMAIN, JAEC.ENGINE_BLOCK_FREQUENCY, JAEC.ENGINE_PROPORTIONATE,
+            JAEC.ENGINE_FIXED_POINT, JAEC.ENGINE_SUBBAND};
+        for (int engine : engines) {
+            for (int bulk = 0; bulk < 2; bulk++) {
+                JAEC fm = new JAEC(2000, 16000f, engine);
+                //warm up
+                run(fm, far, near, out, 0, warmUp, bulk == 1, block);
+
+                long start = threadBean.getThreadAllocatedBytes(threadId);
+                run(fm, far, near, out, warmUp, samples - warmUp, bulk == 1, block);
+                long allocated = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+                System.out.println("engine:" + engine + (bulk == 1 ? " bulk" : " per-sample")
+                        + " allocated " + allocated + " bytes for " + (samples - warmUp) + " samples");
+                if (allocated != 0) {
+                    failed = true;
+                }
+            }
+            JAEC fm = new JAEC(2000, 16000f, engine);
+            run(fm, far, near, out, 0, 16000, true, block);
+            //the first checkpoint allocates its copy.
+            fm.checkpoint();
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            fm.checkpoint();
+            fm.rollback();
+            fm.reset();
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - start;
+            System.out.println("engine:" + engine + " checkpoint, rollback and reset allocated " + allocated + " bytes");
+            if (allocated != 0) {
+                failed = true;
+            }
+        }
+
+        JAEC biquad = new JAEC(2000, 16000f);
+        biquad.setPreFilter(JAEC.PRE_FILTER_BIQUAD);
+        run(biquad, far, near, out, 0, warmUp, true, block);
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        run(biquad, far, near, out, warmUp, samples - warmUp, true, block);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - start;
+        System.out.println("biquad pre-filter allocated " + allocated + " bytes for " + (samples - warmUp) + " samples");
+        if (allocated != 0) {
+            failed = true;
+        }
+
+        if (failed) {
+            System.out.println("FAILED: AEC allocates after warm-up.");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static void run(JAEC fm, short[] far, short[] near, short[] out, int off, int len, boolean bulk, int block) {
+        if (bulk) {
+            for (int n = off; n < off + len; n += block) {
+                fm.echoCancel(far, near, out, n, Math.min(block, off + len - n));
+            }
+        } else {
+            for (int n = off; n < off + len; n++) {
+                out[n] = fm.echoCancel(far[n], near[n]);
+            }
+        }
+    }
+}
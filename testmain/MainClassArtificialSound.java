@@ -44,6 +44,7 @@ public class MainClassArtificialSound {
          */
         int filter_length = echo_delay + 10;
         JAEC fm = new JAEC(filter_length, templateAM.getAudioFormat().getSampleRate());
+        System.out.println("INFO: " + fm);
 
         //AEC on audio data and play the data.
         microphoneAM.setLivePlayer();
@@ -0,0 +1,102 @@
+package testmain;
+
+import jaec.JAEC;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * offline AEC of many recorded calls in parallel. every line of the manifest
+ * is a call: far-end WAV, microphone WAV and output WAV separated by tabs or
+ * spaces (lines starting with # are ignored). every call gets its own JAEC
+ * and is streamed by MainClassFileProcess on a ForkJoinPool, and the
+ * throughput of the whole batch is reported.
+ *
+ * arguments: manifest, and optionally workers (default: number of cores),
+ * tail length and engine (0: time domain, 1: block frequency,
+ * 2: proportionate, 3: fixed point, 4: sub-band).
+ *
+ * @author Jie Yang
+ */
+public class MainClassBatchProcess {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.out.println("usage: MainClassBatchProcess manifest [workers] [tail length] [engine]");
+            System.exit(2);
+        }
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final int tailLength = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        final int engine = args.length > 3 ? Integer.parseInt(args[3]) : JAEC.ENGINE_TIME_DOMAIN;
+
+        List<String[]> calls = readManifest(args[0]);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+        long start = System.nanoTime();
+        for (final String[] call : calls) {
+            //every task returns samples and seconds of audio.
+            results.add(pool.submit(() -> {
+                float sampleRate;
+                try (WavReader mic = new WavReader(call[1])) {
+                    sampleRate = mic.getSampleRate();
+                }
+                JAEC aec = new JAEC(tailLength, sampleRate, engine);
+                long samples = MainClassFileProcess.process(call[0], call[1], call[2], tailLength, engine, aec);
+                System.out.println(call[2] + ": " + samples + " samples, " + aec.getMetrics());
+                return new double[]{samples, samples / sampleRate};
+            }));
+        }
+
+        long samples = 0;
+        double audioSeconds = 0;
+        int failed = 0;
+        for (int i = 0; i < calls.size(); i++) {
+            try {
+                double[] result = results.get(i).get();
+                samples += (long) result[0];
+                audioSeconds += result[1];
+            } catch (ExecutionException ex) {
+                failed++;
+                System.out.println("FAILED " + String.join(" ", calls.get(i)) + ": " + ex.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        //more workers than cores do not add any core.
+        int cores = Math.min(workers, Runtime.getRuntime().availableProcessors());
+
+        System.out.println(calls.size() - failed + "/" + calls.size() + " calls, "
+                + (long) audioSeconds + " s of audio in " + String.format("%.2f", seconds) + " s on " + workers + " workers");
+        System.out.println("real-time factor: " + String.format("%.1f", audioSeconds / seconds)
+                + "x, " + (long) (samples / seconds / cores) + " samples/s per core");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static List<String[]> readManifest(String path) throws IOException {
+        List<String[]> calls = new ArrayList<String[]>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            String line;
+            int n = 0;
+            while ((line = reader.readLine()) != null) {
+                n++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] call = line.split("\\s+");
+                if (call.length != 3) {
+                    throw new IOException("line " + n + " of manifest must be: far-end microphone output");
+                }
+                calls.add(call);
+            }
+        }
+        return calls;
+    }
+}
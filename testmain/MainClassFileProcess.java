@@ -0,0 +1,78 @@
+package testmain;
+
+import jaec.JAEC;
+import java.io.IOException;
+
+/**
+ * offline AEC of recorded files: far-end and microphone WAV files are
+ * streamed through the bulk API block by block, and the output is streamed
+ * into a WAV file. memory does not grow with the length of the recordings.
+ *
+ * arguments: far-end WAV, microphone WAV, output WAV, and optionally tail
+ * length and engine (0: time domain, 1: block frequency,
+ * 2: proportionate, 3: fixed point, 4: sub-band).
+ *
+ * @author Jie Yang
+ */
+public class MainClassFileProcess {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: MainClassFileProcess far.wav mic.wav out.wav [tail length] [engine]");
+            System.exit(2);
+        }
+        int tailLength = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+        int engine = args.length > 4 ? Integer.parseInt(args[4]) : JAEC.ENGINE_TIME_DOMAIN;
+
+        long start = System.nanoTime();
+        long samples = process(args[0], args[1], args[2], tailLength, engine, null);
+        long end = System.nanoTime();
+        System.out.println(samples + " samples processed in " + (end - start) / 1000000 + " ms.");
+    }
+
+    /**
+     * process one pair of recordings.
+     *
+     * @param farPath : far-end WAV file.
+     * @param micPath : microphone WAV file, the same sample rate as far-end.
+     * @param outPath : output WAV file.
+     * @param tailLength : tail length of JAEC.
+     * @param engine : engine of JAEC.
+     * @param aec : JAEC to use (it must fit the sample rate), or null for a
+     * new one.
+     * @return : number of samples processed, the length of the shorter file.
+     */
+    public static long process(String farPath, String micPath, String outPath, int tailLength, int engine, JAEC aec) throws IOException {
+        int block = 1024;
+        short[] far = new short[block];
+        short[] mic = new short[block];
+        short[] out = new short[block];
+        long samples = 0;
+        try (WavReader farReader = new WavReader(farPath);
+                WavReader micReader = new WavReader(micPath);
+                WavWriter writer = new WavWriter(outPath, micReader.getSampleRate())) {
+            if (farReader.getSampleRate() != micReader.getSampleRate()) {
+                throw new IOException("sample rates of far-end and microphone are different: "
+                        + farReader.getSampleRate() + ", " + micReader.getSampleRate());
+            }
+            if (aec == null) {
+                aec = new JAEC(tailLength, micReader.getSampleRate(), engine);
+                System.out.println("INFO: " + aec);
+            }
+            while (true) {
+                int n = farReader.read(far, 0, block);
+                if (n <= 0) {
+                    break;
+                }
+                n = micReader.read(mic, 0, n);
+                if (n <= 0) {
+                    break;
+                }
+                aec.echoCancel(far, mic, out, 0, n);
+                writer.write(out, 0, n);
+                samples += n;
+            }
+        }
+        return samples;
+    }
+}
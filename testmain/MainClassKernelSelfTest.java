@@ -0,0 +1,25 @@
+package testmain;
+
+import jaec.JAEC_Kernels;
+
+/**
+ * self test of the kernels selected at startup against the scalar kernels.
+ * run with "java --add-modules jdk.incubator.vector" to test the vector
+ * kernels, the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassKernelSelfTest {
+
+    public static void main(String[] args) {
+        JAEC_Kernels selected = JAEC_Kernels.getInstance();
+        System.out.println("Kernels: " + selected.getName());
+
+        boolean passed = JAEC_Kernels.selfTest(selected, new JAEC_Kernels());
+        if (!passed) {
+            System.out.println("FAILED: " + selected.getName() + " kernels differ from scalar kernels.");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+}
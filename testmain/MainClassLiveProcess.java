@@ -56,6 +56,7 @@ public class MainClassLiveProcess {
 
         int filter_length = echo_delay;
         JAEC fm = new JAEC(filter_length, microphoneAM.getAudioFormat().getSampleRate());
+        System.out.println("INFO: " + fm);
 
         //AEC on audio data and play the data.
         aecAM.setLivePlayer();
@@ -74,7 +75,7 @@ public class MainClassLiveProcess {
             }
             ///**
             if (n % 1000 == 0) {
-                System.out.println(n / 1000 + "k[" + (end - start) / 1000 + " microS][mju:"+fm.mju+", eit:"+fm.eit+"]");
+                System.out.println(n / 1000 + "k[" + (end - start) / 1000 + " microS][mju:"+fm.mju+", eit:"+fm.eit+", ERLE:"+fm.getMetrics().getErle()+"dB]");
             }
             //*/
             //System.out.println(n+"[" + (end - start) / 1000 + " microS][mju:"+fm.mju+"]");
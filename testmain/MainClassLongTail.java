@@ -0,0 +1,86 @@
+package testmain;
+
+import jaec.JAEC;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * test of a very long tail (16000 samples, 1 second) of ENGINE_BLOCK_FREQUENCY
+ * on one core and on a pool of threads: the output must be exactly the
+ * same, and the real time factor and the worst frame time are reported.
+ * the first run of both warms up the JIT, then both are run in turn and the
+ * best run of each is reported. the times are not checked, a pool with more
+ * threads than cores can not be faster. the program exits with 1 on
+ * failure.
+ *
+ * arguments (optional): threads of the pool, default is the number of
+ * cores.
+ *
+ * @author Jie Yang
+ */
+public class MainClassLongTail {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int sampleRate = 16000;
+        int samples = 10 * sampleRate;
+        int tail = 16000;
+        //a hall: echo delay of 100 samples and a response decaying over the whole second.
+        Random random = new Random(1);
+        float[] path = EchoFixture.path(random, 12000, 3000, 0.02);
+        short[] far = EchoFixture.farEnd(random, samples, 0.9, 2000);
+        short[] near = EchoFixture.microphone(random, far, path, 100, 30);
+
+        short[] single = new short[samples];
+        short[] parallel = new short[samples];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        JAEC bestSingle = null;
+        JAEC bestParallel = null;
+        long singleNanos = Long.MAX_VALUE;
+        long parallelNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 4; round++) {
+            JAEC aec = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY);
+            long nanos = process(aec, far, near, single);
+            if (round > 0 && nanos < singleNanos) {
+                singleNanos = nanos;
+                bestSingle = aec;
+            }
+            aec = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY);
+            aec.setParallelism(pool);
+            nanos = process(aec, far, near, parallel);
+            if (round > 0 && nanos < parallelNanos) {
+                parallelNanos = nanos;
+                bestParallel = aec;
+            }
+        }
+        pool.shutdown();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("cores: " + cores + (threads > cores ? ", more threads than cores, the pool can only add overhead" : ""));
+        System.out.println("1 thread: " + report(bestSingle, singleNanos, samples, sampleRate));
+        System.out.println(threads + " threads: " + report(bestParallel, parallelNanos, samples, sampleRate));
+
+        for (int n = 0; n < samples; n++) {
+            if (parallel[n] != single[n]) {
+                System.out.println("parallel output is different at " + n);
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+        }
+        System.out.println("PASSED");
+    }
+
+    private static long process(JAEC aec, short[] far, short[] near, short[] out) {
+        long start = System.nanoTime();
+        for (int n = 0; n < out.length; n += 320) {
+            aec.echoCancel(far, near, out, n, Math.min(320, out.length - n));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String report(JAEC aec, long nanos, int samples, int sampleRate) {
+        double seconds = (double) samples / sampleRate;
+        return "real time factor " + String.format("%.3f", nanos / 1e9 / seconds)
+                + ", max frame " + aec.getMetrics().getMaxFrameNanos() / 1000 + " us"
+                + ", ERLE " + String.format("%.1f", aec.getMetrics().getErle()) + " dB";
+    }
+}
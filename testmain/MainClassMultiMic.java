@@ -0,0 +1,95 @@
+package testmain;
+
+import jaec.JAEC;
+import jaec.JAEC_MultiMic;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * test of JAEC_MultiMic with 4 microphones, each with its own echo path of
+ * the same far-end signal:
+ *
+ * 1. the output of every microphone must be exactly the same as a JAEC of
+ * its own, for the time domain and block frequency engines.
+ *
+ * 2. time of processing and memory allocated by the constructors, of
+ * JAEC_MultiMic and of 4 JAEC.
+ *
+ * the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassMultiMic {
+
+    public static void main(String[] args) {
+        int sampleRate = 16000;
+        int samples = 10 * sampleRate;
+        int microphones = 4;
+        int block = 160;
+        Random random = new Random(1);
+        short[] far = EchoFixture.farEnd(random, samples, 0.8, 2000);
+        short[][] near = new short[microphones][];
+        for (int m = 0; m < microphones; m++) {
+            float[] path = EchoFixture.path(random, 200, 40, 0.3);
+            near[m] = EchoFixture.microphone(random, far, path, 100 + 40 * m, 30);
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        boolean failed = false;
+
+        int[] engines = {JAEC.ENGINE_TIME_DOMAIN, JAEC.ENGINE_BLOCK_FREQUENCY};
+        for (int engine : engines) {
+            //classes and tables loaded by the first AEC are not counted.
+            new JAEC_MultiMic(2000, sampleRate, engine, 2);
+            long start = threadBean.getThreadAllocatedBytes(threadId);
+            JAEC[] single = new JAEC[microphones];
+            for (int m = 0; m < microphones; m++) {
+                single[m] = new JAEC(2000, sampleRate, engine);
+            }
+            long singleBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+            start = threadBean.getThreadAllocatedBytes(threadId);
+            JAEC_MultiMic multi = new JAEC_MultiMic(2000, sampleRate, engine, microphones);
+            long multiBytes = threadBean.getThreadAllocatedBytes(threadId) - start;
+
+            //1. the same output.
+            short[][] outSingle = new short[microphones][samples];
+            short[][] outMulti = new short[microphones][samples];
+            long singleNanos = 0;
+            long multiNanos = 0;
+            for (int n = 0; n < samples; n += block) {
+                long t = System.nanoTime();
+                for (int m = 0; m < microphones; m++) {
+                    single[m].echoCancel(far, near[m], outSingle[m], n, block);
+                }
+                singleNanos += System.nanoTime() - t;
+                t = System.nanoTime();
+                multi.echoCancel(far, near, outMulti, n, block);
+                multiNanos += System.nanoTime() - t;
+            }
+            boolean same = true;
+            for (int m = 0; m < microphones && same; m++) {
+                for (int n = 0; n < samples && same; n++) {
+                    same = outSingle[m][n] == outMulti[m][n];
+                }
+            }
+            System.out.println("engine:" + engine + " output of " + microphones + " microphones "
+                    + (same ? "is the same as separate AEC" : "is different"));
+            System.out.println("engine:" + engine + " time: " + singleNanos / 1000000 + " ms (separate), "
+                    + multiNanos / 1000000 + " ms (shared far-end)");
+            System.out.println("engine:" + engine + " memory: " + singleBytes / 1024 + " KB (separate), "
+                    + multiBytes / 1024 + " KB (shared far-end)");
+            for (int m = 0; m < microphones; m++) {
+                System.out.println("  microphone " + m + ": " + multi.getMetrics(m));
+            }
+            if (!same || multiBytes >= singleBytes) {
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+}
@@ -0,0 +1,175 @@
+package testmain;
+
+import jaec.JAEC_PcmCodec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * test of JAEC_PcmCodec:
+ *
+ * 1. every format (16, 24 and 32 bits, both endianness, mono and stereo) is
+ * decoded the same as ByteBuffer reads every sample, from byte[] and from
+ * heap and direct ByteBuffer, and encoding gives back the same bytes.
+ *
+ * 2. a 24 bits stereo WAV file is read by WavReader.
+ *
+ * 3. speed of decoding 16 bits PCM into SHORT, by the codec and by
+ * ShortAudioFrame for every sample.
+ *
+ * the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassPcmCodec {
+
+    public static void main(String[] args) throws IOException {
+        boolean failed = false;
+        Random random = new Random(1);
+        int frames = 1000;
+
+        //1. every format.
+        int[] formats = {16, 24, 32};
+        for (int bits : formats) {
+            for (int e = 0; e < 2; e++) {
+                boolean bigEndian = e == 1;
+                for (int channels = 1; channels <= 2; channels++) {
+                    JAEC_PcmCodec codec = new JAEC_PcmCodec(bits, bigEndian, channels);
+                    byte[] pcm = new byte[frames * codec.getFrameBytes()];
+                    random.nextBytes(pcm);
+                    ByteBuffer reference = ByteBuffer.wrap(pcm).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                    ByteBuffer direct = ByteBuffer.allocateDirect(pcm.length).put(pcm);
+                    boolean ok = true;
+                    for (int channel = 0; channel < channels; channel++) {
+                        short[] s = new short[frames];
+                        short[] sd = new short[frames];
+                        float[] f = new float[frames];
+                        float[] fd = new float[frames];
+                        codec.decode(pcm, 0, channel, s, 0, frames);
+                        codec.decode(direct, 0, channel, sd, 0, frames);
+                        codec.decode(pcm, 0, channel, f, 0, frames);
+                        codec.decode(direct, 0, channel, fd, 0, frames);
+                        for (int i = 0; i < frames; i++) {
+                            long v = sample(reference, i * codec.getFrameBytes() + channel * bits / 8, bits, bigEndian);
+                            ok &= s[i] == (short) (v >> (bits - 16)) && sd[i] == s[i];
+                            ok &= f[i] == (float) (v / Math.pow(2, bits - 1)) && fd[i] == f[i];
+                        }
+                        //16 bits and FLOAT of 16 and 24 bits are exact, they must give back the same bytes.
+                        byte[] back = new byte[pcm.length];
+                        ByteBuffer backDirect = ByteBuffer.allocateDirect(pcm.length);
+                        if (bits == 16) {
+                            codec.encode(s, 0, back, 0, channel, frames);
+                            codec.encode(sd, 0, backDirect, 0, channel, frames);
+                        } else if (bits == 24) {
+                            codec.encode(f, 0, back, 0, channel, frames);
+                            codec.encode(fd, 0, backDirect, 0, channel, frames);
+                        }
+                        if (bits != 32) {
+                            for (int i = 0; i < frames; i++) {
+                                for (int b = 0; b < bits / 8; b++) {
+                                    int p = i * codec.getFrameBytes() + channel * bits / 8 + b;
+                                    ok &= back[p] == pcm[p] && backDirect.get(p) == pcm[p];
+                                }
+                            }
+                        }
+                    }
+                    //FLOAT out of the range is clipped.
+                    byte[] clipped = new byte[codec.getFrameBytes()];
+                    codec.encode(new float[]{2f}, 0, clipped, 0, 0, 1);
+                    ok &= codec.decodeShort(clipped, 0, 0) == Short.MAX_VALUE;
+                    codec.encode(new float[]{-2f}, 0, clipped, 0, 0, 1);
+                    ok &= codec.decodeShort(clipped, 0, 0) == Short.MIN_VALUE;
+                    System.out.println(bits + " bits " + (bigEndian ? "big" : "little") + "-endian, "
+                            + channels + " channels: " + (ok ? "OK" : "WRONG"));
+                    failed |= !ok;
+                }
+            }
+        }
+
+        //2. 24 bits stereo WAV file.
+        File wav = File.createTempFile("pcm24", ".wav");
+        wav.deleteOnExit();
+        JAEC_PcmCodec codec24 = new JAEC_PcmCodec(24, false, 2);
+        float[] left = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            left[i] = (float) Math.sin(i * 0.05) * 0.5f;
+        }
+        byte[] data = new byte[frames * codec24.getFrameBytes()];
+        codec24.encode(left, 0, data, 0, 0, frames);
+        Files.write(wav.toPath(), wavFile(data, 24, 2, 48000));
+        try (WavReader reader = new WavReader(wav.getPath())) {
+            float[] read = new float[frames];
+            int n = reader.read(read, 0, frames);
+            boolean ok = n == frames && reader.getBits() == 24 && reader.getChannels() == 2;
+            for (int i = 0; i < frames && ok; i++) {
+                ok = Math.abs(read[i] - left[i]) < 1.2e-7f;
+            }
+            System.out.println("24 bits stereo WAV file: " + (ok ? "OK" : "WRONG"));
+            failed |= !ok;
+        }
+
+        //3. speed.
+        int samples = 1 << 20;
+        byte[] pcm = new byte[2 * samples];
+        random.nextBytes(pcm);
+        short[] out = new short[samples];
+        JAEC_PcmCodec codec = new JAEC_PcmCodec(16, false, 1);
+        long codecNanos = Long.MAX_VALUE;
+        long frameNanos = Long.MAX_VALUE;
+        long check = 0;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            codec.decode(pcm, 0, 0, out, 0, samples);
+            codecNanos = Math.min(codecNanos, System.nanoTime() - start);
+            check += out[round];
+            start = System.nanoTime();
+            byte[] frame = new byte[2];
+            for (int i = 0; i < samples; i++) {
+                frame[0] = pcm[2 * i];
+                frame[1] = pcm[2 * i + 1];
+                out[i] = new ShortAudioFrame(frame, false).getShort();
+            }
+            frameNanos = Math.min(frameNanos, System.nanoTime() - start);
+            check += out[round];
+        }
+        System.out.println("16 bits into SHORT: codec " + String.format("%.0f", 2.0 * samples / codecNanos * 1e3) + " MB/s, "
+                + "ShortAudioFrame " + String.format("%.0f", 2.0 * samples / frameNanos * 1e3) + " MB/s (" + check + ")");
+        if (codecNanos * 4 > frameNanos) {
+            failed = true;
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * @return : the sample at p, read by ByteBuffer.
+     */
+    private static long sample(ByteBuffer b, int p, int bits, boolean bigEndian) {
+        if (bits == 16) {
+            return b.getShort(p);
+        } else if (bits == 32) {
+            return b.getInt(p);
+        }
+        int b0 = b.get(p) & 0xFF;
+        int b1 = b.get(p + 1) & 0xFF;
+        int b2 = b.get(p + 2);
+        return bigEndian ? ((b0 << 24) >> 8) | (b1 << 8) | (b2 & 0xFF) : (b2 << 16) | (b1 << 8) | b0;
+    }
+
+    private static byte[] wavFile(byte[] data, int bits, int channels, int sampleRate) {
+        ByteBuffer b = ByteBuffer.allocate(44 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(new byte[]{'R', 'I', 'F', 'F'}).putInt(36 + data.length);
+        b.put(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '}).putInt(16);
+        b.putShort((short) 1).putShort((short) channels).putInt(sampleRate);
+        b.putInt(sampleRate * channels * bits / 8).putShort((short) (channels * bits / 8)).putShort((short) bits);
+        b.put(new byte[]{'d', 'a', 't', 'a'}).putInt(data.length).put(data);
+        return b.array();
+    }
+}
@@ -0,0 +1,234 @@
+package testmain;
+
+import jaec.JAEC;
+import jaec.JAEC_Pipeline;
+import jaec.JAEC_Ring;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * test of JAEC_Pipeline with a simulated sound card: a capture thread
+ * publishes far-end blocks ahead of their microphone blocks with jittered
+ * timestamps, and a playback thread drains the output but stalls for 300 ms
+ * on the way. every output block must be exactly the same as the offline
+ * output at the position of its timestamp, and the AEC must keep processing
+ * (dropping output) during the stall.
+ *
+ * the same signals are then written into WAV files and played through the
+ * pipeline by FileAudioDevice, the output file must be exactly the offline
+ * output. the program exits with 1 on failure.
+ *
+ * with arguments "far.wav mic.wav out.wav [speed]", the files are played
+ * through the pipeline by FileAudioDevice (at real time by default) and the
+ * counters are printed, for load tests without a sound card.
+ *
+ * @author Jie Yang
+ */
+public class MainClassPipeline {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BLOCK = 320;
+    private static final long BLOCK_NANOS = 1000000000L * BLOCK / SAMPLE_RATE;
+    private static final int SPEED = 4; // faster than real time
+    private static final int LEAD = 5; // far-end blocks published ahead of the microphone
+    private static final long JITTER_NANOS = 200000; // 0.2 ms
+    private static final int STALL_BLOCK = 200;
+    private static final long STALL_NANOS = 300000000L;
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length >= 3) {
+            playFiles(args[0], args[1], args[2], args.length > 3 ? Double.parseDouble(args[3]) : 1);
+            return;
+        }
+        int blocks = 10 * SAMPLE_RATE / BLOCK;
+        int samples = blocks * BLOCK;
+        Random random = new Random(1);
+        short[] far = EchoFixture.farEnd(random, samples, 0.9, 2000);
+        float[] path = EchoFixture.path(random, 200, 40, 0.3);
+        short[] near = EchoFixture.microphone(random, far, path, 80, 30);
+
+        short[] reference = new short[samples];
+        JAEC offline = new JAEC(1024, SAMPLE_RATE);
+        for (int n = 0; n < samples; n += BLOCK) {
+            offline.echoCancel(far, near, reference, n, BLOCK);
+        }
+
+        JAEC_Pipeline pipeline = new JAEC_Pipeline(new JAEC(1024, SAMPLE_RATE), SAMPLE_RATE, BLOCK, 16);
+        Thread aecThread = new Thread(pipeline, "aec");
+        Playback playback = new Playback(pipeline.getOutputRing(), reference);
+        Thread playbackThread = new Thread(playback, "playback");
+        aecThread.start();
+        playbackThread.start();
+
+        //capture thread: the virtual clock of the device starts at 0.
+        long droppedCapture = 0;
+        long start = System.nanoTime();
+        JAEC_Ring farRing = pipeline.getFarEndRing();
+        JAEC_Ring micRing = pipeline.getMicrophoneRing();
+        for (int b = -LEAD; b < blocks; b++) {
+            long due = start + (b + LEAD) * BLOCK_NANOS / SPEED;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(100000);
+            }
+            int f = b + LEAD;
+            if (f < blocks) {
+                JAEC_Ring.Block block;
+                while ((block = farRing.claim()) == null) {
+                    Thread.onSpinWait();
+                }
+                System.arraycopy(far, f * BLOCK, block.samples, 0, BLOCK);
+                block.length = BLOCK;
+                block.timestamp = f * BLOCK_NANOS + jitter(random);
+                farRing.publish();
+            }
+            if (b >= 0) {
+                JAEC_Ring.Block block = micRing.claim();
+                if (block == null) {
+                    droppedCapture++;
+                    continue;
+                }
+                System.arraycopy(near, b * BLOCK, block.samples, 0, BLOCK);
+                block.length = BLOCK;
+                block.timestamp = b * BLOCK_NANOS + jitter(random);
+                micRing.publish();
+            }
+        }
+        pipeline.stop();
+        aecThread.join();
+        playback.stop();
+        playbackThread.join();
+
+        System.out.println("processed " + pipeline.getProcessedBlocks() + " blocks, dropped "
+                + pipeline.getDroppedOutputBlocks() + " output blocks and " + droppedCapture + " captured blocks");
+        System.out.println("far-end: " + pipeline.getMissingFarEndSamples() + " missing samples, "
+                + pipeline.getLateFarEndSamples() + " late samples");
+        System.out.println("played " + playback.played + " blocks, " + playback.mismatched + " different from offline");
+        int fileMismatched = playThroughFiles(far, near, reference);
+        System.out.println("WAV files through FileAudioDevice: " + fileMismatched + " samples different from offline");
+        boolean failed = fileMismatched != 0
+                || droppedCapture != 0
+                || pipeline.getProcessedBlocks() != blocks
+                || pipeline.getDroppedOutputBlocks() == 0 // the stall must not stall AEC
+                || playback.played + pipeline.getDroppedOutputBlocks() != blocks
+                || playback.mismatched != 0
+                || pipeline.getLateFarEndSamples() != 0
+                || pipeline.getMissingFarEndSamples() != 0;
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * play WAV files through the pipeline.
+     */
+    private static void playFiles(String farPath, String micPath, String outPath, double speed) throws IOException, InterruptedException {
+        float sampleRate;
+        try (WavReader mic = new WavReader(micPath)) {
+            sampleRate = mic.getSampleRate();
+        }
+        JAEC_Pipeline pipeline = new JAEC_Pipeline(new JAEC(2000, sampleRate), sampleRate, BLOCK, 16);
+        FileAudioDevice device = new FileAudioDevice(pipeline, BLOCK, speed, LEAD);
+        long start = System.nanoTime();
+        device.play(farPath, micPath, outPath);
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("played in " + millis + " ms: captured " + device.getCapturedBlocks() + " blocks, dropped "
+                + device.getDroppedCaptureBlocks() + " captured and " + pipeline.getDroppedOutputBlocks() + " output blocks, "
+                + "wrote " + device.getWrittenBlocks() + " blocks and " + device.getSilentSamples() + " silent samples");
+        System.out.println("far-end: " + pipeline.getMissingFarEndSamples() + " missing samples, "
+                + pipeline.getLateFarEndSamples() + " late samples");
+    }
+
+    /**
+     * write the signals into WAV files and play them through the pipeline
+     * by FileAudioDevice.
+     *
+     * @return : number of samples of the output file different from the
+     * offline output (or missing).
+     */
+    private static int playThroughFiles(short[] far, short[] near, short[] reference) throws IOException, InterruptedException {
+        File farFile = File.createTempFile("far", ".wav");
+        File micFile = File.createTempFile("mic", ".wav");
+        File outFile = File.createTempFile("out", ".wav");
+        try {
+            try (WavWriter farWriter = new WavWriter(farFile.getPath(), SAMPLE_RATE);
+                    WavWriter micWriter = new WavWriter(micFile.getPath(), SAMPLE_RATE)) {
+                farWriter.write(far, 0, far.length);
+                micWriter.write(near, 0, near.length);
+            }
+            JAEC_Pipeline pipeline = new JAEC_Pipeline(new JAEC(1024, SAMPLE_RATE), SAMPLE_RATE, BLOCK, 16);
+            new FileAudioDevice(pipeline, BLOCK, SPEED, LEAD).play(farFile.getPath(), micFile.getPath(), outFile.getPath());
+            short[] out = new short[reference.length];
+            int len;
+            try (WavReader reader = new WavReader(outFile.getPath())) {
+                len = Math.max(0, reader.read(out, 0, out.length));
+            }
+            int mismatched = reference.length - len;
+            for (int n = 0; n < len; n++) {
+                if (out[n] != reference[n]) {
+                    mismatched++;
+                }
+            }
+            return mismatched;
+        } finally {
+            farFile.delete();
+            micFile.delete();
+            outFile.delete();
+        }
+    }
+
+    private static long jitter(Random random) {
+        return (long) ((random.nextDouble() * 2 - 1) * JITTER_NANOS);
+    }
+
+    /**
+     * playback thread, compares every output block with the offline output.
+     */
+    private static class Playback implements Runnable {
+
+        private final JAEC_Ring ring;
+        private final short[] reference;
+        private volatile boolean running = true;
+        private volatile long played;
+        private volatile long mismatched;
+
+        Playback(JAEC_Ring ring, short[] reference) {
+            this.ring = ring;
+            this.reference = reference;
+        }
+
+        void stop() {
+            this.running = false;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                JAEC_Ring.Block block = this.ring.peek();
+                if (block == null) {
+                    if (!this.running) {
+                        return;
+                    }
+                    LockSupport.parkNanos(100000);
+                    continue;
+                }
+                //the position of the block from its timestamp, the jitter is far below a block.
+                int off = (int) Math.round((double) block.timestamp / BLOCK_NANOS) * BLOCK;
+                for (int i = 0; i < block.length; i++) {
+                    if (block.samples[i] != this.reference[off + i]) {
+                        this.mismatched++;
+                        break;
+                    }
+                }
+                this.ring.release();
+                this.played++;
+                if (this.played == STALL_BLOCK) {
+                    LockSupport.parkNanos(STALL_NANOS);
+                }
+            }
+        }
+    }
+}
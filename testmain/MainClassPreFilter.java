@@ -0,0 +1,168 @@
+package testmain;
+
+import jaec.JAEC;
+import jaec.JAEC_BiquadFilter;
+import jaec.JAEC_Filter;
+import java.util.Random;
+
+/**
+ * test of the biquad pre-filter (JAEC_BiquadFilter) against the FFT
+ * band-pass of JAEC_Filter, at 16000 Hz:
+ *
+ * 1. gain of sine waves through the biquad filter: in the band (100-4000
+ * Hz) within 1 dB, at 20 Hz and 7500 Hz below -20 dB.
+ *
+ * 2. a signal split into half frames or blocks of 100 samples, or filtered
+ * sample by sample, must give exactly the same output by the biquad filter.
+ * the FFT filter is compared for the half frames starting at 0 and at 100.
+ *
+ * 3. ERLE of AEC with both pre-filters.
+ *
+ * the speed of both filters is measured by benchmarks.FilterBenchmark
+ * (bandPassInPlace and biquadBandPass), not here.
+ *
+ * the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassPreFilter {
+
+    public static void main(String[] args) {
+        float sampleRate = 16000;
+        int half = 256;
+        boolean failed = false;
+
+        //1. gain of sine waves.
+        int[] frequencies = {20, 50, 100, 1000, 4000, 5000, 7500};
+        for (int f : frequencies) {
+            JAEC_BiquadFilter biquad = new JAEC_BiquadFilter(50, 5000, sampleRate);
+            float[] x = new float[16000];
+            for (int n = 0; n < x.length; n++) {
+                x[n] = (float) Math.sin(2 * Math.PI * f * n / sampleRate);
+            }
+            float[] y = new float[x.length];
+            biquad.bandPass(x, y, x.length);
+            //the second half, after the filter settles.
+            double px = 0;
+            double py = 0;
+            for (int n = x.length / 2; n < x.length; n++) {
+                px += x[n] * x[n];
+                py += y[n] * y[n];
+            }
+            double gain = 10 * Math.log10(py / px);
+            System.out.println(f + " Hz: " + String.format("%.2f", gain) + " dB");
+            if ((f >= 100 && f <= 4000 && Math.abs(gain) > 1) || ((f == 20 || f == 7500) && gain > -20)) {
+                failed = true;
+            }
+        }
+
+        //2. independence of blocks.
+        Random random = new Random(1);
+        int samples = 100 * half;
+        float[] x = new float[samples];
+        for (int n = 0; n < samples; n++) {
+            x[n] = (float) (random.nextGaussian() * 0.1);
+        }
+        float[] byHalfFrame = new float[samples];
+        float[] byBlock = new float[samples];
+        float[] bySample = new float[samples];
+        JAEC_BiquadFilter a = new JAEC_BiquadFilter(50, 5000, sampleRate);
+        JAEC_BiquadFilter b = new JAEC_BiquadFilter(50, 5000, sampleRate);
+        JAEC_BiquadFilter c = new JAEC_BiquadFilter(50, 5000, sampleRate);
+        float[] in = new float[half];
+        float[] out = new float[half];
+        for (int n = 0; n < samples; n += half) {
+            System.arraycopy(x, n, in, 0, half);
+            a.bandPass(in, out, half);
+            System.arraycopy(out, 0, byHalfFrame, n, half);
+        }
+        for (int n = 0; n < samples; n += 100) {
+            int len = Math.min(100, samples - n);
+            System.arraycopy(x, n, in, 0, len);
+            b.bandPass(in, out, len);
+            System.arraycopy(out, 0, byBlock, n, len);
+        }
+        for (int n = 0; n < samples; n++) {
+            bySample[n] = c.bandPass(x[n]);
+        }
+        boolean same = true;
+        for (int n = 0; n < samples && same; n++) {
+            same = byHalfFrame[n] == byBlock[n] && byHalfFrame[n] == bySample[n];
+        }
+        double fftDifference = fftDifference(x, half, sampleRate);
+        System.out.println("biquad filter by half frames, blocks and samples: " + (same ? "the same" : "different"));
+        System.out.println("FFT filter of half frames starting at 0 and at 100: " + String.format("%.1f", fftDifference)
+                + " dB difference");
+        if (!same) {
+            failed = true;
+        }
+
+        //3. ERLE of AEC.
+        int aecSamples = 10 * (int) sampleRate;
+        short[] far = EchoFixture.farEnd(random, aecSamples, 0.8, 2000);
+        short[] near = new short[aecSamples];
+        for (int n = 0; n < aecSamples; n++) {
+            double y = random.nextGaussian() * 30;
+            for (int k = 0; k < 100 && n - 200 - k >= 0; k++) {
+                y += Math.exp(-k / 20.0) * (k % 2 == 0 ? 0.3 : -0.2) * far[n - 200 - k];
+            }
+            near[n] = (short) Math.max(-32768, Math.min(32767, y));
+        }
+        double[] erle = new double[2];
+        int[] preFilters = {JAEC.PRE_FILTER_FFT, JAEC.PRE_FILTER_BIQUAD};
+        for (int p = 0; p < 2; p++) {
+            JAEC aec = new JAEC(2000, sampleRate);
+            aec.setPreFilter(preFilters[p]);
+            short[] e = new short[aecSamples];
+            for (int n = 0; n < aecSamples; n += 320) {
+                aec.echoCancel(far, near, e, n, 320);
+            }
+            double pd = 0;
+            double pe = 0;
+            for (int n = aecSamples - 3 * (int) sampleRate; n < aecSamples; n++) {
+                pd += (double) near[n] * near[n];
+                pe += (double) e[n] * e[n];
+            }
+            erle[p] = 10 * Math.log10(pd / (pe + 1));
+        }
+        System.out.println("ERLE of the last 3s: " + String.format("%.1f", erle[0]) + " dB (FFT), "
+                + String.format("%.1f", erle[1]) + " dB (biquad)");
+        if (erle[1] < erle[0] - 1) {
+            failed = true;
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * the FFT filter of half frames (zero padded to a frame, as JAEC) from
+     * 0 and from 100, the signal of the same samples is compared.
+     *
+     * @return : power of the difference over power of the output, in dB.
+     */
+    private static double fftDifference(float[] x, int half, float sampleRate) {
+        JAEC_Filter filter = new JAEC_Filter(50, 5000, sampleRate, 2 * half);
+        float[] frame = new float[2 * half];
+        float[] y = new float[2 * half];
+        float[][] outputs = new float[2][x.length];
+        int[] starts = {0, 100};
+        for (int o = 0; o < 2; o++) {
+            for (int n = starts[o]; n + half <= x.length; n += half) {
+                System.arraycopy(x, n, frame, 0, half);
+                filter.bandPass(frame, y);
+                System.arraycopy(y, 0, outputs[o], n, half);
+            }
+        }
+        double p = 0;
+        double d = 0;
+        for (int n = half; n < x.length - half; n++) {
+            p += outputs[0][n] * outputs[0][n];
+            d += (outputs[0][n] - outputs[1][n]) * (outputs[0][n] - outputs[1][n]);
+        }
+        return 10 * Math.log10(d / p);
+    }
+}
@@ -0,0 +1,117 @@
+package testmain;
+
+import jaec.JAEC;
+import jaec.JAEC_Pool;
+import java.util.Random;
+
+/**
+ * test of recovery and reusing of AEC:
+ *
+ * 1. after too many errors, AEC with checkpoints rolls back to the latest
+ * checkpoint and keeps cancelling echo, while AEC without them restarts from
+ * zero. ERLE of the second after the restart is compared.
+ *
+ * 2. a JAEC of JAEC_Pool used by a session before must give exactly the
+ * same output as a new one, for every engine.
+ *
+ * the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassRecovery {
+
+    public static void main(String[] args) {
+        int sampleRate = 16000;
+        int samples = 8 * sampleRate;
+        int block = 320;
+        short[][] session1 = signals(new Random(1), samples, 300);
+        short[][] session2 = signals(new Random(2), samples, 120);
+        boolean failed = false;
+
+        //1. rollback after divergence.
+        int divergence = 5 * sampleRate;
+        JAEC restarted = new JAEC(2000, sampleRate);
+        JAEC rolledBack = new JAEC(2000, sampleRate);
+        rolledBack.setCheckpointInterval(50);
+        short[] outRestarted = new short[samples];
+        short[] outRolledBack = new short[samples];
+        for (int n = 0; n < samples; n += block) {
+            if (n == divergence) {
+                //the same as two overflow errors.
+                restarted.errorCount = 2;
+                rolledBack.errorCount = 2;
+            }
+            restarted.echoCancel(session1[0], session1[1], outRestarted, n, block);
+            rolledBack.echoCancel(session1[0], session1[1], outRolledBack, n, block);
+        }
+        double erleRestarted = erle(session1[1], outRestarted, divergence, divergence + sampleRate);
+        double erleRolledBack = erle(session1[1], outRolledBack, divergence, divergence + sampleRate);
+        System.out.println("ERLE of 1s after restarting: " + String.format("%.1f", erleRestarted) + " dB, "
+                + restarted.getMetrics().getResets() + " resets");
+        System.out.println("ERLE of 1s after rolling back: " + String.format("%.1f", erleRolledBack) + " dB, "
+                + rolledBack.getMetrics().getRollbacks() + " rollbacks");
+        if (rolledBack.getMetrics().getRollbacks() != 1 || rolledBack.getMetrics().getResets() != 0
+                || erleRolledBack < erleRestarted + 6) {
+            failed = true;
+        }
+
+        //2. recycled AEC of the pool.
+        int[] engines = {JAEC.ENGINE_TIME_DOMAIN, JAEC.ENGINE_BLOCK_FREQUENCY, JAEC.ENGINE_PROPORTIONATE,
+            JAEC.ENGINE_FIXED_POINT, JAEC.ENGINE_SUBBAND};
+        for (int engine : engines) {
+            JAEC_Pool pool = new JAEC_Pool(2000, sampleRate, engine, null, 4);
+            JAEC aec = pool.acquire();
+            aec.enableDelayEstimation(1000);
+            aec.setCheckpointInterval(50);
+            process(aec, session1, block);
+            pool.release(aec);
+            JAEC reused = pool.acquire();
+            short[] outReused = process(reused, session2, block);
+            short[] outNew = process(new JAEC(2000, sampleRate, engine), session2, block);
+            boolean same = reused == aec && pool.getReused() == 1;
+            for (int n = 0; n < samples && same; n++) {
+                same = outReused[n] == outNew[n];
+            }
+            System.out.println("engine:" + engine + " reused AEC " + (same ? "is the same as a new one" : "is different"));
+            if (!same) {
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * @return : {far-end, microphone} with an echo path of the given delay.
+     */
+    private static short[][] signals(Random random, int samples, int delay) {
+        short[] far = EchoFixture.farEnd(random, samples, 0.8, 2000);
+        float[] path = EchoFixture.path(random, 200, 40, 0.3);
+        return new short[][]{far, EchoFixture.microphone(random, far, path, delay, 30)};
+    }
+
+    private static short[] process(JAEC aec, short[][] signals, int block) {
+        short[] out = new short[signals[0].length];
+        for (int n = 0; n < out.length; n += block) {
+            aec.echoCancel(signals[0], signals[1], out, n, Math.min(block, out.length - n));
+        }
+        return out;
+    }
+
+    /**
+     * @return : ERLE of [from, to) in dB.
+     */
+    private static double erle(short[] near, short[] out, int from, int to) {
+        double p = 0;
+        double e = 0;
+        for (int n = from; n < to; n++) {
+            p += (double) near[n] * near[n];
+            e += (double) out[n] * out[n];
+        }
+        return 10 * Math.log10(p / (e + 1));
+    }
+}
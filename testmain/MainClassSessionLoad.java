@@ -0,0 +1,268 @@
+package testmain;
+
+import jaec.AecSessionManager;
+import jaec.JAEC;
+import jaec.JAEC_Arena;
+import jaec.JAEC_Pool;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * load test of AecSessionManager: real-time sessions are added step by step
+ * until more than 1% of the blocks miss their deadlines, then the capacity
+ * is reported. for every step, the collections and time of GC during the
+ * step and the live heap per session (after a full GC at the end of the
+ * step) are reported: the GC must stay flat as sessions grow (nothing is
+ * allocated per block), and the heap per session must stay constant (the
+ * total heap grows with the sessions, see JAEC_Arena).
+ *
+ * arguments (all optional): workers, sessions added every step, seconds of
+ * every step, engine (0: time domain, 1: block frequency,
+ * 2: proportionate, 3: fixed point, 4: sub-band), off-heap state (1: weights
+ * and far-end history in a JAEC_Arena, time domain only).
+ *
+ * before the load test, segments of an arena must be aligned to 64 bytes, a
+ * segment freed twice or by another arena must be refused, a JAEC given
+ * back to a closed JAEC_Pool must go back to the arena, AEC with off-heap
+ * state must give exactly the output of AEC on the heap
+ * (with another off-heap AEC on the same thread, a rollback and a snapshot),
+ * and sessions with off-heap state are closed while their
+ * blocks are processed, and all their segments (also of the sessions still
+ * open) must be back in the arena after shutdown, otherwise the program exits with 1.
+ *
+ * @author Jie Yang
+ */
+public class MainClassSessionLoad {
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int step = args.length > 1 ? Integer.parseInt(args[1]) : workers * 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int engine = args.length > 3 ? Integer.parseInt(args[3]) : JAEC.ENGINE_BLOCK_FREQUENCY;
+        JAEC_Arena arena = args.length > 4 && Integer.parseInt(args[4]) == 1 ? new JAEC_Arena(16 << 20) : null;
+
+        float sampleRate = 16000f;
+        int block = 320; //20ms
+        //one second of synthetic far-end and microphone (echo delay of 300 samples), played in loop.
+        Random random = new Random(1);
+        short[] far = new short[16000];
+        short[] near = new short[16000];
+        for (int n = 0; n < far.length; n++) {
+            far[n] = (short) (random.nextGaussian() * 2000);
+            if (n >= 300) {
+                near[n] = (short) (far[n - 300] / 2 + random.nextGaussian() * 30);
+            }
+        }
+
+        JAEC_Arena aligned = new JAEC_Arena(1000);
+        for (int floats = 1; floats < 2000; floats += 37) {
+            if (aligned.allocate(floats).alignmentOffset(0, 64) != 0) {
+                System.out.println("segment of " + floats + " floats is not aligned to 64 bytes");
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+        }
+
+        String ownership = ownership();
+        System.out.println("ownership of segments: " + (ownership == null ? "checked" : ownership));
+        if (ownership != null) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+
+        boolean same = offHeapSameAsHeap(far, near, block);
+        System.out.println("off-heap AEC " + (same ? "is the same as AEC on the heap" : "is different from AEC on the heap"));
+        if (!same) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+
+        long leaked = closeDuringProcessing(workers, far, near, block);
+        System.out.println("sessions closed during processing: " + leaked + " bytes of the arena not released");
+        if (leaked != 0) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+
+        long baseHeap = liveHeap();
+        AecSessionManager manager = new AecSessionManager(workers, 2000, sampleRate, engine, block, arena);
+        int sessions = 0;
+        long missed = 0;
+        long blocks = 0;
+        while (true) {
+            long[] gcBefore = gcTotals();
+            for (int i = 0; i < step; i++) {
+                manager.openSession("session-" + sessions, null);
+                sessions++;
+            }
+
+            //every session gets a block for every 20ms.
+            long period = (long) (block * 1e9 / sampleRate);
+            long next = System.nanoTime();
+            int position = 0;
+            for (int t = 0; t < seconds * sampleRate / block; t++) {
+                for (int s = 0; s < sessions; s++) {
+                    manager.submit("session-" + s, far, near, position, block);
+                }
+                position = (position + block) % (far.length - block);
+                next += period;
+                long sleep = next - System.nanoTime();
+                if (sleep > 0) {
+                    Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+                }
+            }
+
+            long stepMissed = manager.getMissedDeadlines() - missed;
+            long stepBlocks = manager.getProcessedBlocks() - blocks;
+            missed += stepMissed;
+            blocks += stepBlocks;
+            long[] gcAfter = gcTotals();
+            long heap = liveHeap();
+            System.out.println(manager.getStatistics() + ", missed in this step:" + stepMissed + "/" + stepBlocks
+                    + ", GC in this step:" + (gcAfter[0] - gcBefore[0]) + " (" + (gcAfter[1] - gcBefore[1]) + "ms)"
+                    + ", live heap:" + heap / (1 << 20) + "MB, per session:" + (heap - baseHeap) / sessions / 1024 + "KB"
+                    + (arena != null ? ", off-heap:" + arena.getUsedBytes() / 1024 + "KB" : ""));
+            //the first step also warms up the JIT, so it never stops the test.
+            if (sessions > step && (stepBlocks == 0 || stepMissed * 100 > stepBlocks)) {
+                break;
+            }
+        }
+        System.out.println("Deadlines missed with " + sessions + " sessions on " + workers + " workers, "
+                + "estimated " + (int) manager.getSessionsPerCore() + " sessions per core.");
+        manager.shutdown(10000);
+        System.exit(0);
+    }
+
+    /**
+     * @return : {collections, milliseconds} of all collectors since the start.
+     */
+    private static long[] gcTotals() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(0, gc.getCollectionCount());
+            totals[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return totals;
+    }
+
+    /**
+     * @return : bytes of the heap in use after full GC, which is not counted
+     * by gcTotals() of the next step.
+     */
+    private static long liveHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return : null if double and foreign free are refused by the arena and
+     * a JAEC given back to a closed pool is released, or what went wrong.
+     */
+    private static String ownership() {
+        JAEC_Arena arena = new JAEC_Arena(1 << 20);
+        ByteBuffer segment = arena.allocate(1000);
+        arena.free(segment);
+        try {
+            arena.free(segment);
+            return "segment freed twice is accepted";
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+        try {
+            arena.free(new JAEC_Arena(1 << 20).allocate(1000));
+            return "segment of another arena is accepted";
+        } catch (IllegalArgumentException ex) {
+            //expected
+        }
+        //a worker still running after a timed-out shutdown gives its JAEC back after the pool is closed.
+        JAEC_Pool pool = new JAEC_Pool(2000, 16000f, JAEC.ENGINE_TIME_DOMAIN, arena, 4);
+        JAEC late = pool.acquire();
+        pool.release(pool.acquire());
+        pool.close();
+        pool.release(late);
+        if (arena.getUsedBytes() != 0 || pool.getIdleCount() != 0) {
+            return arena.getUsedBytes() + " bytes of a closed pool not released";
+        }
+        return null;
+    }
+
+    /**
+     * run AEC on the heap and two AEC with off-heap state in turn on one
+     * thread, the first one must give the same output as the one on the
+     * heap.
+     *
+     * @return : true if the output is the same.
+     */
+    private static boolean offHeapSameAsHeap(short[] far, short[] near, int block) throws IOException {
+        JAEC_Arena arena = new JAEC_Arena(1 << 20);
+        JAEC heap = new JAEC(2000, 16000f, JAEC.ENGINE_TIME_DOMAIN);
+        JAEC offHeap = new JAEC(2000, 16000f, JAEC.ENGINE_TIME_DOMAIN, arena);
+        JAEC other = new JAEC(2000, 16000f, JAEC.ENGINE_TIME_DOMAIN, arena);
+        heap.setCheckpointInterval(20);
+        offHeap.setCheckpointInterval(20);
+        short[] outHeap = new short[far.length];
+        short[] outOffHeap = new short[far.length];
+        short[] outOther = new short[far.length];
+        boolean same = true;
+        for (int round = 0; round < 4; round++) {
+            if (round == 2) {
+                same = heap.rollback() == offHeap.rollback();
+            } else if (round == 3) {
+                ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+                heap.writeSnapshot(snapshot);
+                heap.readSnapshot(new ByteArrayInputStream(snapshot.toByteArray()));
+                offHeap.readSnapshot(new ByteArrayInputStream(snapshot.toByteArray()));
+            }
+            for (int n = 0; n + block <= far.length; n += block) {
+                heap.echoCancel(far, near, outHeap, n, block);
+                offHeap.echoCancel(far, near, outOffHeap, n, block);
+                other.echoCancel(near, far, outOther, n, block);
+            }
+            same = same && Arrays.equals(outHeap, outOffHeap);
+        }
+        offHeap.release();
+        other.release();
+        return same;
+    }
+
+    /**
+     * open sessions, submit blocks and close the sessions at once, while
+     * workers are still processing them.
+     *
+     * @return : bytes of the arena still used after shutdown.
+     */
+    private static long closeDuringProcessing(int workers, short[] far, short[] near, int block) throws InterruptedException {
+        JAEC_Arena arena = new JAEC_Arena(16 << 20);
+        AecSessionManager manager = new AecSessionManager(workers, 2000, 16000f, JAEC.ENGINE_TIME_DOMAIN, block, arena);
+        Random random = new Random(2);
+        int open = 4 * workers;
+        for (int s = 0; s < open; s++) {
+            manager.openSession("stress-" + s, null);
+        }
+        for (int round = 0; round < 2000; round++) {
+            int s = random.nextInt(open);
+            String id = "stress-" + s;
+            for (int b = random.nextInt(4); b > 0; b--) {
+                manager.submit(id, far, near, random.nextInt(far.length - block), block);
+            }
+            //a worker may own the session now, or may be about to give it up.
+            if (random.nextBoolean()) {
+                Thread.yield();
+            }
+            manager.closeSession(id);
+            manager.openSession(id, null);
+        }
+        //the last sessions are left open, shutdown() closes them.
+        manager.shutdown(10000);
+        return arena.getUsedBytes();
+    }
+}
@@ -0,0 +1,86 @@
+package testmain;
+
+import jaec.JAEC;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * warm start test of snapshots: AEC adapted on one call is saved, restored
+ * into a new JAEC, and the first second of the next call (same echo path)
+ * is compared with a new JAEC without snapshot. a corrupted snapshot must be
+ * refused. the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassSnapshot {
+
+    public static void main(String[] args) throws IOException {
+        int sampleRate = 16000;
+        //the same room for both calls: echo delay of 300 samples and a decaying response.
+        Random random = new Random(1);
+        float[] path = EchoFixture.path(random, 200, 40, 0.3);
+        short[][] first = call(random, path, 300, 8 * sampleRate);
+        short[][] second = call(random, path, 300, sampleRate);
+        boolean failed = false;
+
+        int[] engines = {JAEC.ENGINE_TIME_DOMAIN, JAEC.ENGINE_BLOCK_FREQUENCY, JAEC.ENGINE_PROPORTIONATE,
+            JAEC.ENGINE_FIXED_POINT, JAEC.ENGINE_SUBBAND};
+        for (int engine : engines) {
+            JAEC adapted = new JAEC(2000, sampleRate, engine);
+            process(adapted, first);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            adapted.writeSnapshot(bytes);
+            byte[] snapshot = bytes.toByteArray();
+
+            JAEC cold = new JAEC(2000, sampleRate, engine);
+            JAEC warm = new JAEC(2000, sampleRate, engine);
+            warm.readSnapshot(new ByteArrayInputStream(snapshot));
+            double coldErle = process(cold, second);
+            double warmErle = process(warm, second);
+            System.out.println("engine:" + engine + " snapshot " + snapshot.length + " bytes, ERLE of the first second: cold "
+                    + String.format("%.1f", coldErle) + " dB, warm " + String.format("%.1f", warmErle) + " dB");
+            if (warmErle < coldErle + 6) {
+                failed = true;
+            }
+
+            snapshot[snapshot.length / 2] ^= 1;
+            try {
+                new JAEC(2000, sampleRate, engine).readSnapshot(new ByteArrayInputStream(snapshot));
+                System.out.println("corrupted snapshot is accepted");
+                failed = true;
+            } catch (IOException ex) {
+                //expected
+            }
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static short[][] call(Random random, float[] path, int delay, int samples) {
+        short[] far = EchoFixture.farEnd(random, samples, 0.9, 2000);
+        return new short[][]{far, EchoFixture.microphone(random, far, path, delay, 30)};
+    }
+
+    /**
+     * @return : ERLE of the whole call in dB.
+     */
+    private static double process(JAEC aec, short[][] call) {
+        short[] out = new short[call[0].length];
+        for (int n = 0; n < out.length; n += 320) {
+            aec.echoCancel(call[0], call[1], out, n, Math.min(320, out.length - n));
+        }
+        double near = 0;
+        double e = 0;
+        for (int n = 0; n < out.length; n++) {
+            near += (double) call[1][n] * call[1][n];
+            e += (double) out[n] * out[n];
+        }
+        return 10 * Math.log10(near / (e + 1));
+    }
+}
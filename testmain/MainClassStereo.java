@@ -0,0 +1,198 @@
+package testmain;
+
+import jaec.JAEC;
+import jaec.JAEC_Decorrelator;
+import java.util.Random;
+
+/**
+ * test of AEC of stereo playback (two far-end signals, two loudspeakers with
+ * their own echo paths to one microphone):
+ *
+ * 1. stereo with independent parts in the channels: AEC of both far-end
+ * signals is compared with AEC of the downmix (L+R)/2, by ERLE of the last
+ * 3 seconds.
+ *
+ * 2. stereo of one talker only (the channels are filtered copies of each
+ * other): the far-end room changes after 6 seconds, and ERLE of the second
+ * after the change is compared with and without JAEC_Decorrelator.
+ *
+ * 3. time of processing for 1, 2 and 4 far-end signals.
+ *
+ * 4. a near-end burst out of range restarts AEC, the output of the sample
+ * of the restart must be the sample of the first far-end signal (as with
+ * one far-end signal), not their joint magnitude.
+ *
+ * the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassStereo {
+
+    public static void main(String[] args) {
+        int sampleRate = 16000;
+        int samples = 10 * sampleRate;
+        int tail = 1024;
+        int block = 160;
+        Random random = new Random(1);
+        float[][] echoPaths = {EchoFixture.path(random, 200, 40, 0.3), EchoFixture.path(random, 200, 60, 0.3)};
+        int[] echoDelays = {60, 120};
+        boolean failed = false;
+
+        //1. stereo with independent parts, against the downmix.
+        float[] talker = source(random, samples);
+        float[][] far = new float[2][];
+        for (int r = 0; r < 2; r++) {
+            float[] independent = source(random, samples);
+            far[r] = EchoFixture.add(EchoFixture.convolve(talker, EchoFixture.path(random, 32, 8, 0.3), 0), independent);
+        }
+        float[] near = microphone(random, far, echoPaths, echoDelays);
+        float[] downmix = new float[samples];
+        for (int n = 0; n < samples; n++) {
+            downmix[n] = 0.5f * (far[0][n] + far[1][n]);
+        }
+        float[] outStereo = new float[samples];
+        float[] outDownmix = new float[samples];
+        JAEC stereo = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY, 2);
+        JAEC mono = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY);
+        for (int n = 0; n < samples; n += block) {
+            stereo.echoCancel(far, near, outStereo, n, block);
+            mono.echoCancel(downmix, near, outDownmix, n, block);
+        }
+        double erleStereo = erle(near, outStereo, samples - 3 * sampleRate, samples);
+        double erleDownmix = erle(near, outDownmix, samples - 3 * sampleRate, samples);
+        System.out.println("ERLE of 2 far-end signals: " + String.format("%.1f", erleStereo) + " dB, "
+                + "of the downmix: " + String.format("%.1f", erleDownmix) + " dB");
+        if (erleStereo < erleDownmix + 6) {
+            failed = true;
+        }
+
+        //2. one talker in the far-end room, which changes after 6 seconds.
+        int change = 6 * sampleRate;
+        float[][] before = {EchoFixture.path(random, 32, 8, 0.3), EchoFixture.path(random, 32, 8, 0.3)};
+        float[][] after = {EchoFixture.path(random, 32, 8, 0.3), EchoFixture.path(random, 32, 8, 0.3)};
+        double[] erleAfterChange = new double[2];
+        for (int d = 0; d < 2; d++) {
+            float[][] talkerFar = new float[2][samples];
+            for (int r = 0; r < 2; r++) {
+                float[] b = EchoFixture.convolve(talker, before[r], 0);
+                float[] a = EchoFixture.convolve(talker, after[r], 0);
+                System.arraycopy(b, 0, talkerFar[r], 0, change);
+                System.arraycopy(a, change, talkerFar[r], change, samples - change);
+            }
+            if (d == 1) {
+                //played by the loudspeakers as decorrelated.
+                new JAEC_Decorrelator(0.5f).process(talkerFar, 0, samples);
+            }
+            float[] talkerNear = microphone(random, talkerFar, echoPaths, echoDelays);
+            float[] out = new float[samples];
+            JAEC aec = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY, 2);
+            for (int n = 0; n < samples; n += block) {
+                aec.echoCancel(talkerFar, talkerNear, out, n, block);
+            }
+            erleAfterChange[d] = erle(talkerNear, out, change, change + sampleRate);
+        }
+        System.out.println("ERLE of 1s after the far-end room changed: " + String.format("%.1f", erleAfterChange[0])
+                + " dB, with decorrelation: " + String.format("%.1f", erleAfterChange[1]) + " dB");
+        if (erleAfterChange[1] < erleAfterChange[0] + 1) {
+            failed = true;
+        }
+
+        //3. time of processing.
+        int[] references = {1, 2, 4};
+        double[] nanosPerSample = new double[references.length];
+        for (int k = 0; k < references.length; k++) {
+            float[][] x = new float[references[k]][];
+            for (int r = 0; r < x.length; r++) {
+                x[r] = source(random, samples);
+            }
+            float[] d = microphone(random, new float[][]{x[0]}, new float[][]{echoPaths[0]}, echoDelays);
+            float[] out = new float[samples];
+            JAEC aec = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY, references[k]);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int n = 0; n < samples; n += block) {
+                    aec.echoCancel(x, d, out, n, block);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            nanosPerSample[k] = (double) best / samples;
+            System.out.println(references[k] + " far-end signals: " + String.format("%.0f", nanosPerSample[k]) + " ns/sample");
+        }
+        if (nanosPerSample[2] > 6 * nanosPerSample[0]) {
+            failed = true;
+        }
+
+        //4. restart by a near-end burst out of range, sample by sample to find the sample of the restart.
+        float[] burst = near.clone();
+        for (int n = 5 * sampleRate; n < 5 * sampleRate + 1024; n++) {
+            burst[n] = (float) (4 * Math.sin(2 * Math.PI * 500 * n / sampleRate));
+        }
+        JAEC aec = new JAEC(tail, sampleRate, JAEC.ENGINE_BLOCK_FREQUENCY, 2);
+        float[] out = new float[samples];
+        int restart = -1;
+        for (int n = 0; n < samples; n++) {
+            aec.echoCancel(far, burst, out, n, 1);
+            if (restart < 0 && aec.isJustRestart()) {
+                restart = n;
+            }
+        }
+        if (restart < 0) {
+            System.out.println("AEC is not restarted by the burst");
+            failed = true;
+        } else {
+            System.out.println("output of the restart at " + restart + ": " + out[restart] + ", first far-end signal: " + far[0][restart]
+                    + ", joint magnitude: " + (float) Math.hypot(far[0][restart], far[1][restart]));
+            if (out[restart] != far[0][restart]) {
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * @return : coloured noise with a syllable-like envelope, about -20 dBFS.
+     */
+    private static float[] source(Random random, int samples) {
+        float[] s = new float[samples];
+        double a = 0;
+        double phase = random.nextDouble() * Math.PI;
+        for (int n = 0; n < samples; n++) {
+            a = 0.8 * a + random.nextGaussian() * 0.04;
+            s[n] = (float) (a * (0.6 + 0.4 * Math.sin(phase + n * 2 * Math.PI * 4 / 16000)));
+        }
+        return s;
+    }
+
+    /**
+     * @return : echo of every loudspeaker and a little noise.
+     */
+    private static float[] microphone(Random random, float[][] far, float[][] paths, int[] delays) {
+        float[] d = new float[far[0].length];
+        for (int r = 0; r < far.length; r++) {
+            d = EchoFixture.add(d, EchoFixture.convolve(far[r], paths[r], delays[r]));
+        }
+        for (int n = 0; n < d.length; n++) {
+            d[n] += (float) (random.nextGaussian() * 0.001);
+        }
+        return d;
+    }
+
+    /**
+     * @return : ERLE of [from, to) in dB.
+     */
+    private static double erle(float[] near, float[] out, int from, int to) {
+        double p = 0;
+        double e = 0;
+        for (int n = from; n < to; n++) {
+            p += (double) near[n] * near[n];
+            e += (double) out[n] * out[n];
+        }
+        return 10 * Math.log10(p / (e + 1e-12));
+    }
+}
@@ -0,0 +1,77 @@
+package testmain;
+
+import jaec.JAEC;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * test of ENGINE_SUBBAND: ERLE and time of the time domain NLMS and the
+ * sub-band engine on coloured far-end signal with a tail of 8000 samples,
+ * and the sub-band engine with bands in parallel must give exactly the same
+ * output. the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassSubband {
+
+    public static void main(String[] args) {
+        int samples = 10 * 16000;
+        int tail = 8000;
+        Random random = new Random(1);
+        short[] far = EchoFixture.farEnd(random, samples, 0.9, 2000);
+        float[] path = EchoFixture.path(random, 400, 60, 0.3);
+        short[] near = EchoFixture.microphone(random, far, path, 300, 30);
+
+        short[] timeDomain = new short[samples];
+        short[] subband = new short[samples];
+        short[] parallel = new short[samples];
+        long timeNanos = process(new JAEC(tail, 16000f, JAEC.ENGINE_TIME_DOMAIN), far, near, timeDomain);
+        long subbandNanos = process(new JAEC(tail, 16000f, JAEC.ENGINE_SUBBAND), far, near, subband);
+        JAEC aec = new JAEC(tail, 16000f, JAEC.ENGINE_SUBBAND);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        aec.setParallelism(pool);
+        long parallelNanos = process(aec, far, near, parallel);
+        pool.shutdown();
+
+        double timeErle = erle(near, timeDomain);
+        double subbandErle = erle(near, subband);
+        System.out.println("time domain: ERLE " + String.format("%.1f", timeErle) + " dB, " + timeNanos / 1000000 + " ms");
+        System.out.println("sub-band: ERLE " + String.format("%.1f", subbandErle) + " dB, " + subbandNanos / 1000000 + " ms");
+        System.out.println("sub-band on 4 threads: " + parallelNanos / 1000000 + " ms");
+        boolean failed = subbandErle < timeErle;
+        for (int n = 0; n < samples; n++) {
+            if (parallel[n] != subband[n]) {
+                System.out.println("parallel output is different at " + n);
+                failed = true;
+                break;
+            }
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    private static long process(JAEC aec, short[] far, short[] near, short[] out) {
+        long start = System.nanoTime();
+        for (int n = 0; n < out.length; n += 320) {
+            aec.echoCancel(far, near, out, n, Math.min(320, out.length - n));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return : ERLE of the second half in dB.
+     */
+    private static double erle(short[] near, short[] out) {
+        double p = 0;
+        double e = 0;
+        for (int n = out.length / 2; n < out.length; n++) {
+            p += (double) near[n] * near[n];
+            e += (double) out[n] * out[n];
+        }
+        return 10 * Math.log10(p / (e + 1));
+    }
+}
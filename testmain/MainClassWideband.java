@@ -0,0 +1,92 @@
+package testmain;
+
+import jaec.JAEC;
+import jaec.JAEC_Wideband;
+import java.util.Random;
+
+/**
+ * test of JAEC_Wideband on synthetic 48000 Hz signals: echo of a wideband
+ * far-end signal is cancelled by JAEC at 48000 Hz (tail of 6000 samples) and
+ * by JAEC_Wideband at 16000 Hz (tail of 2000 samples), ERLE and time are
+ * printed (JAEC at 48000 Hz drops everything above its band-pass of 5000 Hz,
+ * which counts as ERLE as well). only ERLE of JAEC_Wideband is checked, the
+ * time of one cold run is no gate. then near-end signal of the upper band
+ * without far-end must pass through JAEC_Wideband, delayed by its latency.
+ * the program exits with 1 on failure.
+ *
+ * @author Jie Yang
+ */
+public class MainClassWideband {
+
+    public static void main(String[] args) {
+        int sampleRate = 48000;
+        int samples = 10 * sampleRate;
+        Random random = new Random(1);
+        //echo delay of 900 samples (19 ms) and a decaying response of 600 samples.
+        float[] path = EchoFixture.path(random, 600, 120, 0.15);
+        short[] far = EchoFixture.farEnd(random, samples, 0, 3000);
+        short[] near = EchoFixture.microphone(random, far, path, 900, 30);
+        boolean failed = false;
+
+        short[] out = new short[samples];
+        JAEC full = new JAEC(6000, sampleRate, JAEC.ENGINE_TIME_DOMAIN);
+        long start = System.nanoTime();
+        for (int n = 0; n < samples; n += 960) {
+            full.echoCancel(far, near, out, n, Math.min(960, samples - n));
+        }
+        long fullNanos = System.nanoTime() - start;
+        double fullErle = erle(near, out, samples / 2, 0);
+
+        JAEC_Wideband wideband = new JAEC_Wideband(2000, sampleRate, JAEC.ENGINE_TIME_DOMAIN);
+        start = System.nanoTime();
+        for (int n = 0; n < samples; n += 960) {
+            wideband.echoCancel(far, near, out, n, Math.min(960, samples - n));
+        }
+        long widebandNanos = System.nanoTime() - start;
+        double widebandErle = erle(near, out, samples / 2, 0);
+        System.out.println("JAEC at 48000 Hz: ERLE " + String.format("%.1f", fullErle) + " dB, " + fullNanos / 1000000 + " ms");
+        System.out.println("JAEC_Wideband at 16000 Hz: ERLE " + String.format("%.1f", widebandErle) + " dB, "
+                + widebandNanos / 1000000 + " ms, latency " + wideband.getLatency() + " samples");
+        if (widebandErle < 20) {
+            failed = true;
+        }
+
+        //near-end signal only in the upper band (a 12000 Hz tone), it must pass through unchanged.
+        wideband = new JAEC_Wideband(2000, sampleRate, JAEC.ENGINE_TIME_DOMAIN);
+        short[] silence = new short[samples];
+        for (int n = 0; n < samples; n++) {
+            near[n] = (short) (3000 * Math.sin(2 * Math.PI * 12000 * n / sampleRate) * (1 + 0.5 * Math.sin(2 * Math.PI * n / sampleRate)));
+        }
+        for (int n = 0; n < samples; n += 960) {
+            wideband.echoCancel(silence, near, out, n, Math.min(960, samples - n));
+        }
+        double distortion = erle(near, out, samples / 2, wideband.getLatency());
+        System.out.println("upper band near-end signal over distortion: " + String.format("%.1f", distortion) + " dB");
+        if (distortion < 30) {
+            failed = true;
+        }
+
+        if (failed) {
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+
+    /**
+     * @param delay : 0 for ERLE (power of near-end over output), or the
+     * latency for the power of near-end over the difference of output and
+     * delayed near-end.
+     * @return : the ratio in dB, from the sample from.
+     */
+    private static double erle(short[] near, short[] out, int from, int delay) {
+        double p = 0;
+        double e = 0;
+        for (int n = from; n < out.length; n++) {
+            p += (double) near[n - delay] * near[n - delay];
+            double d = delay == 0 ? out[n] : out[n] - near[n - delay];
+            e += d * d;
+        }
+        return 10 * Math.log10(p / (e + 1));
+    }
+}
@@ -4,15 +4,19 @@
  */
 package testmain;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import jaec.JAEC_PcmCodec;
 
 /**
+ * a frame of 16 bits PCM, only the first channel is read and written. bytes
+ * are converted by JAEC_PcmCodec without any buffer, blocks of many frames
+ * should be converted by JAEC_PcmCodec directly instead.
  *
  * @author Jie Yang
  */
 public class ShortAudioFrame {
 
+    private static final JAEC_PcmCodec LITTLE_ENDIAN = new JAEC_PcmCodec(16, false, 1);
+    private static final JAEC_PcmCodec BIG_ENDIAN = new JAEC_PcmCodec(16, true, 1);
     private byte[] frameBytes;
     private boolean isBigEndian;
 
@@ -25,39 +29,18 @@ public class ShortAudioFrame {
     public ShortAudioFrame(short signal, int frameBytesLengh, boolean isBigEndian) {
         this.frameBytes = new byte[frameBytesLengh];
         this.isBigEndian = isBigEndian;
-
-        ByteBuffer bb = ByteBuffer.allocate(frameBytesLengh);
-        byte[] twotwoB = new byte[frameBytesLengh];
-        if (this.isBigEndian) {
-            bb.order(ByteOrder.BIG_ENDIAN);
-            ByteBuffer.wrap(twotwoB).order(ByteOrder.BIG_ENDIAN).asShortBuffer().put(signal);
-            System.arraycopy(twotwoB, 0, this.frameBytes, 0, frameBytesLengh);
-        } else {
-            bb.order(ByteOrder.LITTLE_ENDIAN);
-            ByteBuffer.wrap(twotwoB).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(signal);
-            System.arraycopy(twotwoB, 0, this.frameBytes, 0, frameBytesLengh);
-        }
+        this.codec().encodeShort(signal, this.frameBytes, 0, 0);
     }
 
     public byte[] getBytes() {
         return this.frameBytes;
     }
 
-
     public short getShort() {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        if (this.isBigEndian) {
-            bb.order(ByteOrder.BIG_ENDIAN);
-            // add two 0 bytes to convert from two bytes endian to four bytes endian
-            bb.put(this.frameBytes[0]);
-            bb.put(this.frameBytes[1]);
-        } else {
-            bb.order(ByteOrder.LITTLE_ENDIAN);
-            bb.put(this.frameBytes[0]);
-            bb.put(this.frameBytes[1]);
-        }
-        bb.rewind();
-        short result = bb.getShort();
-        return result;
+        return this.codec().decodeShort(this.frameBytes, 0, 0);
+    }
+
+    private JAEC_PcmCodec codec() {
+        return this.isBigEndian ? BIG_ENDIAN : LITTLE_ENDIAN;
     }
 }
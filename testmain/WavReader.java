@@ -0,0 +1,236 @@
+package testmain;
+
+import jaec.JAEC_PcmCodec;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * streaming reader of 16, 24 and 32 bits PCM WAV files. the data chunk is
+ * memory mapped a window at a time, and samples are converted into blocks of
+ * the caller by JAEC_PcmCodec, so the memory does not grow with the length
+ * of the file (unlike AudioManager, which keeps an object for every sample).
+ *
+ * @author Jie Yang
+ */
+public class WavReader implements Closeable {
+
+    private static final long WINDOW_BYTES = 64L << 20; // bytes mapped at once
+    private final FileChannel channel;
+    private float sampleRate;
+    private int channels;
+    private ByteOrder order;
+    private long dataOffset; // position of the first sample in the file
+    private long dataBytes;
+    private long frameLength; // samples of every channel
+    private long framePosition; // next frame to read
+    private JAEC_PcmCodec codec;
+    private ByteBuffer window; // mapped frames from windowStart
+    private long windowStart; // first frame of the window
+
+    /**
+     * the constructor of this class, only the header is read.
+     *
+     * @param path : path of the WAV file.
+     */
+    public WavReader(String path) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            this.readHeader();
+        } catch (IOException ex) {
+            this.channel.close();
+            throw ex;
+        }
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        this.readFully(header, 0);
+        String riff = tag(header, 0);
+        if (riff.equals("RIFF")) {
+            this.order = ByteOrder.LITTLE_ENDIAN;
+        } else if (riff.equals("RIFX")) {
+            this.order = ByteOrder.BIG_ENDIAN;
+        } else {
+            throw new IOException("not a WAV file");
+        }
+        if (!tag(header, 8).equals("WAVE")) {
+            throw new IOException("not a WAV file");
+        }
+
+        //walk through the chunks until the data chunk, the fmt chunk must be before it.
+        ByteBuffer chunk = ByteBuffer.allocate(8).order(this.order);
+        long position = 12;
+        boolean format = false;
+        while (true) {
+            this.readFully(chunk, position);
+            String id = tag(chunk, 0);
+            long size = chunk.getInt(4) & 0xFFFFFFFFL;
+            position += 8;
+            if (id.equals("fmt ")) {
+                ByteBuffer fmt = ByteBuffer.allocate(16).order(this.order);
+                this.readFully(fmt, position);
+                int encoding = fmt.getShort(0) & 0xFFFF;
+                this.channels = fmt.getShort(2);
+                this.sampleRate = fmt.getInt(4);
+                int bits = fmt.getShort(14);
+                //1: PCM, 0xFFFE: extensible, the sub format is assumed to be PCM.
+                if ((encoding != 1 && encoding != 0xFFFE) || (bits != 16 && bits != 24 && bits != 32)) {
+                    throw new IOException("only 16, 24 and 32 bits PCM is supported [format:" + encoding + ", bits:" + bits + "]");
+                }
+                this.codec = new JAEC_PcmCodec(bits, this.order == ByteOrder.BIG_ENDIAN, this.channels);
+                format = true;
+            } else if (id.equals("data")) {
+                if (!format) {
+                    throw new IOException("no fmt chunk before data");
+                }
+                this.dataOffset = position;
+                //the size of a file which was not closed properly can be 0 or too big.
+                this.dataBytes = Math.min(size, this.channel.size() - position);
+                if (this.dataBytes == 0) {
+                    this.dataBytes = this.channel.size() - position;
+                }
+                this.frameLength = this.dataBytes / this.codec.getFrameBytes();
+                return;
+            }
+            //chunks are padded to even size.
+            position += size + (size & 1);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int n = this.channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("unexpected end of WAV file");
+            }
+        }
+    }
+
+    private static String tag(ByteBuffer buffer, int index) {
+        char[] c = new char[4];
+        for (int i = 0; i < 4; i++) {
+            c[i] = (char) buffer.get(index + i);
+        }
+        return new String(c);
+    }
+
+    public float getSampleRate() {
+        return this.sampleRate;
+    }
+
+    public int getChannels() {
+        return this.channels;
+    }
+
+    public int getBits() {
+        return this.codec.getBits();
+    }
+
+    /**
+     * get the number of samples of every channel.
+     *
+     * @return : the number of frames in the file.
+     */
+    public long getFrameLength() {
+        return this.frameLength;
+    }
+
+    /**
+     * get the number of frames not read yet.
+     *
+     * @return : the number of remaining frames.
+     */
+    public long getRemaining() {
+        return this.frameLength - this.framePosition;
+    }
+
+    /**
+     * read the next block of the first channel, other channels are skipped.
+     * samples of more than 16 bits are truncated.
+     *
+     * @param dst : buffer of the block.
+     * @param off : the first index of the block in dst.
+     * @param len : max number of samples to read.
+     * @return : number of samples read, -1 at the end of the file.
+     */
+    public int read(short[] dst, int off, int len) throws IOException {
+        if (this.getRemaining() == 0) {
+            return -1;
+        }
+        int n = (int) Math.min(len, this.getRemaining());
+        int done = 0;
+        while (done < n) {
+            int m = (int) Math.min(n - done, this.mapWindow());
+            this.codec.decode(this.window, this.windowIndex(), 0, dst, off + done, m);
+            done += m;
+            this.framePosition += m;
+        }
+        return n;
+    }
+
+    /**
+     * read the next block of the first channel as normalised signals (-1f to
+     * 1f) with the full resolution of the file, other channels are skipped.
+     *
+     * @param dst : buffer of the block.
+     * @param off : the first index of the block in dst.
+     * @param len : max number of samples to read.
+     * @return : number of samples read, -1 at the end of the file.
+     */
+    public int read(float[] dst, int off, int len) throws IOException {
+        if (this.getRemaining() == 0) {
+            return -1;
+        }
+        int n = (int) Math.min(len, this.getRemaining());
+        int done = 0;
+        while (done < n) {
+            int m = (int) Math.min(n - done, this.mapWindow());
+            this.codec.decode(this.window, this.windowIndex(), 0, dst, off + done, m);
+            done += m;
+            this.framePosition += m;
+        }
+        return n;
+    }
+
+    /**
+     * @return : index of the next frame in the window.
+     */
+    private int windowIndex() {
+        return (int) (this.framePosition - this.windowStart) * this.codec.getFrameBytes();
+    }
+
+    /**
+     * make sure the next frame is mapped.
+     *
+     * @return : number of frames left in the window.
+     */
+    private long mapWindow() throws IOException {
+        long frameBytes = this.codec.getFrameBytes();
+        if (this.window != null) {
+            long left = (this.windowStart + this.window.limit() / frameBytes) - this.framePosition;
+            if (left > 0) {
+                return left;
+            }
+        }
+        this.windowStart = this.framePosition;
+        long frames = Math.min(this.frameLength - this.framePosition, WINDOW_BYTES / frameBytes);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                this.dataOffset + this.framePosition * frameBytes, frames * frameBytes);
+        return frames;
+    }
+
+    /**
+     * close the file, the mapped windows are released by GC.
+     */
+    @Override
+    public void close() throws IOException {
+        this.window = null;
+        this.channel.close();
+    }
+}
@@ -0,0 +1,103 @@
+package testmain;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * streaming writer of 16 bits PCM mono WAV files. blocks are gathered in a
+ * direct buffer and written to the file channel when it is full, the sizes
+ * in the header are written when the file is closed.
+ *
+ * @author Jie Yang
+ */
+public class WavWriter implements Closeable {
+
+    private static final int HEADER_BYTES = 44;
+    private static final int BUFFER_BYTES = 64 << 10;
+    private final FileChannel channel;
+    private final float sampleRate;
+    private final ByteBuffer buffer;
+    private final ShortBuffer samples; // view of buffer
+    private long dataBytes;
+
+    /**
+     * the constructor of this class, an existing file is replaced.
+     *
+     * @param path : path of the WAV file.
+     * @param sampleRate : rate of sampling.
+     */
+    public WavWriter(String path, float sampleRate) throws IOException {
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.sampleRate = sampleRate;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.samples = this.buffer.asShortBuffer();
+        //space of header, it is written by close().
+        this.channel.position(HEADER_BYTES);
+    }
+
+    /**
+     * write a block of samples.
+     *
+     * @param src : buffer of the block.
+     * @param off : the first index of the block in src.
+     * @param len : number of samples.
+     */
+    public void write(short[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, this.samples.remaining());
+            this.samples.put(src, off, n);
+            off += n;
+            len -= n;
+            if (!this.samples.hasRemaining()) {
+                this.flush();
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        this.buffer.limit(2 * this.samples.position());
+        this.buffer.position(0);
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.dataBytes += this.buffer.limit();
+        this.buffer.clear();
+        this.samples.clear();
+    }
+
+    /**
+     * write the rest of the samples and the header, and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(new byte[]{'R', 'I', 'F', 'F'});
+            header.putInt((int) (36 + this.dataBytes));
+            header.put(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+            header.putInt(16);
+            header.putShort((short) 1); // PCM
+            header.putShort((short) 1); // mono
+            header.putInt((int) this.sampleRate);
+            header.putInt((int) this.sampleRate * 2); // bytes per second
+            header.putShort((short) 2); // bytes per frame
+            header.putShort((short) 16); // bits per sample
+            header.put(new byte[]{'d', 'a', 't', 'a'});
+            header.putInt((int) this.dataBytes);
+            header.flip();
+            while (header.hasRemaining()) {
+                this.channel.write(header, header.position());
+            }
+        } finally {
+            this.channel.close();
+        }
+    }
+}